@@ -4,8 +4,10 @@ import java.sql.*;
 import java.util.Arrays;
 
 import database.DatabaseConnection;
+import security.HashingRejectedException;
 import security.PasswordManager;
-import query.DatabaseQueries;
+import query.Query;
+import query.QueryRegistry;
 import utils.MessageUtils;
 
 /**
@@ -18,111 +20,138 @@ public class AuthDao {
     
     /**
      * Verifica se un utente è valido nel database.
+     * Hash e salt vengono letti con un'unica query; il confronto avviene poi
+     * in memoria con il confronto a tempo costante di PasswordManager.
+     * La connessione di lettura viene restituita al pool prima della verifica, che può durare
+     * quanto il timeout dell'executor di hashing. Per gli utenti inesistenti viene comunque
+     * calcolato un hash, così il tempo di risposta non rivela quali utenti esistono.
+     * Dopo un login riuscito, gli hash nel vecchio formato vengono ricalcolati con PBKDF2.
+     * Se il filtro dei nomi noti è abilitato (users.bloom.enabled, solo con un singolo nodo)
+     * i nomi che esclude con certezza vengono rifiutati senza accedere al database,
+     * dopo lo stesso hash di confronto degli utenti inesistenti.
      * 
      * @param username Nome utente
      * @param password Password in chiaro (array di byte)
      * @return true se l'utente è valido, false altrimenti
+     * @throws HashingRejectedException Se l'executor di hashing è saturo
      */
     public static boolean isUserValid(String username, byte[] password) {
-        // LOG DI DEBUG
-        System.out.println("Debug - AuthDao verifying: username='" + username + "', password length=" + password.length);
-    	
         if (username == null || password == null) {
             return false;
         }
         
-        Connection connection = null;
+        StoredCredentials credentials = null;
         
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            connection = DatabaseConnection.getConnectionRead();
-            
-            // Ottieni il salt dell'utente
-            byte[] salt = getUserSalt(username, connection);
-            if (salt == null) {
-                MessageUtils.showErrorMessage("Utente non trovato");
+            if (!KnownUsernames.mightExist(username)) {
+                PasswordManager.simulateVerification(password);
+                // Solo nel log: l'utente riceve lo stesso messaggio generico delle password errate
+                System.err.println("Login rifiutato: utente non trovato");
                 return false;
             }
             
-            // Calcola l'hash della password con il salt
-            byte[] hashedPassword = PasswordManager.concatenateAndHash(password, salt);
+            // Ottieni hash e salt dell'utente in un'unica lettura, chiudendo subito la connessione
+            try (Connection connection = DatabaseConnection.getConnection(Query.USER_CREDENTIALS)) {
+                credentials = getUserCredentials(username, connection);
+            }
+            if (credentials == null) {
+                PasswordManager.simulateVerification(password);
+                // Solo nel log: l'utente riceve lo stesso messaggio generico delle password errate
+                System.err.println("Login rifiutato: utente non trovato");
+                return false;
+            }
             
-            // Verifica le credenziali
-            boolean result = checkCredentials(username, hashedPassword, connection);
+            // Verifica le credenziali in memoria
+            boolean valid = PasswordManager.verifyPassword(password, credentials.hashedPassword, credentials.salt);
             
-            // Pulisci i dati sensibili
-            Arrays.fill(password, (byte) 0);
-            Arrays.fill(salt, (byte) 0);
-            Arrays.fill(hashedPassword, (byte) 0);
+            // Aggiorna in modo trasparente gli hash nel vecchio formato o con costo inferiore
+            if (valid && PasswordManager.needsRehash(credentials.hashedPassword)) {
+                rehashPassword(username, password, credentials.salt);
+            }
             
-            return result;
+            return valid;
             
-        } catch (ClassNotFoundException | SQLException e) {
+        } catch (SQLException e) {
             MessageUtils.showErrorMessage("Errore durante la verifica dell'utente");
             e.printStackTrace();
             return false;
         } finally {
-            closeConnection(connection);
+            // Pulisci i dati sensibili
+            Arrays.fill(password, (byte) 0);
+            if (credentials != null) {
+                credentials.clear();
+            }
         }
     }
     
     /**
-     * Ottiene il salt di un utente dal database.
+     * Ricalcola l'hash della password con i parametri correnti e lo salva.
+     * Un errore in questa fase non compromette il login, che è già stato verificato:
+     * l'aggiornamento verrà ritentato al login successivo.
      * 
      * @param username Nome utente
-     * @param connection Connessione al database
-     * @return Array di byte contenente il salt, o null se non trovato
-     * @throws SQLException Se si verifica un errore SQL
+     * @param password Password in chiaro già verificata
+     * @param salt Salt dell'utente
      */
-    private static byte[] getUserSalt(String username, Connection connection) throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement(DatabaseQueries.getUserSaltRetrievalQuery())) {
-            stmt.setString(1, username);
+    private static void rehashPassword(String username, byte[] password, byte[] salt) {
+        byte[] newHash = null;
+        try (Connection connection = DatabaseConnection.getConnection(Query.UPDATE_USER_PASSWORD);
+             PreparedStatement stmt = QueryRegistry.prepare(connection, Query.UPDATE_USER_PASSWORD)) {
             
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                if (resultSet.next()) {
-                    Blob saltBlob = resultSet.getBlob("salt");
-                    if (saltBlob != null) {
-                        return saltBlob.getBytes(1, (int) saltBlob.length());
-                    }
-                }
-            }
+            newHash = PasswordManager.hashPassword(password, salt);
+            stmt.setBytes(1, newHash);
+            stmt.setString(2, username);
+            stmt.executeUpdate();
+        } catch (SQLException | HashingRejectedException e) {
+            System.err.println("Aggiornamento dell'hash della password non riuscito: " + e.getMessage());
+        } finally {
+            PasswordManager.clearBytes(newHash);
         }
-        return null;
     }
     
     /**
-     * Verifica le credenziali dell'utente nel database.
+     * Ottiene hash della password e salt di un utente dal database.
      * 
      * @param username Nome utente
-     * @param hashedPassword Password hashata
      * @param connection Connessione al database
-     * @return true se le credenziali sono valide, false altrimenti
+     * @return Credenziali memorizzate, o null se l'utente non esiste
      * @throws SQLException Se si verifica un errore SQL
      */
-    private static boolean checkCredentials(String username, byte[] hashedPassword, Connection connection) 
-            throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement(DatabaseQueries.getLoginQuery())) {
+    private static StoredCredentials getUserCredentials(String username, Connection connection) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(connection, Query.USER_CREDENTIALS)) {
             stmt.setString(1, username);
-            stmt.setBytes(2, hashedPassword);
             
             try (ResultSet resultSet = stmt.executeQuery()) {
-                return resultSet.next();
+                if (resultSet.next()) {
+                    byte[] hashedPassword = resultSet.getBytes("password");
+                    byte[] salt = resultSet.getBytes("salt");
+                    if (hashedPassword != null && salt != null) {
+                        return new StoredCredentials(hashedPassword, salt);
+                    }
+                }
             }
         }
+        return null;
     }
     
     /**
-     * Chiude in modo sicuro una connessione al database.
-     * 
-     * @param connection Connessione da chiudere
+     * Hash della password e salt di un utente letti dal database.
      */
-    private static void closeConnection(Connection connection) {
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+    private static final class StoredCredentials {
+        private final byte[] hashedPassword;
+        private final byte[] salt;
+        
+        private StoredCredentials(byte[] hashedPassword, byte[] salt) {
+            this.hashedPassword = hashedPassword;
+            this.salt = salt;
+        }
+        
+        /**
+         * Cancella i dati sensibili dalla memoria.
+         */
+        private void clear() {
+            Arrays.fill(hashedPassword, (byte) 0);
+            Arrays.fill(salt, (byte) 0);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,201 @@
+package auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import database.DatabaseConnection;
+import query.Query;
+import query.QueryRegistry;
+import utils.BloomFilter;
+import utils.ConfigManager;
+
+/**
+ * Filtro di Bloom dei nomi utente registrati, usato per rifiutare senza accedere al database
+ * i tentativi di login con nomi utente che certamente non esistono.
+ *
+ * Il filtro conosce solo le registrazioni fatte su questo nodo e quelle lette all'ultima
+ * ricostruzione: con più nodi una registrazione fatta altrove mancherebbe fino alla ricostruzione
+ * successiva e l'utente verrebbe rifiutato. Per questo è disattivato per impostazione predefinita
+ * (users.bloom.enabled=false) e va abilitato solo con un singolo nodo. La verifica di disponibilità
+ * durante la registrazione interroga sempre il database; se trova un nome che il filtro escludeva,
+ * il nome viene aggiunto con add.
+ *
+ * Il filtro viene costruito leggendo in streaming la query db.query_allUsernames e ricostruito
+ * periodicamente (vedi KnownUsernamesListener); le nuove registrazioni vengono aggiunte subito.
+ * Finché il filtro non è stato caricato, o se la query non è configurata, ogni nome è
+ * considerato possibilmente esistente.
+ *
+ * I nomi vengono normalizzati (minuscole, senza accenti e spazi finali) così che nomi
+ * considerati uguali dalle collation del database non risultino assenti dal filtro.
+ * Dimensione e probabilità di falsi positivi si configurano con users.bloom.expectedInsertions
+ * e users.bloom.falsePositiveRate.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class KnownUsernames {
+
+    private static final Logger logger = Logger.getLogger(KnownUsernames.class.getName());
+
+    private static final long DEFAULT_EXPECTED_INSERTIONS = 100_000;
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    // Finestra in cui le nuove registrazioni vengono aggiunte anche al filtro ricostruito,
+    // nel caso la lettura non le veda ancora (ad esempio per il ritardo di una replica)
+    private static final long RECENT_WINDOW_MS = 5 * 60 * 1000L;
+
+    // Filtro pubblicato e filtro in costruzione; null finché non sono disponibili
+    private static volatile BloomFilter current;
+    private static volatile BloomFilter building;
+    private static volatile long loadedCount;
+
+    private static final Map<String, Long> recent = new ConcurrentHashMap<>();
+
+    private KnownUsernames() {
+    }
+
+    /**
+     * Verifica se un nome utente potrebbe essere registrato.
+     *
+     * @param username Nome utente
+     * @return false solo se il nome utente certamente non esiste
+     */
+    public static boolean mightExist(String username) {
+        BloomFilter filter = current;
+        return filter == null || username == null || filter.mightContain(normalize(username));
+    }
+
+    /**
+     * Aggiunge un nome utente appena registrato.
+     *
+     * @param username Nome utente
+     */
+    public static void add(String username) {
+        String normalized = normalize(username);
+        recent.put(normalized, System.currentTimeMillis());
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(normalized);
+        }
+        filter = building;
+        if (filter != null) {
+            filter.put(normalized);
+        }
+    }
+
+    /**
+     * Ricostruisce il filtro leggendo tutti i nomi utente e lo pubblica al posto del precedente.
+     * Se la query non è configurata o la lettura non riesce il filtro corrente resta invariato.
+     *
+     * @return true se il filtro è stato ricostruito
+     */
+    public static synchronized boolean rebuild() {
+        if (QueryRegistry.get().sql(Query.ALL_USERNAMES) == null) {
+            return false;
+        }
+
+        long expected = Math.max(ConfigManager.getLong("users.bloom.expectedInsertions", DEFAULT_EXPECTED_INSERTIONS),
+                loadedCount * 2);
+        double rate = readFalsePositiveRate();
+        long start = System.currentTimeMillis();
+        BloomFilter filter = new BloomFilter(expected, rate);
+
+        building = filter;
+        long count = 0;
+        try (Connection connection = DatabaseConnection.getConnection(Query.ALL_USERNAMES);
+             PreparedStatement stmt = QueryRegistry.prepare(connection, Query.ALL_USERNAMES)) {
+            // Lettura in streaming: il driver MySQL non carica l'intero result set in memoria
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    String username = resultSet.getString(1);
+                    if (username != null) {
+                        filter.put(normalize(username));
+                        count++;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            building = null;
+            logger.warning("Caricamento dei nomi utente non riuscito: " + e.getMessage());
+            return false;
+        }
+
+        // Registrazioni recenti che la lettura potrebbe non aver visto (ad esempio per il ritardo
+        // di una replica). Il nuovo filtro viene pubblicato prima di smettere di aggiornarlo come filtro
+        // in costruzione, e le registrazioni recenti vengono riapplicate dopo la pubblicazione,
+        // così che nessuna registrazione concorrente vada persa
+        addRecent(filter, start);
+        current = filter;
+        building = null;
+        addRecent(filter, start);
+        loadedCount = count;
+
+        logger.info("Filtro dei nomi utente ricostruito: " + count + " nomi, " + filter.getBitCount() / 8 / 1024
+                + " KiB, " + filter.getHashCount() + " hash, " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * Aggiunge al filtro le registrazioni recenti, eliminando quelle uscite dalla finestra.
+     */
+    private static void addRecent(BloomFilter filter, long start) {
+        for (Iterator<Map.Entry<String, Long>> iterator = recent.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Long> entry = iterator.next();
+            filter.put(entry.getKey());
+            if (entry.getValue() < start - RECENT_WINDOW_MS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true se il filtro è stato caricato
+     */
+    public static boolean isLoaded() {
+        return current != null;
+    }
+
+    /**
+     * @return Numero di nomi letti dall'ultima ricostruzione
+     */
+    public static long getLoadedCount() {
+        return loadedCount;
+    }
+
+    private static double readFalsePositiveRate() {
+        try {
+            String value = ConfigManager.getString("users.bloom.falsePositiveRate", null);
+            double rate = value == null ? DEFAULT_FALSE_POSITIVE_RATE : Double.parseDouble(value);
+            return rate > 0 && rate < 1 ? rate : DEFAULT_FALSE_POSITIVE_RATE;
+        } catch (NumberFormatException e) {
+            return DEFAULT_FALSE_POSITIVE_RATE;
+        }
+    }
+
+    /**
+     * Riduce un nome utente alla forma confrontata dal database con collation
+     * insensibili a maiuscole, accenti e spazi finali.
+     */
+    private static String normalize(String username) {
+        int end = username.length();
+        while (end > 0 && username.charAt(end - 1) == ' ') {
+            end--;
+        }
+        String trimmed = username.substring(0, end);
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (trimmed.charAt(i) > 0x7F) {
+                String decomposed = Normalizer.normalize(trimmed, Normalizer.Form.NFD);
+                return decomposed.replaceAll("\\p{M}+", "").toLowerCase(Locale.ROOT);
+            }
+        }
+        return trimmed.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,56 @@
+package auth;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import utils.ConfigManager;
+
+/**
+ * Listener che carica il filtro dei nomi utente all'avvio e lo ricostruisce periodicamente
+ * (users.bloom.rebuildMs), così da mantenerne corretto il dimensionamento al crescere degli utenti.
+ * Il caricamento avviene in background: fino al termine login e registrazione interrogano il database.
+ * Il filtro viene caricato solo con users.bloom.enabled=true, da impostare solo con un singolo nodo
+ * (vedi KnownUsernames).
+ *
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class KnownUsernamesListener implements ServletContextListener {
+
+    private static final long DEFAULT_REBUILD_MS = 6 * 60 * 60 * 1000L;
+
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (!ConfigManager.getBoolean("users.bloom.enabled", false)) {
+            return;
+        }
+        long period = Math.max(60_000, ConfigManager.getLong("users.bloom.rebuildMs", DEFAULT_REBUILD_MS));
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "known-usernames");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                KnownUsernames.rebuild();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
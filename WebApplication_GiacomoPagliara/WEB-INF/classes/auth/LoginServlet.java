@@ -14,9 +14,10 @@ import javax.servlet.http.HttpSession;
 
 import com.google.gson.JsonObject;
 
-import security.AesEncryption;
+import security.HashingRejectedException;
 import security.PasswordManager;
 import security.TokenManager;
+import utils.MessageCollector;
 import utils.MessageUtils;
 
 /**
@@ -129,6 +130,13 @@ public class LoginServlet extends HttpServlet {
                 MessageUtils.showErrorMessage("Credenziali non valide. Riprova.");
                 response.sendRedirect(LOGIN_PAGE);
             }
+        } catch (HashingRejectedException e) {
+            // Troppi login in corso: la richiesta viene rifiutata senza altro lavoro
+            PasswordManager.clearBytes(password);
+            username = null;
+            
+            MessageUtils.showWarningMessage("Il servizio è momentaneamente sovraccarico, riprova tra qualche secondo.");
+            response.sendRedirect(LOGIN_PAGE);
         } catch (Exception e) {
             // Gestione degli errori
             PasswordManager.clearBytes(password);
@@ -151,9 +159,8 @@ public class LoginServlet extends HttpServlet {
             // Genera un token di autenticazione
             TokenManager.TokenResult tokenResult = TokenManager.generateRememberToken(username);
             if (tokenResult != null) {
-                // Creiamo un cookie che contiene sia il token cifrato che l'UUID
-                String encryptedToken = AesEncryption.encryptToBase64(tokenResult.getPlainToken());
-                String cookieValue = tokenResult.getUuid() + ":" + encryptedToken;
+                // Il cookie contiene l'UUID e il token nel formato previsto da TokenManager
+                String cookieValue = tokenResult.getCookieValue();
                 
                 // Crea e configura il cookie
                 Cookie rememberMeCookie = new Cookie(REMEMBER_TOKEN_COOKIE, cookieValue);
@@ -192,7 +199,7 @@ public class LoginServlet extends HttpServlet {
         
         Cookie[] cookies = request.getCookies();
         if (cookies == null || cookies.length == 0) {
-            response.getWriter().write(cookieData.toString());
+            writeJson(cookieData, response);
             return;
         }
         
@@ -210,23 +217,12 @@ public class LoginServlet extends HttpServlet {
         
         // Se non c'è token, termina
         if (cookieValue == null) {
-            response.getWriter().write(cookieData.toString());
+            writeJson(cookieData, response);
             return;
         }
         
-        // Estrai UUID e token dal valore del cookie
-        String[] parts = cookieValue.split(":", 2);
-        if (parts.length != 2) {
-            // Formato cookie non valido
-            response.getWriter().write(cookieData.toString());
-            return;
-        }
-        
-        String uuid = parts[0];
-        String encryptedToken = parts[1];
-        
-        // Verifica il token usando UUID e token criptato
-        String username = TokenManager.validateToken(encryptedToken, uuid);
+        // Verifica il token (firmato oppure nel formato uuid:token)
+        String username = TokenManager.validateCookieValue(cookieValue);
         if (username != null) {
             // Token valido
             cookieData.addProperty("cookiesPresent", true);
@@ -249,7 +245,19 @@ public class LoginServlet extends HttpServlet {
             }
         }
         
-        response.getWriter().write(cookieData.toString());
+        writeJson(cookieData, response);
+    }
+    
+    /**
+     * Scrive la risposta JSON, aggiungendo i messaggi raccolti durante la richiesta.
+     * 
+     * @param data Oggetto JSON da inviare
+     * @param response Risposta HTTP
+     * @throws IOException Se si verifica un errore di I/O
+     */
+    private void writeJson(JsonObject data, HttpServletResponse response) throws IOException {
+        data.add(MessageCollector.REQUEST_ATTRIBUTE, MessageCollector.currentAsJson());
+        response.getWriter().write(data.toString());
     }
     
     /**
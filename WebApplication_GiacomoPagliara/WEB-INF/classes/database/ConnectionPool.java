@@ -0,0 +1,551 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool di connessioni JDBC associato a una singola coppia di credenziali.
+ * Le connessioni fisiche vengono riutilizzate tra le richieste; il metodo
+ * close() della connessione restituita al chiamante la riconsegna al pool
+ * invece di chiuderla, per cui i DAO non devono cambiare il proprio codice.
+ *
+ * Funzionalità supportate:
+ * - validazione al prestito delle connessioni inattive da troppo tempo
+ * - chiusura delle connessioni inattive oltre il tempo massimo (mantenendo il minimo)
+ * - durata massima di ogni connessione fisica
+ * - segnalazione delle connessioni non restituite (leak detection, se leakThresholdMs è positivo)
+ * - attesa limitata quando il pool è esaurito
+ * - modifica dei parametri a caldo (reconfigure), inclusa la dimensione massima
+ * - chiusura degli Statement (e dei relativi ResultSet) lasciati aperti dal chiamante alla riconsegna
+ *
+ * La dimensione massima limita tutte le connessioni fisiche, inattive comprese e contando anche
+ * quelle in apertura: una nuova connessione viene aperta solo riservandone prima il posto.
+ * Quando il pool è pieno e non ci sono connessioni inattive, il prestito attende che una connessione
+ * venga riconsegnata o chiusa.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class ConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String name;
+    private final String url;
+    private final String username;
+    private final String password;
+    private volatile PoolSettings settings;
+
+    // Protegge le decisioni su idle e totalConnections; available viene segnalata quando una
+    // connessione torna inattiva o si libera il posto per aprirne una nuova
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    // Connessioni inattive, la testa contiene la più recente (LIFO)
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    // Connessioni attualmente in prestito
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    // Connessioni fisiche aperte o in apertura, inattive comprese
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+
+    // Contatori statistici
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder destroyedCount = new LongAdder();
+    private final LongAdder leakCount = new LongAdder();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Crea un nuovo pool e avvia il thread di manutenzione.
+     *
+     * @param name Nome del pool, usato nei log
+     * @param url URL JDBC del database
+     * @param username Nome utente del database
+     * @param password Password del database
+     * @param settings Parametri del pool
+     */
+    public ConnectionPool(String name, String url, String username, String password, PoolSettings settings) {
+        this.name = name;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.settings = settings;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-" + name + "-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = settings.getHousekeepingPeriodMs();
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Applica nuovi parametri al pool senza chiudere le connessioni in prestito.
+     * Se la dimensione massima diminuisce, le connessioni inattive in eccesso vengono chiuse
+     * e quelle in prestito in eccesso alla riconsegna; nel frattempo i nuovi prestiti
+     * non aprono altre connessioni. Il periodo di manutenzione resta quello impostato alla creazione del pool.
+     *
+     * @param newSettings Nuovi parametri
+     */
+    public synchronized void reconfigure(PoolSettings newSettings) {
+        lock.lock();
+        try {
+            settings = newSettings;
+            // Con una dimensione maggiore i prestiti in attesa possono aprire nuove connessioni
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        trimExcess();
+        logger.info("Pool " + name + " riconfigurato: dimensione massima " + newSettings.getMaxSize()
+                + ", minimo inattive " + newSettings.getMinIdle());
+    }
+
+    /**
+     * Chiude le connessioni inattive che eccedono la dimensione massima corrente.
+     */
+    private void trimExcess() {
+        List<PooledConnection> excess = new ArrayList<>();
+        lock.lock();
+        try {
+            PooledConnection pooled;
+            while (totalConnections.get() - excess.size() > settings.getMaxSize() && (pooled = idle.pollLast()) != null) {
+                excess.add(pooled);
+            }
+        } finally {
+            lock.unlock();
+        }
+        excess.forEach(this::destroy);
+    }
+
+    /**
+     * Ottiene una connessione dal pool, attendendo al massimo il tempo configurato.
+     * La connessione va chiusa dal chiamante per restituirla al pool.
+     *
+     * @return Connessione logica appoggiata a una connessione fisica del pool
+     * @throws SQLException Se il pool è esaurito oltre il timeout o la connessione non può essere aperta
+     */
+    public Connection getConnection() throws SQLException {
+        PooledConnection pooled = takeIdleOrCreate();
+        pooled.borrowedAt = System.currentTimeMillis();
+        pooled.leakReported = false;
+        // Lo stack del chiamante costa una Throwable per prestito: viene registrato solo con la leak detection attiva
+        pooled.borrowSite = settings.getLeakThresholdMs() > 0 ? new Throwable("Connessione presa in prestito qui") : null;
+        borrowed.add(pooled);
+        borrowCount.increment();
+        return pooled.newHandle();
+    }
+
+    /**
+     * Restituisce una connessione inattiva valida oppure, se c'è posto, ne apre una nuova;
+     * altrimenti attende al massimo il tempo configurato.
+     *
+     * @return Connessione del pool pronta per l'uso
+     * @throws SQLException Se il pool è chiuso o esaurito oltre il timeout
+     *         o se non è possibile aprire una nuova connessione
+     */
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getBorrowTimeoutMs());
+        while (true) {
+            PooledConnection candidate;
+            try {
+                lock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Attesa di una connessione interrotta", e);
+            }
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Il pool " + name + " è stato chiuso");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate != null) {
+                        break;
+                    }
+                    if (totalConnections.get() < settings.getMaxSize()) {
+                        // Il posto viene riservato prima dell'apertura, che avviene fuori dal lock
+                        totalConnections.incrementAndGet();
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        borrowTimeouts.increment();
+                        throw new SQLTransientConnectionException("Nessuna connessione disponibile nel pool " + name
+                                + " entro " + settings.getBorrowTimeoutMs() + " ms");
+                    }
+                    available.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Attesa di una connessione interrotta", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (candidate == null) {
+                return create();
+            }
+            long now = System.currentTimeMillis();
+            if (isExpired(candidate, now)
+                    || (now - candidate.lastUsed >= settings.getValidationIntervalMs() && !isValid(candidate))) {
+                destroy(candidate);
+                continue;
+            }
+            return candidate;
+        }
+    }
+
+    /**
+     * Apre una nuova connessione fisica nel posto già riservato in totalConnections,
+     * che viene liberato se l'apertura non riesce.
+     */
+    private PooledConnection create() throws SQLException {
+        Connection physical;
+        try {
+            physical = DriverManager.getConnection(url, username, password);
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            signalAvailable();
+            throw e;
+        }
+        createdCount.increment();
+        return new PooledConnection(physical);
+    }
+
+    /**
+     * Risveglia un prestito in attesa dopo che una connessione è tornata inattiva o è stata chiusa.
+     */
+    private void signalAvailable() {
+        lock.lock();
+        try {
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Verifica che la connessione fisica sia ancora utilizzabile.
+     */
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(settings.getValidationTimeoutSec());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Indica se la connessione ha superato la durata massima.
+     */
+    private boolean isExpired(PooledConnection pooled, long now) {
+        return settings.getMaxLifetimeMs() > 0 && now - pooled.createdAt >= settings.getMaxLifetimeMs();
+    }
+
+    /**
+     * Riconsegna al pool una connessione in prestito, chiudendo gli Statement rimasti aperti
+     * e ripristinandone lo stato.
+     *
+     * @param pooled Connessione da riconsegnare
+     */
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        boolean reusable = closeStatements(pooled) && !closed && !isExpired(pooled, System.currentTimeMillis())
+                && resetState(pooled);
+        if (!reusable) {
+            destroy(pooled);
+            return;
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+        pooled.borrowSite = null;
+        lock.lock();
+        try {
+            if (closed || totalConnections.get() > settings.getMaxSize()) {
+                // Pool chiuso o ridotto durante il prestito: la connessione non torna tra le inattive
+                reusable = false;
+            } else {
+                idle.offerFirst(pooled);
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!reusable) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Chiude gli Statement creati durante il prestito, e con essi i relativi ResultSet,
+     * così che non restino aperti per il chiamante successivo.
+     *
+     * @return false se uno Statement non può essere chiuso e la connessione va scartata
+     */
+    private boolean closeStatements(PooledConnection pooled) {
+        boolean closedAll = true;
+        for (Statement statement : pooled.statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "Errore nella chiusura di uno Statement del pool " + name, e);
+                closedAll = false;
+            }
+        }
+        pooled.statements.clear();
+        return closedAll;
+    }
+
+    /**
+     * Annulla le transazioni lasciate aperte e ripristina l'autocommit.
+     *
+     * @return true se la connessione può essere riutilizzata
+     */
+    private boolean resetState(PooledConnection pooled) {
+        try {
+            Connection physical = pooled.physical;
+            if (physical.isClosed()) {
+                return false;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Connessione del pool " + name + " scartata al rilascio", e);
+            return false;
+        }
+    }
+
+    /**
+     * Chiude definitivamente una connessione fisica.
+     */
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        destroyedCount.increment();
+        signalAvailable();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Errore nella chiusura di una connessione del pool " + name, e);
+        }
+    }
+
+    /**
+     * Attività periodica di manutenzione: chiude le connessioni inattive o scadute,
+     * segnala i leak e mantiene il numero minimo di connessioni inattive.
+     */
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Chiusura delle connessioni inattive oltre il limite o scadute
+            List<PooledConnection> evicted = new ArrayList<>();
+            lock.lock();
+            try {
+                Iterator<PooledConnection> iterator = idle.descendingIterator();
+                while (iterator.hasNext()) {
+                    PooledConnection pooled = iterator.next();
+                    boolean idleTooLong = settings.getIdleTimeoutMs() > 0
+                            && now - pooled.lastUsed >= settings.getIdleTimeoutMs()
+                            && idle.size() > settings.getMinIdle();
+                    if ((idleTooLong || isExpired(pooled, now)) && idle.remove(pooled)) {
+                        evicted.add(pooled);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            evicted.forEach(this::destroy);
+
+            // Chiusura delle connessioni in eccesso dopo una riduzione della dimensione massima
+            trimExcess();
+
+            // Segnalazione delle connessioni non restituite
+            if (settings.getLeakThresholdMs() > 0) {
+                for (PooledConnection pooled : borrowed) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt >= settings.getLeakThresholdMs()) {
+                        pooled.leakReported = true;
+                        leakCount.increment();
+                        logger.log(Level.WARNING, "Possibile leak nel pool " + name + ": connessione in prestito da "
+                                + (now - pooled.borrowedAt) + " ms", pooled.borrowSite);
+                    }
+                }
+            }
+
+            // Mantenimento del numero minimo di connessioni inattive: come per i prestiti il posto viene
+            // riservato prima dell'apertura, e la connessione inattiva continua a occuparlo
+            while (reserveForMinIdle()) {
+                PooledConnection fresh = create();
+                fresh.lastUsed = System.currentTimeMillis();
+                lock.lock();
+                try {
+                    idle.offerLast(fresh);
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.log(Level.WARNING, "Errore durante la manutenzione del pool " + name, e);
+        }
+    }
+
+    /**
+     * Riserva il posto per una connessione inattiva se ne mancano rispetto al minimo
+     * e il pool non è pieno.
+     */
+    private boolean reserveForMinIdle() {
+        lock.lock();
+        try {
+            if (closed || idle.size() >= settings.getMinIdle() || totalConnections.get() >= settings.getMaxSize()) {
+                return false;
+            }
+            totalConnections.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chiude il pool: le connessioni inattive vengono chiuse subito,
+     * quelle in prestito alla loro riconsegna; i prestiti in attesa falliscono.
+     */
+    public void close() {
+        List<PooledConnection> remaining = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                remaining.add(pooled);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        remaining.forEach(this::destroy);
+    }
+
+    public String getName() { return name; }
+    public PoolSettings getSettings() { return settings; }
+    public int getActiveCount() { return borrowed.size(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getTotalCount() { return totalConnections.get(); }
+    public long getBorrowCount() { return borrowCount.sum(); }
+    public long getBorrowTimeouts() { return borrowTimeouts.sum(); }
+    public long getCreatedCount() { return createdCount.sum(); }
+    public long getDestroyedCount() { return destroyedCount.sum(); }
+    public long getLeakCount() { return leakCount.sum(); }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[" + name + ", attive=" + getActiveCount() + ", inattive=" + getIdleCount()
+                + ", totali=" + getTotalCount() + ", timeout=" + getBorrowTimeouts() + "]";
+    }
+
+    /**
+     * Connessione fisica gestita dal pool con i relativi metadati.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastUsed = createdAt;
+        private volatile long borrowedAt;
+        private volatile boolean leakReported;
+        private volatile Throwable borrowSite;
+        // Statement creati durante il prestito corrente, chiusi alla riconsegna
+        private final List<Statement> statements = new ArrayList<>();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Crea una nuova connessione logica per un singolo prestito.
+         * Ogni prestito ha il proprio handle, così un riferimento conservato
+         * dopo la close() non può operare sulla connessione di un altro chiamante.
+         */
+        private Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+    }
+
+    /**
+     * Gestore delle invocazioni sulla connessione logica restituita ai DAO.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released = false;
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + name + (released ? ", restituita" : "") + "]";
+                default:
+                    break;
+            }
+
+            if (released) {
+                throw new SQLException("Connessione già restituita al pool " + name);
+            }
+
+            Object result;
+            try {
+                result = method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                pooled.statements.add((Statement) result);
+            }
+            return result;
+        }
+    }
+}
@@ -2,10 +2,10 @@ package database;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 
+import query.Query;
 import utils.MessageUtils;
 import utils.ConfigManager;
 
@@ -13,16 +13,25 @@ import utils.ConfigManager;
  * Classe per la gestione delle connessioni al database.
  * Carica le configurazioni da un file di properties e fornisce
  * metodi per ottenere connessioni con privilegi diversi.
+ * Le connessioni provengono da due pool distinti, uno per ciascuna
+ * coppia di credenziali (lettura e scrittura), dimensionati in modo indipendente.
  * 
  * @author Giacomo Pagliara
  */
 public class DatabaseConnection {
+    // Driver JDBC predefinito
+    private static final String DEFAULT_DRIVER = "com.mysql.cj.jdbc.Driver";
+    
     private static String DATABASE_URL;
     private static String READ_USERNAME;
     private static String READ_PASSWORD;
     private static String WRITE_USERNAME;
     private static String WRITE_PASSWORD;
     
+    // Pool di connessioni per le due coppie di credenziali
+    private static ConnectionPool READ_POOL;
+    private static ConnectionPool WRITE_POOL;
+    
     static {
         try {
             Properties config = ConfigManager.getProperties();
@@ -33,7 +42,15 @@ public class DatabaseConnection {
             WRITE_USERNAME = config.getProperty("db.username_write");
             WRITE_PASSWORD = config.getProperty("db.password_write");
             
-        } catch (IOException e) {
+            // Il driver va registrato prima che i pool aprano le connessioni fisiche
+            Class.forName(config.getProperty("db.driver", DEFAULT_DRIVER));
+            
+            READ_POOL = new ConnectionPool("read", DATABASE_URL, READ_USERNAME, READ_PASSWORD,
+                    PoolSettings.fromProperties(config, "read"));
+            WRITE_POOL = new ConnectionPool("write", DATABASE_URL, WRITE_USERNAME, WRITE_PASSWORD,
+                    PoolSettings.fromProperties(config, "write"));
+            
+        } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
             MessageUtils.showErrorMessage("Errore nel caricamento del file di configurazione del database");
             throw new RuntimeException("Errore nel caricamento delle configurazioni del database", e);
@@ -42,21 +59,72 @@ public class DatabaseConnection {
 
     /**
      * Ottiene una connessione al database con privilegi di sola lettura.
+     * La connessione proviene dal pool di lettura e va chiusa per restituirla.
      * 
      * @return Connessione con privilegi di lettura
      * @throws SQLException Se si verifica un errore nella connessione
      */
     public static Connection getConnectionRead() throws SQLException {
-        return DriverManager.getConnection(DATABASE_URL, READ_USERNAME, READ_PASSWORD);
+        return READ_POOL.getConnection();
     }
 
     /**
      * Ottiene una connessione al database con privilegi di scrittura.
+     * La connessione proviene dal pool di scrittura e va chiusa per restituirla.
      * 
      * @return Connessione con privilegi di scrittura
      * @throws SQLException Se si verifica un errore nella connessione
      */
     public static Connection getConnectionWrite() throws SQLException {
-        return DriverManager.getConnection(DATABASE_URL, WRITE_USERNAME, WRITE_PASSWORD);
+        return WRITE_POOL.getConnection();
+    }
+    
+    /**
+     * Ottiene una connessione dal pool previsto per la query indicata.
+     * 
+     * @param query Query da eseguire
+     * @return Connessione con i privilegi richiesti dalla query
+     * @throws SQLException Se si verifica un errore nella connessione
+     */
+    public static Connection getConnection(Query query) throws SQLException {
+        return query.getPool() == Query.Pool.WRITE ? getConnectionWrite() : getConnectionRead();
+    }
+    
+    /**
+     * Restituisce il pool delle connessioni in sola lettura.
+     * 
+     * @return Pool di lettura
+     */
+    public static ConnectionPool getReadPool() {
+        return READ_POOL;
+    }
+    
+    /**
+     * Restituisce il pool delle connessioni in scrittura.
+     * 
+     * @return Pool di scrittura
+     */
+    public static ConnectionPool getWritePool() {
+        return WRITE_POOL;
+    }
+    
+    /**
+     * Applica ai pool i parametri letti dalle proprietà indicate (chiavi db.pool.*).
+     * URL e credenziali non vengono modificati: richiedono il riavvio dell'applicazione.
+     * 
+     * @param config Proprietà di configurazione
+     */
+    public static void reconfigurePools(Properties config) {
+        READ_POOL.reconfigure(PoolSettings.fromProperties(config, "read"));
+        WRITE_POOL.reconfigure(PoolSettings.fromProperties(config, "write"));
+    }
+    
+    /**
+     * Chiude entrambi i pool di connessioni.
+     * Da invocare alla chiusura dell'applicazione.
+     */
+    public static void shutdown() {
+        READ_POOL.close();
+        WRITE_POOL.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import utils.ConfigChangeListener;
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
+/**
+ * Listener che chiude i pool di connessioni alla chiusura dell'applicazione,
+ * così che le connessioni fisiche non restino aperte dopo un undeploy.
+ * Applica inoltre ai pool le modifiche delle chiavi db.pool.* quando la configurazione
+ * viene ricaricata.
+ * 
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class DatabasePoolListener implements ServletContextListener, ConfigChangeListener {
+    
+    private static final Logger logger = Logger.getLogger(DatabasePoolListener.class.getName());
+    
+    private static final String POOL_PREFIX = "db.pool.";
+    
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // I pool vengono creati alla prima richiesta di una connessione
+        ConfigManager.addListener(this);
+    }
+    
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ConfigManager.removeListener(this);
+        try {
+            DatabaseConnection.shutdown();
+        } catch (RuntimeException | LinkageError e) {
+            e.printStackTrace();
+        }
+    }
+    
+    @Override
+    public List<String> validate(ConfigSnapshot candidate, Set<String> changedKeys) {
+        List<String> problems = new ArrayList<>();
+        if (ConfigSnapshot.anyStartsWith(changedKeys, POOL_PREFIX)) {
+            Properties config = candidate.toProperties();
+            for (String pool : new String[] {"read", "write"}) {
+                try {
+                    PoolSettings.fromProperties(config, pool);
+                } catch (IllegalArgumentException e) {
+                    problems.add("pool " + pool + ": " + e.getMessage());
+                }
+            }
+        }
+        return problems;
+    }
+    
+    @Override
+    public void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+        if (ConfigSnapshot.anyStartsWith(changedKeys, POOL_PREFIX)) {
+            DatabaseConnection.reconfigurePools(current.toProperties());
+        }
+        if (ConfigSnapshot.anyStartsWith(changedKeys, "db.url", "db.username_", "db.password_", "db.driver")) {
+            logger.warning("URL, driver e credenziali del database vengono applicati solo al riavvio dell'applicazione");
+        }
+    }
+}
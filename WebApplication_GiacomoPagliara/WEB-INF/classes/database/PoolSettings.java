@@ -0,0 +1,124 @@
+package database;
+
+import java.util.Properties;
+
+/**
+ * Parametri di configurazione di un pool di connessioni.
+ * I valori vengono letti dal file di configurazione con il prefisso
+ * "db.pool.&lt;nome&gt;." e, se assenti, dal prefisso comune "db.pool.".
+ * Gli oggetti di questa classe sono immutabili.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class PoolSettings {
+    // Prefisso comune delle proprietà del pool
+    private static final String POOL_PREFIX = "db.pool.";
+
+    // Valori predefiniti
+    private static final int DEFAULT_MAX_SIZE = 10;
+    private static final int DEFAULT_MIN_IDLE = 2;
+    private static final long DEFAULT_BORROW_TIMEOUT_MS = 5_000;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 10 * 60 * 1000L;
+    private static final long DEFAULT_MAX_LIFETIME_MS = 30 * 60 * 1000L;
+    // Leak detection disattivata: quando è attiva ogni prestito registra lo stack del chiamante
+    private static final long DEFAULT_LEAK_THRESHOLD_MS = 0;
+    private static final long DEFAULT_VALIDATION_INTERVAL_MS = 500;
+    private static final int DEFAULT_VALIDATION_TIMEOUT_SEC = 2;
+    private static final long DEFAULT_HOUSEKEEPING_PERIOD_MS = 30_000;
+
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final long leakThresholdMs;
+    private final long validationIntervalMs;
+    private final int validationTimeoutSec;
+    private final long housekeepingPeriodMs;
+
+    /**
+     * Costruttore con tutti i parametri del pool.
+     *
+     * @param maxSize Numero massimo di connessioni fisiche
+     * @param minIdle Numero minimo di connessioni inattive da mantenere
+     * @param borrowTimeoutMs Tempo massimo di attesa per ottenere una connessione
+     * @param idleTimeoutMs Tempo dopo il quale una connessione inattiva viene chiusa
+     * @param maxLifetimeMs Durata massima di una connessione fisica
+     * @param leakThresholdMs Tempo oltre il quale una connessione non restituita è segnalata (0 per disattivare)
+     * @param validationIntervalMs Età minima dell'ultimo utilizzo per validare al prestito
+     * @param validationTimeoutSec Timeout della validazione in secondi
+     * @param housekeepingPeriodMs Periodo del thread di manutenzione
+     */
+    public PoolSettings(int maxSize, int minIdle, long borrowTimeoutMs, long idleTimeoutMs,
+            long maxLifetimeMs, long leakThresholdMs, long validationIntervalMs,
+            int validationTimeoutSec, long housekeepingPeriodMs) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("La dimensione massima del pool deve essere positiva");
+        }
+        this.maxSize = maxSize;
+        this.minIdle = Math.max(0, Math.min(minIdle, maxSize));
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLifetimeMs = maxLifetimeMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.housekeepingPeriodMs = housekeepingPeriodMs;
+    }
+
+    /**
+     * Crea le impostazioni di un pool a partire dalle proprietà di configurazione.
+     *
+     * @param config Proprietà di configurazione
+     * @param poolName Nome del pool (ad esempio "read" o "write")
+     * @return Impostazioni del pool
+     */
+    public static PoolSettings fromProperties(Properties config, String poolName) {
+        return new PoolSettings(
+                getInt(config, poolName, "maxSize", DEFAULT_MAX_SIZE),
+                getInt(config, poolName, "minIdle", DEFAULT_MIN_IDLE),
+                getLong(config, poolName, "borrowTimeoutMs", DEFAULT_BORROW_TIMEOUT_MS),
+                getLong(config, poolName, "idleTimeoutMs", DEFAULT_IDLE_TIMEOUT_MS),
+                getLong(config, poolName, "maxLifetimeMs", DEFAULT_MAX_LIFETIME_MS),
+                getLong(config, poolName, "leakThresholdMs", DEFAULT_LEAK_THRESHOLD_MS),
+                getLong(config, poolName, "validationIntervalMs", DEFAULT_VALIDATION_INTERVAL_MS),
+                getInt(config, poolName, "validationTimeoutSec", DEFAULT_VALIDATION_TIMEOUT_SEC),
+                getLong(config, poolName, "housekeepingPeriodMs", DEFAULT_HOUSEKEEPING_PERIOD_MS));
+    }
+
+    /**
+     * Legge una proprietà intera, prima specifica del pool e poi comune.
+     */
+    private static int getInt(Properties config, String poolName, String key, int defaultValue) {
+        return (int) getLong(config, poolName, key, defaultValue);
+    }
+
+    /**
+     * Legge una proprietà numerica, prima specifica del pool e poi comune.
+     */
+    private static long getLong(Properties config, String poolName, String key, long defaultValue) {
+        String value = config.getProperty(POOL_PREFIX + poolName + "." + key);
+        if (value == null) {
+            value = config.getProperty(POOL_PREFIX + key);
+        }
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Valore non valido per " + POOL_PREFIX + poolName + "." + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public int getMaxSize() { return maxSize; }
+    public int getMinIdle() { return minIdle; }
+    public long getBorrowTimeoutMs() { return borrowTimeoutMs; }
+    public long getIdleTimeoutMs() { return idleTimeoutMs; }
+    public long getMaxLifetimeMs() { return maxLifetimeMs; }
+    public long getLeakThresholdMs() { return leakThresholdMs; }
+    public long getValidationIntervalMs() { return validationIntervalMs; }
+    public int getValidationTimeoutSec() { return validationTimeoutSec; }
+    public long getHousekeepingPeriodMs() { return housekeepingPeriodMs; }
+}
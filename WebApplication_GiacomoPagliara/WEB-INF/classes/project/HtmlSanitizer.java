@@ -0,0 +1,150 @@
+package project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.jsoup.safety.Cleaner;
+import org.jsoup.safety.Safelist;
+
+/**
+ * Sanitizzazione del contenuto delle proposte progettuali per prevenire attacchi XSS.
+ *
+ * La maggior parte delle proposte è testo semplice: finché il contenuto non contiene '<' né '&'
+ * non può contenere markup né entità, e in HTML rappresenta sé stesso, per cui viene restituito
+ * così com'è senza costruire alcun DOM. Nel contenuto in streaming solo il testo che precede
+ * la prima occorrenza di uno dei due caratteri passa invariato man mano che viene letto, con
+ * memoria costante. Da quel punto il resto del flusso viene letto per intero, analizzato in un DOM
+ * completo con un'unica passata di Jsoup, ripulito con un Cleaner condiviso e materializzato come
+ * String prima di essere restituito: per il markup la memoria è quindi proporzionale alla parte
+ * restante del contenuto. Il Cleaner è costruito una sola volta sulla Safelist "relaxed", che non
+ * consente script né attributi di evento, che vengono quindi rimossi. Il testo già restituito
+ * non contiene tag né entità, per cui non può cambiare il modo in cui viene analizzato il resto.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class HtmlSanitizer {
+
+    // La Safelist non viene più modificata dopo la costruzione: il Cleaner è quindi condivisibile tra thread
+    private static final Cleaner CLEANER = new Cleaner(Safelist.relaxed());
+
+    private HtmlSanitizer() {
+        // Classe di utilità
+    }
+
+    /**
+     * Restituisce il contenuto sanitizzato come flusso di caratteri: il contenuto grezzo viene letto
+     * solo quando viene letto il Reader restituito. Il testo semplice non viene materializzato;
+     * dalla prima occorrenza di '<' o '&' il resto viene analizzato e ripulito per intero in memoria.
+     * Gli errori di lettura del contenuto grezzo (UTF-8 non valido, dimensione eccessiva)
+     * vengono riportati dalle letture del Reader restituito.
+     *
+     * @param content Contenuto grezzo (viene chiuso con il Reader restituito)
+     * @return Reader del contenuto HTML sanitizzato
+     */
+    public static Reader sanitizeStream(Reader content) {
+        return new SanitizingReader(content);
+    }
+
+    /**
+     * Sanitizza un contenuto già in memoria.
+     *
+     * @param content Contenuto grezzo
+     * @return Contenuto HTML sanitizzato
+     */
+    public static String sanitize(String content) {
+        if (content.indexOf('<') < 0 && content.indexOf('&') < 0) {
+            return content;
+        }
+        return CLEANER.clean(Parser.parse(content, "")).body().html();
+    }
+
+    /**
+     * Analizza il contenuto con un'unica passata e lo ripulisce con la Safelist.
+     */
+    private static String clean(Reader content) throws IOException {
+        Document document;
+        try {
+            document = Parser.htmlParser().parseInput(content, "");
+        } catch (UncheckedIOException e) {
+            // Jsoup incapsula gli errori di lettura: si riportano quelli originali (UTF-8 non valido, dimensione)
+            throw e.getCause();
+        }
+        return CLEANER.clean(document).body().html();
+    }
+
+    /**
+     * Reader che restituisce il testo semplice così come viene letto e, dalla prima occorrenza
+     * di '<' o '&', il resto del contenuto ripulito.
+     */
+    private static final class SanitizingReader extends Reader {
+        private final Reader content;
+        private Reader cleaned;
+
+        SanitizingReader(Reader content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read(char[] target, int offset, int length) throws IOException {
+            if (cleaned != null) {
+                return cleaned.read(target, offset, length);
+            }
+            // Il testo viene letto direttamente nell'array del chiamante e solo esaminato
+            int read = content.read(target, offset, length);
+            int end = offset + read;
+            for (int i = offset; i < end; i++) {
+                char c = target[i];
+                if (c == '<' || c == '&') {
+                    // Markup o entità: il resto del blocco e il flusso vanno al parser
+                    StringBuilder rest = new StringBuilder(end - i).append(target, i, end - i);
+                    cleaned = new StringReader(clean(new PrefixedReader(rest, content)));
+                    return i > offset ? i - offset : cleaned.read(target, offset, length);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            content.close();
+        }
+    }
+
+    /**
+     * Reader che restituisce prima i caratteri di un prefisso già letto e poi quelli di un altro Reader.
+     */
+    private static final class PrefixedReader extends Reader {
+        private StringBuilder prefix;
+        private final Reader rest;
+        private int position;
+
+        PrefixedReader(StringBuilder prefix, Reader rest) {
+            this.prefix = prefix;
+            this.rest = rest;
+        }
+
+        @Override
+        public int read(char[] target, int offset, int length) throws IOException {
+            if (prefix != null) {
+                int count = Math.min(length, prefix.length() - position);
+                prefix.getChars(position, position + count, target, offset);
+                position += count;
+                if (position == prefix.length()) {
+                    // Prefisso esaurito: il reader non lo trattiene più mentre il parser legge il resto
+                    prefix = null;
+                }
+                return count;
+            }
+            return rest.read(target, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            rest.close();
+        }
+    }
+}
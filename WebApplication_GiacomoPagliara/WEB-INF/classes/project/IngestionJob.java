@@ -0,0 +1,286 @@
+package project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Properties;
+
+import com.google.gson.JsonObject;
+
+import security.AesEncryption;
+import security.EncryptingOutputStream;
+import utils.BufferPool;
+import utils.MessageCollector;
+import utils.Utf8Reader;
+
+/**
+ * Caricamento asincrono di una proposta progettuale (vedi ProposalIngestion).
+ *
+ * Lo stato del caricamento è salvato nel file &lt;id&gt;.job della cartella di spool, accanto
+ * al file &lt;id&gt;.data con il contenuto caricato: i caricamenti accettati e non ancora completati
+ * sopravvivono quindi a un riavvio. Ogni scrittura avviene su un file temporaneo sincronizzato
+ * su disco e poi rinominato, per cui il file dello stato è sempre completo.
+ * Se richiesto, il contenuto viene cifrato su disco con AesEncryption.encryptingStream e decifrato
+ * in lettura da openData, a segmenti e senza caricarlo per intero in memoria.
+ * I messaggi per l'utente prodotti durante l'elaborazione sono raccolti in un MessageCollector
+ * dedicato al caricamento.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class IngestionJob {
+
+    static final String JOB_SUFFIX = ".job";
+    static final String DATA_SUFFIX = ".data";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Stato di un caricamento.
+     */
+    public enum State {
+        QUEUED, PROCESSING, COMPLETED, FAILED;
+
+        /**
+         * @return true se l'elaborazione è terminata, con o senza successo
+         */
+        public boolean isFinal() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+
+    private final String id;
+    private final String owner;
+    private final String fileName;
+    private final long submittedAt;
+    private final Path directory;
+    private final boolean encrypted;
+    private final MessageCollector messages = new MessageCollector();
+
+    private volatile State state = State.QUEUED;
+    private volatile long size;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    IngestionJob(String id, String owner, String fileName, long submittedAt, Path directory, boolean encrypted) {
+        this.id = id;
+        this.owner = owner;
+        this.fileName = fileName;
+        this.submittedAt = submittedAt;
+        this.directory = directory;
+        this.encrypted = encrypted;
+    }
+
+    /**
+     * Legge un caricamento dal suo file di stato.
+     *
+     * @param jobFile File &lt;id&gt;.job
+     * @return Caricamento letto
+     * @throws IOException Se il file non è leggibile o è incompleto
+     */
+    static IngestionJob read(Path jobFile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(jobFile)) {
+            properties.load(input);
+        }
+        String name = jobFile.getFileName().toString();
+        String owner = properties.getProperty("owner");
+        String fileName = properties.getProperty("fileName");
+        if (owner == null || fileName == null) {
+            throw new IOException("File di stato incompleto: " + jobFile);
+        }
+
+        IngestionJob job;
+        try {
+            job = new IngestionJob(name.substring(0, name.length() - JOB_SUFFIX.length()), owner, fileName,
+                    Long.parseLong(properties.getProperty("submittedAt", "0")), jobFile.getParent(),
+                    Boolean.parseBoolean(properties.getProperty("encrypted", "false")));
+            job.size = Long.parseLong(properties.getProperty("size", "0"));
+            job.state = State.valueOf(properties.getProperty("state", State.QUEUED.name()));
+            job.startedAt = Long.parseLong(properties.getProperty("startedAt", "0"));
+            job.finishedAt = Long.parseLong(properties.getProperty("finishedAt", "0"));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("File di stato non valido: " + jobFile, e);
+        }
+        for (int i = 0; properties.containsKey("message." + i + ".level"); i++) {
+            job.messages.add(MessageCollector.Level.valueOf(properties.getProperty("message." + i + ".level")),
+                    properties.getProperty("message." + i + ".text"));
+        }
+        return job;
+    }
+
+    /**
+     * Salva lo stato corrente nel file &lt;id&gt;.job.
+     *
+     * @throws IOException Se la scrittura non riesce
+     */
+    synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("owner", owner);
+        properties.setProperty("fileName", fileName);
+        properties.setProperty("submittedAt", Long.toString(submittedAt));
+        properties.setProperty("encrypted", Boolean.toString(encrypted));
+        properties.setProperty("size", Long.toString(size));
+        properties.setProperty("state", state.name());
+        properties.setProperty("startedAt", Long.toString(startedAt));
+        properties.setProperty("finishedAt", Long.toString(finishedAt));
+        int i = 0;
+        for (MessageCollector.Message message : messages.getMessages()) {
+            properties.setProperty("message." + i + ".level", message.getLevel().name());
+            properties.setProperty("message." + i + ".text", message.getText());
+            i++;
+        }
+
+        Path temp = directory.resolve(id + JOB_SUFFIX + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream output = Channels.newOutputStream(channel);
+            properties.store(output, null);
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(temp, getJobFile(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Copia il contenuto caricato nel file &lt;id&gt;.data, sincronizzandolo su disco.
+     * La copia si interrompe appena il contenuto supera maxBytes, qualunque sia la dimensione dichiarata.
+     * Per i caricamenti cifrati il file contiene il contenuto cifrato a segmenti.
+     *
+     * @param content Contenuto caricato
+     * @param maxBytes Dimensione massima del contenuto
+     * @throws Utf8Reader.SizeLimitExceededException Se il contenuto supera maxBytes
+     * @throws IOException Se la scrittura non riesce
+     */
+    void spool(InputStream content, long maxBytes) throws IOException {
+        Path temp = directory.resolve(id + DATA_SUFFIX + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream output = Channels.newOutputStream(channel);
+            EncryptingOutputStream cipher = encrypted ? encryptingStream(output) : null;
+            OutputStream target = cipher != null ? cipher : output;
+            byte[] buffer = BufferPool.bytes();
+            long total = 0;
+            int read;
+            while ((read = content.read(buffer)) >= 0) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new Utf8Reader.SizeLimitExceededException(maxBytes);
+                }
+                target.write(buffer, 0, read);
+            }
+            if (cipher != null) {
+                // Scrive l'ultimo segmento lasciando aperto il canale, da sincronizzare su disco
+                cipher.finish();
+            }
+            output.flush();
+            channel.force(true);
+            size = total;
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, getDataFile(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Apre il contenuto caricato, decifrandolo se è stato salvato cifrato.
+     * Per i caricamenti cifrati un contenuto alterato o troncato provoca una IOException in lettura.
+     *
+     * @return Contenuto in chiaro, da chiudere dopo l'uso
+     * @throws IOException Se il file non è leggibile o le chiavi AES non sono disponibili
+     */
+    InputStream openData() throws IOException {
+        InputStream input = Files.newInputStream(getDataFile());
+        if (!encrypted) {
+            return input;
+        }
+        try {
+            return AesEncryption.decryptingStream(input);
+        } catch (Exception e) {
+            input.close();
+            throw new IOException("Impossibile decifrare il caricamento " + id, e);
+        }
+    }
+
+    private static EncryptingOutputStream encryptingStream(OutputStream output) throws IOException {
+        try {
+            return AesEncryption.encryptingStream(output);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cifratura del caricamento non disponibile", e);
+        }
+    }
+
+    void markProcessing() {
+        startedAt = System.currentTimeMillis();
+        state = State.PROCESSING;
+    }
+
+    void markFinished(boolean successful) {
+        finishedAt = System.currentTimeMillis();
+        state = successful ? State.COMPLETED : State.FAILED;
+    }
+
+    /**
+     * Elimina i file del caricamento; errori e file già assenti vengono ignorati.
+     *
+     * @param includeState true per eliminare anche il file di stato
+     */
+    void deleteFiles(boolean includeState) {
+        try {
+            Files.deleteIfExists(getDataFile());
+            if (includeState) {
+                Files.deleteIfExists(getJobFile());
+            }
+        } catch (IOException e) {
+            System.err.println("Impossibile eliminare i file del caricamento " + id + ": " + e.getMessage());
+        }
+    }
+
+    Path getJobFile() {
+        return directory.resolve(id + JOB_SUFFIX);
+    }
+
+    Path getDataFile() {
+        return directory.resolve(id + DATA_SUFFIX);
+    }
+
+    public String getId() { return id; }
+    public String getOwner() { return owner; }
+    public String getFileName() { return fileName; }
+    public State getState() { return state; }
+    public long getSubmittedAt() { return submittedAt; }
+    public long getSize() { return size; }
+    public boolean isEncrypted() { return encrypted; }
+    public long getStartedAt() { return startedAt; }
+    public long getFinishedAt() { return finishedAt; }
+    public MessageCollector getMessages() { return messages; }
+
+    /**
+     * Converte lo stato del caricamento in JSON per la risposta al client.
+     *
+     * @return Oggetto JSON con id, stato, nome del file, istanti (ms) e messaggi
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("state", state.name().toLowerCase(Locale.ROOT));
+        json.addProperty("fileName", fileName);
+        json.addProperty("submittedAt", submittedAt);
+        if (startedAt > 0) {
+            json.addProperty("startedAt", startedAt);
+        }
+        if (finishedAt > 0) {
+            json.addProperty("finishedAt", finishedAt);
+        }
+        json.add(MessageCollector.REQUEST_ATTRIBUTE, messages.toJson());
+        return json;
+    }
+}
@@ -1,5 +1,7 @@
 package project;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -8,7 +10,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import database.DatabaseConnection;
-import query.DatabaseQueries;
+import query.Query;
+import query.QueryRegistry;
 
 /**
  * Modello che rappresenta una proposta progettuale.
@@ -17,10 +20,28 @@ import query.DatabaseQueries;
  * @author Giacomo Pagliara
  */
 public class Project {
+    private long id;
     private String username;
     private String fileName;
     private String htmlContent;
 
+    /**
+     * Gestore delle proposte lette una riga alla volta da streamProjectsPage.
+     * Il Reader del contenuto è valido solo durante l'invocazione di handle.
+     */
+    public interface RowHandler {
+        /**
+         * Elabora una singola proposta.
+         * 
+         * @param id Identificativo della proposta
+         * @param username Nome utente del proprietario
+         * @param fileName Nome del file della proposta
+         * @param htmlContent Contenuto HTML della proposta come flusso di caratteri, o null
+         * @throws IOException Se si verifica un errore durante l'elaborazione
+         */
+        void handle(long id, String username, String fileName, Reader htmlContent) throws IOException;
+    }
+
     /**
      * Costruttore per creare una nuova proposta progettuale.
      * 
@@ -34,6 +55,19 @@ public class Project {
         this.htmlContent = htmlContent;
     }
 
+    /**
+     * Costruttore per creare una proposta progettuale con il relativo identificativo.
+     * 
+     * @param id Identificativo della proposta
+     * @param username Nome utente del proprietario
+     * @param fileName Nome del file della proposta
+     * @param htmlContent Contenuto HTML della proposta
+     */
+    public Project(long id, String username, String fileName, String htmlContent) {
+        this(username, fileName, htmlContent);
+        this.id = id;
+    }
+
     /**
      * Recupera tutte le proposte progettuali dal database.
      * 
@@ -42,8 +76,8 @@ public class Project {
     public static List<Project> getAllProjects() {
         List<Project> projects = new ArrayList<>();
 
-        try (Connection connection = DatabaseConnection.getConnectionRead();
-             PreparedStatement preparedStatement = connection.prepareStatement(DatabaseQueries.getUsersAndProposalsQuery());
+        try (Connection connection = DatabaseConnection.getConnection(Query.USERNAMES_AND_PROPOSALS);
+             PreparedStatement preparedStatement = QueryRegistry.prepare(connection, Query.USERNAMES_AND_PROPOSALS);
              ResultSet resultSet = preparedStatement.executeQuery()) {
 
             while (resultSet.next()) {
@@ -63,6 +97,100 @@ public class Project {
         return projects;
     }
     
+    /**
+     * Recupera una pagina di proposte progettuali con paginazione keyset:
+     * vengono restituite al massimo limit proposte con id maggiore di afterId.
+     * Viene letta una riga in più del necessario per sapere se esiste
+     * una pagina successiva senza eseguire un'ulteriore query.
+     * 
+     * @param afterId Id dopo il quale iniziare (0 per la prima pagina)
+     * @param limit Numero massimo di proposte da restituire
+     * @return Pagina di proposte con il cursore per la pagina successiva
+     * @throws SQLException Se si verifica un errore SQL
+     */
+    public static ProjectPage getProjectsPage(long afterId, int limit) throws SQLException {
+        List<Project> projects = new ArrayList<>(limit);
+        boolean hasMore = false;
+
+        try (Connection connection = DatabaseConnection.getConnection(Query.PROPOSALS_PAGE);
+             PreparedStatement preparedStatement = QueryRegistry.prepare(connection, Query.PROPOSALS_PAGE)) {
+
+            preparedStatement.setLong(1, afterId);
+            preparedStatement.setInt(2, limit + 1);
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (projects.size() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    projects.add(new Project(
+                            resultSet.getLong("id"),
+                            resultSet.getString("username"),
+                            resultSet.getString("fileName"),
+                            resultSet.getString("htmlContent")));
+                }
+            }
+        }
+
+        Long next = hasMore ? projects.get(projects.size() - 1).getId() : null;
+        return new ProjectPage(projects, next);
+    }
+    
+    /**
+     * Legge una pagina di proposte in streaming, passando una riga alla volta al gestore
+     * senza materializzare la lista. Il contenuto viene letto come flusso di caratteri.
+     * Il result set è in modalità streaming (fetch size Integer.MIN_VALUE per MySQL),
+     * quindi la memoria occupata è limitata alla riga corrente e non all'intera pagina.
+     * 
+     * @param afterId Id dopo il quale iniziare (0 per la prima pagina)
+     * @param limit Numero massimo di proposte da elaborare
+     * @param handler Gestore delle proposte
+     * @return Cursore per la pagina successiva, o null se la pagina è l'ultima
+     * @throws SQLException Se si verifica un errore SQL
+     * @throws IOException Se il gestore segnala un errore di I/O
+     */
+    public static Long streamProjectsPage(long afterId, int limit, RowHandler handler) 
+            throws SQLException, IOException {
+        
+        // Lo statement è TYPE_FORWARD_ONLY e CONCUR_READ_ONLY (valori predefiniti), requisito per lo streaming
+        try (Connection connection = DatabaseConnection.getConnection(Query.PROPOSALS_PAGE);
+             PreparedStatement preparedStatement = QueryRegistry.prepare(connection, Query.PROPOSALS_PAGE)) {
+
+            preparedStatement.setFetchSize(Integer.MIN_VALUE);
+            preparedStatement.setLong(1, afterId);
+            preparedStatement.setInt(2, limit + 1);
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                int count = 0;
+                long lastId = afterId;
+                while (resultSet.next()) {
+                    // La riga in più indica solo che esiste una pagina successiva
+                    if (count == limit) {
+                        return lastId;
+                    }
+                    lastId = resultSet.getLong("id");
+                    String username = resultSet.getString("username");
+                    String fileName = resultSet.getString("fileName");
+                    try (Reader htmlContent = resultSet.getCharacterStream("htmlContent")) {
+                        handler.handle(lastId, username, fileName, htmlContent);
+                    }
+                    count++;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Ottiene l'identificativo della proposta.
+     * 
+     * @return Identificativo della proposta
+     */
+    public long getId() {
+        return id;
+    }
+    
     /**
      * Ottiene il nome utente del proprietario della proposta.
      * 
@@ -1,11 +1,16 @@
 package project;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.sql.*;
 
 import database.DatabaseConnection;
 import utils.MessageUtils;
-import query.DatabaseQueries;
+import utils.Utf8InputStream;
+import query.Query;
+import query.QueryRegistry;
 
 /**
  * Classe per la gestione dell'accesso ai dati delle proposte progettuali.
@@ -16,28 +21,38 @@ import query.DatabaseQueries;
 public class ProjectDao {
 
     /**
-     * Carica un file di proposta progettuale nel database.
+     * Carica una proposta progettuale nel database leggendone il contenuto in streaming.
+     * Il contenuto viene codificato in UTF-8 man mano che il driver lo legge (setBinaryStream),
+     * per cui l'applicazione non ne costruisce una copia in byte.
+     * Solo con useServerPrepStmts=true in db.url Connector/J invia il flusso al server a blocchi
+     * (blobSendChunkSize). Con un db.url senza questa opzione, il predefinito del driver, i prepared
+     * statement sono lato client e Connector/J legge l'intero flusso e lo copia nel pacchetto
+     * della query: l'intero documento viene quindi comunque tenuto in memoria, dentro il driver.
+     * 
+     * Gli errori di lettura del contenuto (ad esempio un file troppo grande o non valido,
+     * rilevati durante la sanitizzazione in streaming) interrompono l'inserimento prima
+     * dell'esecuzione della query e vengono riportati come IOException, senza messaggi per l'utente.
      * 
      * @param username Nome utente del proprietario
-     * @param fileContent Contenuto del file
+     * @param htmlContent Contenuto HTML della proposta (non viene chiuso)
      * @param fileName Nome del file
      * @return true se il caricamento è avvenuto con successo, false altrimenti
-     * @throws IOException Se si verifica un errore di I/O
+     * @throws IOException Se si verifica un errore nella lettura del contenuto
      * @throws SQLException Se si verifica un errore SQL
      */
-    public static boolean uploadProject(String username, byte[] fileContent, String fileName) 
+    public static boolean uploadProject(String username, Reader htmlContent, String fileName) 
             throws IOException, SQLException {
         
         Connection connection = null;
         boolean success = false;
+        ContentStream content = new ContentStream(new Utf8InputStream(htmlContent));
         
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            connection = DatabaseConnection.getConnectionWrite();
+            connection = DatabaseConnection.getConnection(Query.INSERT_PROPOSAL);
             
-            try (PreparedStatement ps = connection.prepareStatement(DatabaseQueries.getInsertProposalQuery())) {
+            try (PreparedStatement ps = QueryRegistry.prepare(connection, Query.INSERT_PROPOSAL)) {
                 ps.setString(1, username);
-                ps.setBytes(2, fileContent);
+                ps.setBinaryStream(2, content);
                 ps.setString(3, fileName);
 
                 int rowsAffected = ps.executeUpdate();
@@ -47,10 +62,11 @@ public class ProjectDao {
                     MessageUtils.showErrorMessage("Nessuna riga è stata modificata durante l'inserimento della proposta.");
                 }
             }
-        } catch (ClassNotFoundException e) {
-            MessageUtils.showErrorMessage("Driver del database non trovato.");
-            throw new SQLException("Driver del database non trovato", e);
         } catch (SQLException e) {
+            // Il driver incapsula gli errori del flusso: si riporta quello originale
+            if (content.failure != null) {
+                throw content.failure;
+            }
             MessageUtils.showErrorMessage("Si è verificato un errore durante l'inserimento della proposta.");
             throw e;
         } finally {
@@ -60,6 +76,37 @@ public class ProjectDao {
         return success;
     }
     
+    /**
+     * Flusso che ricorda l'errore sollevato dalla lettura del contenuto.
+     */
+    private static final class ContentStream extends FilterInputStream {
+        private IOException failure;
+
+        ContentStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+    
     /**
      * Chiude in modo sicuro una connessione al database.
      * 
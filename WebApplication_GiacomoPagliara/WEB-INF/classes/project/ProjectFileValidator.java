@@ -2,19 +2,18 @@ package project;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.Reader;
+import java.nio.charset.CharacterCodingException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.Part;
 
-import org.apache.tika.Tika;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.safety.Safelist;
-
+import utils.BufferPool;
+import utils.ContentTypeDetector;
 import utils.MessageUtils;
+import utils.Utf8Reader;
 
 /**
  * Classe per la validazione e l'elaborazione sicura dei file delle proposte progettuali.
@@ -24,7 +23,7 @@ import utils.MessageUtils;
 public class ProjectFileValidator {
     
     // Costanti per la validazione
-    private static final long MAX_FILE_SIZE = 20 * 1024 * 1024; // 20 MB
+    static final long MAX_FILE_SIZE = 20 * 1024 * 1024; // 20 MB
     private static final String ALLOWED_EXTENSION = "txt";
     private static final String TEXT_MIME_TYPE = "text/plain";
     private static final String HTML_MIME_TYPE = "text/html";
@@ -44,6 +43,12 @@ public class ProjectFileValidator {
             return false;
         }
         
+        // Verifica della dimensione dichiarata, prima di leggere o salvare il contenuto
+        if (filePart.getSize() > MAX_FILE_SIZE) {
+            showSizeError();
+            return false;
+        }
+        
         // Ottieni il nome del file
         String fileName = Paths.get(filePart.getSubmittedFileName()).getFileName().toString();
         
@@ -63,39 +68,59 @@ public class ProjectFileValidator {
     }
     
     /**
-     * Processa il contenuto di un file, sanitizzando l'HTML per prevenire XSS.
+     * Prepara il contenuto di un file per il salvataggio, sanitizzando l'HTML per prevenire XSS.
+     * Il file viene letto una sola volta e in streaming: il tipo MIME è rilevato su un prefisso
+     * limitato (vedi ContentTypeDetector), che resta nel buffer per la decodifica; il resto del file
+     * viene letto, decodificato come UTF-8 stretto e sanitizzato solo mentre viene letto il Reader
+     * restituito, senza che il contenuto venga mai materializzato per intero.
+     * Il limite di 20 MB e la validità del testo sono quindi verificati durante quella lettura,
+     * che in caso di violazione solleva un'IOException da segnalare con showContentError.
      * 
-     * @param filePart Parte del file caricato
-     * @return Contenuto sanitizzato del file o null se non valido
+     * @param input Contenuto del file (non viene chiuso, e deve restare aperto finché si legge il Reader)
+     * @param declaredSize Dimensione dichiarata del file
+     * @return Reader del contenuto sanitizzato o null se il file non è valido
      */
-    public static String processFileContent(Part filePart) {
-        try {
-            // Verifica dimensione file
-            if (filePart.getSize() > MAX_FILE_SIZE) {
-                MessageUtils.showErrorMessage(
-                        "Il file supera la dimensione massima consentita. Il file può essere massimo di 20 MB");
-                return null;
-            }
+    public static Reader openSanitizedContent(InputStream input, long declaredSize) {
+        // Verifica della dimensione dichiarata; quella effettiva è verificata durante la lettura
+        if (declaredSize > MAX_FILE_SIZE) {
+            showSizeError();
+            return null;
+        }
 
-            // Verifica tipo MIME
-            Tika tika = new Tika();
-            String contentType = tika.detect(filePart.getInputStream());
+        // Il buffer del thread resta in uso finché il Reader restituito non è stato letto
+        byte[] buffer = BufferPool.bytes();
+        try {
+            // Verifica tipo MIME sul solo prefisso
+            ContentTypeDetector detector = ContentTypeDetector.get();
+            int prefixLength = ContentTypeDetector.readPrefix(input, buffer, detector.getSniffBytes());
+            String contentType = detector.detect(buffer, prefixLength);
             
             if (!TEXT_MIME_TYPE.equals(contentType) && !HTML_MIME_TYPE.equals(contentType)) {
                 MessageUtils.showErrorMessage("Il file contiene del testo non valido.");
                 return null;
             }
             
-            // Leggi il contenuto del file
-            String content = readFileContent(filePart);
-            
-            // Sanitizza il contenuto HTML
-            return sanitizeHtml(content);
+            return HtmlSanitizer.sanitizeStream(new Utf8Reader(input, buffer, prefixLength, MAX_FILE_SIZE));
             
         } catch (IOException e) {
+            showContentError(e);
+            return null;
+        }
+    }
+    
+    /**
+     * Mostra all'utente il messaggio corrispondente a un errore nella lettura del contenuto di un file.
+     * 
+     * @param e Errore sollevato durante la lettura
+     */
+    public static void showContentError(IOException e) {
+        if (e instanceof Utf8Reader.SizeLimitExceededException) {
+            showSizeError();
+        } else if (e instanceof CharacterCodingException) {
+            MessageUtils.showErrorMessage("Il file contiene del testo non valido.");
+        } else {
             e.printStackTrace();
             MessageUtils.showErrorMessage("C'è stato un problema con il caricamento del file.");
-            return null;
         }
     }
     
@@ -119,49 +144,9 @@ public class ProjectFileValidator {
         return "";
     }
     
-    /**
-     * Legge il contenuto di un file da una parte multipart.
-     * 
-     * @param filePart Parte del file
-     * @return Contenuto del file come stringa
-     * @throws IOException Se si verifica un errore durante la lettura
-     */
-    private static String readFileContent(Part filePart) throws IOException {
-        try (InputStream fileContent = filePart.getInputStream()) {
-            byte[] contentBytes = new byte[fileContent.available()];
-            fileContent.read(contentBytes);
-            return new String(contentBytes, StandardCharsets.UTF_8);
-        }
-    }
-    
-    /**
-     * Sanitizza il contenuto HTML per prevenire attacchi XSS.
-     * 
-     * @param content Contenuto HTML grezzo
-     * @return Contenuto HTML sanitizzato
-     */
-    private static String sanitizeHtml(String content) {
-    	
-        // Usa Jsoup per sanitizzare l'HTML
-        Document document = Jsoup.parse(content);
-        
-        // Rimuovi elementi pericolosi
-        document.select("script, [type=application/javascript], [type=text/javascript]").remove();
-        
-        // Rimuovi attributi pericolosi
-        document.select("[onclick], [onload], [onerror], [onfocus], [onblur]").forEach(element -> {
-            element.removeAttr("onclick");
-            element.removeAttr("onload");
-            element.removeAttr("onerror");
-            element.removeAttr("onfocus");
-            element.removeAttr("onblur");
-        });
-        
-        // Pulisci ulteriormente con Safelist
-        String cleanedHtml = Jsoup.clean(document.body().html(), Safelist.relaxed());
-        
-        return cleanedHtml;
-        
+    private static void showSizeError() {
+        MessageUtils.showErrorMessage(
+                "Il file supera la dimensione massima consentita. Il file può essere massimo di 20 MB");
     }
     
     /**
@@ -0,0 +1,169 @@
+package project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.SQLException;
+
+import com.google.gson.stream.JsonWriter;
+
+import utils.MessageCollector;
+
+/**
+ * Serializzazione in streaming di una pagina di proposte in formato JSON.
+ * Ogni riga del result set viene scritta direttamente sul writer della risposta,
+ * e il contenuto HTML viene copiato a blocchi dal flusso di caratteri della colonna:
+ * la memoria usata per richiesta è quindi limitata a una riga, non all'intera pagina.
+ *
+ * Il formato prodotto è lo stesso della serializzazione con Gson di ProjectPage:
+ * {"items": [{"id": ..., "username": ..., "fileName": ..., "htmlContent": ...}], "next": ..., "messages": [...]}
+ *
+ * @author Giacomo Pagliara
+ */
+final class ProjectJsonStreamer {
+
+    // Dimensione del buffer usato per copiare il contenuto delle proposte
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Sequenze di escape per i caratteri di controllo e per quelli sensibili in HTML,
+    // come fa Gson con l'opzione htmlSafe
+    private static final String[] REPLACEMENTS = new String[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            REPLACEMENTS[i] = String.format("\\u%04x", i);
+        }
+        REPLACEMENTS['"'] = "\\\"";
+        REPLACEMENTS['\\'] = "\\\\";
+        REPLACEMENTS['\t'] = "\\t";
+        REPLACEMENTS['\b'] = "\\b";
+        REPLACEMENTS['\n'] = "\\n";
+        REPLACEMENTS['\r'] = "\\r";
+        REPLACEMENTS['\f'] = "\\f";
+        REPLACEMENTS['<'] = "\\u003c";
+        REPLACEMENTS['>'] = "\\u003e";
+        REPLACEMENTS['&'] = "\\u0026";
+        REPLACEMENTS['='] = "\\u003d";
+        REPLACEMENTS['\''] = "\\u0027";
+    }
+
+    private ProjectJsonStreamer() {
+        // Classe di utilità
+    }
+
+    /**
+     * Scrive una pagina di proposte in JSON sul writer indicato.
+     *
+     * @param afterId Id dopo il quale iniziare
+     * @param limit Numero massimo di proposte
+     * @param out Writer della risposta
+     * @throws SQLException Se si verifica un errore SQL
+     * @throws IOException Se si verifica un errore di scrittura
+     */
+    static void writePage(long afterId, int limit, Writer out) throws SQLException, IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.setHtmlSafe(true);
+        json.setSerializeNulls(true);
+
+        json.beginObject();
+        json.name("items").beginArray();
+
+        Long next = Project.streamProjectsPage(afterId, limit, (id, username, fileName, htmlContent) -> {
+            json.beginObject();
+            json.name("id").value(id);
+            json.name("username").value(username);
+            json.name("fileName").value(fileName);
+            json.name("htmlContent");
+            writeStringValue(json, out, htmlContent);
+            json.endObject();
+            // Invia subito la proposta al client per ridurre il tempo al primo byte
+            json.flush();
+        });
+
+        json.endArray();
+        json.name("next");
+        if (next != null) {
+            json.value(next);
+        } else {
+            json.nullValue();
+        }
+        writeMessages(json);
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Scrive i messaggi raccolti durante la richiesta nel campo "messages".
+     */
+    private static void writeMessages(JsonWriter json) throws IOException {
+        json.name(MessageCollector.REQUEST_ATTRIBUTE).beginArray();
+        MessageCollector collector = MessageCollector.current();
+        if (collector != null) {
+            for (MessageCollector.Message message : collector.getMessages()) {
+                json.beginObject();
+                json.name("level").value(message.getLevel().getCssClass());
+                json.name("text").value(message.getText());
+                json.endObject();
+            }
+        }
+        json.endArray();
+    }
+
+    /**
+     * Scrive una stringa JSON copiandola a blocchi da un Reader.
+     * JsonWriter non accetta valori in streaming, per cui si apre la stringa con
+     * jsonValue (che gestisce i separatori e lo stato del writer) e si scrivono
+     * i caratteri codificati direttamente sul writer sottostante, che JsonWriter
+     * non bufferizza.
+     *
+     * @param json Writer JSON posizionato dopo il nome del campo
+     * @param out Writer sottostante a json
+     * @param reader Contenuto da scrivere, o null per il valore JSON null
+     * @throws IOException Se si verifica un errore di lettura o scrittura
+     */
+    private static void writeStringValue(JsonWriter json, Writer out, Reader reader) throws IOException {
+        if (reader == null) {
+            json.nullValue();
+            return;
+        }
+
+        json.jsonValue("\"");
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            writeEscaped(out, buffer, read);
+        }
+        out.write('"');
+    }
+
+    /**
+     * Scrive i caratteri applicando l'escape JSON, copiando in blocco i tratti che non ne hanno bisogno.
+     */
+    private static void writeEscaped(Writer out, char[] buffer, int length) throws IOException {
+        int last = 0;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            String replacement;
+            if (c < 128) {
+                replacement = REPLACEMENTS[c];
+            } else if (c == '\u2028') {
+                replacement = "\\u2028";
+            } else if (c == '\u2029') {
+                replacement = "\\u2029";
+            } else {
+                continue;
+            }
+            if (replacement == null) {
+                continue;
+            }
+            if (last < i) {
+                out.write(buffer, last, i - last);
+            }
+            out.write(replacement);
+            last = i + 1;
+        }
+        if (last < length) {
+            out.write(buffer, last, length - last);
+        }
+    }
+}
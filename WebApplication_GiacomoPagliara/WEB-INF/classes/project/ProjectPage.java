@@ -0,0 +1,45 @@
+package project;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pagina di proposte progettuali ottenuta con paginazione keyset.
+ * Contiene le proposte della pagina e il cursore da usare per richiedere
+ * la pagina successiva.
+ * 
+ * @author Giacomo Pagliara
+ */
+public class ProjectPage {
+    private final List<Project> items;
+    private final Long next;
+
+    /**
+     * Costruttore per creare una pagina di proposte.
+     * 
+     * @param items Proposte della pagina
+     * @param next Id dell'ultima proposta della pagina, o null se non ci sono altre pagine
+     */
+    public ProjectPage(List<Project> items, Long next) {
+        this.items = Collections.unmodifiableList(items);
+        this.next = next;
+    }
+
+    /**
+     * Ottiene le proposte della pagina.
+     * 
+     * @return Lista non modificabile delle proposte
+     */
+    public List<Project> getItems() {
+        return items;
+    }
+
+    /**
+     * Ottiene il cursore per la pagina successiva.
+     * 
+     * @return Valore da passare come parametro "after", o null se la pagina è l'ultima
+     */
+    public Long getNext() {
+        return next;
+    }
+}
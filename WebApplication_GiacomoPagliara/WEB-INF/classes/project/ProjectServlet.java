@@ -1,8 +1,8 @@
 package project;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.io.InputStream;
+import java.io.Reader;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.MultipartConfig;
@@ -10,11 +10,17 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import javax.servlet.http.Part;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 
+import utils.ConfigManager;
+import utils.MessageCollector;
 import utils.MessageUtils;
+import utils.Utf8Reader;
 
 /**
  * Servlet per la gestione delle proposte progettuali.
@@ -29,7 +35,21 @@ public class ProjectServlet extends HttpServlet {
     
     // Costanti per i parametri delle richieste
     private static final String PROJECT_FILE_PARAM = "Proposta progettuale";
-    private static final String USERNAME_PARAM = "nomeUtente";
+    private static final String AFTER_PARAM = "after";
+    private static final String LIMIT_PARAM = "limit";
+    
+    // Dimensioni delle pagine di proposte
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 50;
+    
+    // Serializzatore JSON condiviso (Gson è thread-safe); "next" viene incluso anche se null
+    private static final Gson GSON = new GsonBuilder().serializeNulls().create();
+    
+    // Proprietà che abilita la serializzazione in streaming delle proposte
+    private static final String STREAMING_JSON_PROPERTY = "projects.streamingJson";
+    
+    // Se true le proposte vengono scritte riga per riga dal result set alla risposta
+    private boolean streamingJson;
 
     /**
      * Costruttore predefinito.
@@ -37,59 +57,106 @@ public class ProjectServlet extends HttpServlet {
     public ProjectServlet() {
         super();
     }
+    
+    /**
+     * Legge dalla configurazione la modalità di serializzazione delle proposte.
+     */
+    @Override
+    public void init() throws ServletException {
+        streamingJson = ConfigManager.getBoolean(STREAMING_JSON_PROPERTY, true);
+    }
 
     /**
      * Gestisce le richieste GET.
-     * Restituisce tutte le proposte progettuali in formato JSON.
+     * Restituisce una pagina di proposte progettuali in formato JSON.
+     * Parametri facoltativi: "after" (id dell'ultima proposta già ricevuta)
+     * e "limit" (dimensione della pagina, al massimo MAX_PAGE_SIZE).
+     * La risposta ha la forma {"items": [...], "next": id o null}.
      */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         
+        long afterId;
+        long requestedLimit;
         try {
-            // Recupera tutte le proposte progettuali
-            List<Project> projects = Project.getAllProjects();
-    
-            System.out.println("Recuperate " + projects.size() + " proposte"); // Debug
-            for (Project p : projects) {
-                System.out.println("Proposta: " + p.getUsername() + ", " + p.getFileName());
+            afterId = parseLongParameter(request.getParameter(AFTER_PARAM), 0L);
+            requestedLimit = parseLongParameter(request.getParameter(LIMIT_PARAM), DEFAULT_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Parametri di paginazione non validi");
+            return;
+        }
+        
+        if (afterId < 0 || requestedLimit <= 0) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Parametri di paginazione non validi");
+            return;
+        }
+        // Limitato prima della conversione, così valori oltre l'intervallo di int non cambiano segno
+        int limit = (int) Math.min(requestedLimit, MAX_PAGE_SIZE);
+        
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        
+        try {
+            if (streamingJson) {
+                // Scrive le proposte direttamente dal result set alla risposta
+                ProjectJsonStreamer.writePage(afterId, limit, response.getWriter());
+                return;
             }
             
-            // Converti la lista in JSON
-            String jsonProjects = new Gson().toJson(projects);
+            // Recupera la pagina di proposte richiesta
+            ProjectPage page = Project.getProjectsPage(afterId, limit);
             
-            System.out.println("JSON generato: " + jsonProjects); // Debug
-    
-            // Imposta la risposta
-            response.setContentType("application/json");
-            response.setCharacterEncoding("UTF-8");
-            response.getWriter().write(jsonProjects);
+            // Converti la pagina in JSON
+            JsonObject json = GSON.toJsonTree(page).getAsJsonObject();
+            json.add(MessageCollector.REQUEST_ATTRIBUTE, MessageCollector.currentAsJson());
+            GSON.toJson(json, response.getWriter());
         } catch (Exception e) {
             e.printStackTrace();
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            response.getWriter().write("{\"error\": \"Si è verificato un errore nel recupero delle proposte.\"}");
+            if (response.isCommitted()) {
+                // Parte della risposta è già stata inviata: il client riceverà un JSON incompleto
+                return;
+            }
+            response.resetBuffer();
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    "Si è verificato un errore nel recupero delle proposte.");
+        }
+    }
+    
+    /**
+     * Converte un parametro numerico della richiesta.
+     * 
+     * @param value Valore del parametro
+     * @param defaultValue Valore da usare se il parametro è assente
+     * @return Valore numerico del parametro
+     * @throws NumberFormatException Se il parametro non è un numero valido
+     */
+    private static long parseLongParameter(String value, long defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
         }
+        return Long.parseLong(value.trim());
     }
 
     /**
      * Gestisce le richieste POST.
-     * Carica una nuova proposta progettuale.
+     * Carica una nuova proposta progettuale, attribuita all'utente della sessione autenticata.
      */
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
-    	System.out.println("Nome utente ricevuto: " + request.getParameter("nomeUtente"));
-    	System.out.println("File ricevuto: " + (request.getPart("Proposta progettuale") != null));
-    	
-        Part filePart = request.getPart(PROJECT_FILE_PARAM);
-        String username = request.getParameter(USERNAME_PARAM);
-        
-        // Controllo input
-        if (username == null || username.trim().isEmpty()) {
-            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Nome utente non specificato");
+        // Il proprietario della proposta è l'utente della sessione, non un parametro della richiesta
+        HttpSession session = request.getSession(false);
+        Object login = session != null ? session.getAttribute("login") : null;
+        Object sessionUser = session != null ? session.getAttribute("nomeUtente") : null;
+        if (!Boolean.TRUE.equals(login) || !(sessionUser instanceof String)) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "Autenticazione richiesta");
             return;
         }
+        String username = (String) sessionUser;
+
+        Part filePart = request.getPart(PROJECT_FILE_PARAM);
 
         // Validazione file
         if (!ProjectFileValidator.isValidProjectFile(filePart, getServletContext())) {
@@ -97,19 +164,25 @@ public class ProjectServlet extends HttpServlet {
             return;
         }
 
-        // Processa il contenuto del file
-        String sanitizedHtml = ProjectFileValidator.processFileContent(filePart);
-        if (sanitizedHtml == null) {
-            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Impossibile processare il file");
+        // Modalità asincrona: il file viene salvato e messo in coda, la risposta è immediata
+        ProposalIngestion ingestion = ProposalIngestion.current();
+        if (ingestion != null) {
+            acceptUpload(ingestion, username, filePart, response);
             return;
         }
 
         String fileName = ProjectFileValidator.getFileName(filePart);
-        byte[] htmlBytes = sanitizedHtml.getBytes(StandardCharsets.UTF_8);
 
-        try {
+        try (InputStream input = filePart.getInputStream()) {
+            // Il contenuto viene sanitizzato mentre il driver lo invia al database
+            Reader sanitizedHtml = ProjectFileValidator.openSanitizedContent(input, filePart.getSize());
+            if (sanitizedHtml == null) {
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Impossibile processare il file");
+                return;
+            }
+
             // Carica il file nel database
-            if (ProjectDao.uploadProject(username, htmlBytes, fileName)) {
+            if (ProjectDao.uploadProject(username, sanitizedHtml, fileName)) {
                 MessageUtils.showInfoMessage("La proposta è stata correttamente caricata!");
                 
              // Reindirizza alla pagina di visualizzazione delle proposte
@@ -118,6 +191,10 @@ public class ProjectServlet extends HttpServlet {
                 sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, 
                         "Non è stato possibile caricare il file della proposta");
             }
+        } catch (IOException e) {
+            // Contenuto non valido o troppo grande, rilevato durante la lettura
+            ProjectFileValidator.showContentError(e);
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Impossibile processare il file");
         } catch (Exception e) {
             e.printStackTrace();
             sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, 
@@ -125,8 +202,48 @@ public class ProjectServlet extends HttpServlet {
         }
     }
     
+    /**
+     * Accetta un caricamento in modalità asincrona e risponde con 202 Accepted e l'id del caricamento,
+     * da usare con ProjectStatusServlet per seguirne l'elaborazione.
+     * Se la coda è piena risponde con 503 e l'intestazione Retry-After.
+     */
+    private void acceptUpload(ProposalIngestion ingestion, String username, Part filePart,
+            HttpServletResponse response) throws IOException {
+        IngestionJob job;
+        try (InputStream input = filePart.getInputStream()) {
+            job = ingestion.submit(username, ProjectFileValidator.getFileName(filePart), input);
+        } catch (ProposalIngestion.IngestionRejectedException e) {
+            response.setHeader("Retry-After", "30");
+            sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Troppi caricamenti in corso, riprova tra poco");
+            return;
+        } catch (Utf8Reader.SizeLimitExceededException e) {
+            // Contenuto più grande della dimensione dichiarata: il salvataggio è stato interrotto
+            ProjectFileValidator.showContentError(e);
+            sendErrorResponse(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "File troppo grande");
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    "Si è verificato un errore durante il caricamento");
+            return;
+        }
+
+        String statusUrl = "ProjectStatusServlet?id=" + job.getId();
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader("Location", statusUrl);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        JsonObject json = job.toJson();
+        json.addProperty("status", statusUrl);
+        response.getWriter().write(json.toString());
+    }
+    
     /**
      * Invia una risposta di errore al client.
+     * Oltre al messaggio principale include l'array "messages" con i messaggi
+     * raccolti durante l'elaborazione della richiesta.
      * 
      * @param response Risposta HTTP
      * @param statusCode Codice di stato HTTP
@@ -138,6 +255,10 @@ public class ProjectServlet extends HttpServlet {
         response.setStatus(statusCode);
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        response.getWriter().write("{\"error\": \"" + message + "\"}");
+        
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        error.add(MessageCollector.REQUEST_ATTRIBUTE, MessageCollector.currentAsJson());
+        response.getWriter().write(error.toString());
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package project;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Servlet che restituisce lo stato di un caricamento asincrono di una proposta (vedi ProposalIngestion).
+ * Richiede il parametro "id" restituito dal caricamento; lo stato è visibile solo all'utente
+ * autenticato a cui è attribuita la proposta, mentre per gli altri il caricamento risulta inesistente.
+ * La risposta ha la forma {"id": ..., "state": "queued|processing|completed|failed", "fileName": ...,
+ * "submittedAt": ..., "startedAt": ..., "finishedAt": ..., "messages": [...]}.
+ *
+ * @author Giacomo Pagliara
+ */
+@WebServlet("/ProjectStatusServlet")
+public class ProjectStatusServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final String ID_PARAM = "id";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        HttpSession session = request.getSession(false);
+        Object login = session != null ? session.getAttribute("login") : null;
+        Object username = session != null ? session.getAttribute("nomeUtente") : null;
+        if (!Boolean.TRUE.equals(login) || username == null) {
+            sendError(response, HttpServletResponse.SC_UNAUTHORIZED, "Autenticazione richiesta");
+            return;
+        }
+
+        ProposalIngestion ingestion = ProposalIngestion.current();
+        IngestionJob job = ingestion != null ? ingestion.getJob(request.getParameter(ID_PARAM)) : null;
+        if (job == null || !job.getOwner().equals(username)) {
+            sendError(response, HttpServletResponse.SC_NOT_FOUND, "Caricamento non trovato");
+            return;
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        // Lo stato cambia durante l'elaborazione: il client deve sempre interrogare il server
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(job.toJson().toString());
+    }
+
+    private static void sendError(HttpServletResponse response, int statusCode, String message) throws IOException {
+        response.setStatus(statusCode);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        response.getWriter().write(error.toString());
+    }
+}
@@ -0,0 +1,388 @@
+package project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import utils.ConfigSnapshot;
+import utils.MessageCollector;
+import utils.MessageUtils;
+
+/**
+ * Elaborazione asincrona dei caricamenti delle proposte progettuali.
+ *
+ * La servlet salva il file caricato nella cartella di spool (vedi IngestionJob) e risponde subito
+ * con l'id del caricamento; validazione, sanitizzazione e inserimento nel database avvengono
+ * su un pool limitato di thread (projects.ingest.threads) con una coda limitata
+ * (projects.ingest.queueSize). Quando la coda è piena il caricamento viene rifiutato
+ * con IngestionRejectedException invece di accumulare file in attesa.
+ * Con projects.ingest.encrypt (predefinito true) i file della cartella di spool sono cifrati
+ * con le chiavi di AesEncryption, così le proposte non restano in chiaro su disco.
+ *
+ * All'avvio i caricamenti rimasti in sospeso nella cartella di spool vengono rimessi in coda;
+ * quelli che non trovano posto nella coda restano consultabili e vengono ritentati a ogni sweep.
+ * I caricamenti terminati restano consultabili per projects.ingest.retentionMs millisecondi.
+ * Profondità della coda, tempi di attesa ed elaborazione sono disponibili con i metodi get* e toString.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class ProposalIngestion {
+
+    private static final Logger logger = Logger.getLogger(ProposalIngestion.class.getName());
+
+    // Valori predefiniti
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+    private static final long DEFAULT_RETENTION_MS = 60 * 60 * 1000L;
+
+    // Servizio corrente, null se la modalità asincrona non è attiva
+    private static volatile ProposalIngestion current;
+
+    private final Path directory;
+    private final long retentionMs;
+    private final boolean encrypt;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    // Caricamenti ripresi all'avvio che non hanno trovato posto nella coda del pool
+    private final Queue<IngestionJob> deferred = new ConcurrentLinkedQueue<>();
+
+    // Contatori statistici
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitMs = new LongAdder();
+    private final LongAdder totalProcessingMs = new LongAdder();
+    private final AtomicLong maxProcessingMs = new AtomicLong();
+
+    /**
+     * Eccezione sollevata quando un caricamento non può essere accettato perché la coda è piena.
+     */
+    public static final class IngestionRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        IngestionRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    ProposalIngestion(Path directory, ConfigSnapshot config) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.retentionMs = Math.max(0, config.getLong("projects.ingest.retentionMs", DEFAULT_RETENTION_MS));
+        this.encrypt = config.getBoolean("projects.ingest.encrypt", true);
+        int threads = Math.max(1, config.getInt("projects.ingest.threads", DEFAULT_THREADS));
+        int queueSize = Math.max(1, config.getInt("projects.ingest.queueSize", DEFAULT_QUEUE_SIZE));
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "proposal-ingestion-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return Servizio corrente, o null se i caricamenti vengono elaborati in modo sincrono
+     */
+    public static ProposalIngestion current() {
+        return current;
+    }
+
+    static void publish(ProposalIngestion ingestion) {
+        current = ingestion;
+    }
+
+    /**
+     * Accetta un caricamento: salva il contenuto nella cartella di spool e lo mette in coda.
+     * Al ritorno il caricamento è salvato su disco e verrà elaborato anche dopo un riavvio.
+     *
+     * @param owner Utente a cui attribuire la proposta
+     * @param fileName Nome del file caricato
+     * @param content Contenuto del file (non viene chiuso)
+     * @return Caricamento accettato
+     * @throws IngestionRejectedException Se la coda è piena
+     * @throws utils.Utf8Reader.SizeLimitExceededException Se il contenuto supera la dimensione massima delle proposte
+     * @throws IOException Se il salvataggio non riesce
+     */
+    public IngestionJob submit(String owner, String fileName, InputStream content)
+            throws IngestionRejectedException, IOException {
+        if (executor.getQueue().remainingCapacity() == 0) {
+            rejected.increment();
+            throw new IngestionRejectedException("Troppi caricamenti in attesa");
+        }
+
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), owner, fileName,
+                System.currentTimeMillis(), directory, encrypt);
+        try {
+            job.spool(content, ProjectFileValidator.MAX_FILE_SIZE);
+            // Il file di stato è il punto di conferma: un file di dati senza stato viene eliminato al riavvio
+            job.save();
+        } catch (IOException e) {
+            job.deleteFiles(true);
+            throw e;
+        }
+
+        if (!enqueue(job)) {
+            jobs.remove(job.getId());
+            rejected.increment();
+            job.deleteFiles(true);
+            throw new IngestionRejectedException("Troppi caricamenti in attesa");
+        }
+        return job;
+    }
+
+    /**
+     * Restituisce un caricamento noto.
+     *
+     * @param id Id del caricamento
+     * @return Caricamento o null se sconosciuto o scaduto
+     */
+    public IngestionJob getJob(String id) {
+        return id == null ? null : jobs.get(id);
+    }
+
+    /**
+     * Registra un caricamento e lo mette nella coda del pool.
+     *
+     * @return false se la coda è piena; il caricamento resta registrato
+     */
+    private boolean enqueue(IngestionJob job) {
+        jobs.put(job.getId(), job);
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> process(job));
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Elabora un caricamento sul thread del pool, raccogliendo i messaggi nel suo MessageCollector.
+     */
+    private void process(IngestionJob job) {
+        queued.decrementAndGet();
+        job.markProcessing();
+        started.increment();
+        totalWaitMs.add(job.getStartedAt() - job.getSubmittedAt());
+        saveQuietly(job);
+
+        MessageCollector.bind(job.getMessages());
+        boolean successful = false;
+        try {
+            successful = ingest(job);
+        } catch (Exception | LinkageError e) {
+            // LinkageError: ad esempio DatabaseConnection non inizializzabile per configurazione mancante
+            e.printStackTrace();
+            MessageUtils.showErrorMessage("Si è verificato un errore durante il caricamento");
+        } finally {
+            MessageCollector.unbind();
+        }
+
+        job.markFinished(successful);
+        long elapsed = job.getFinishedAt() - job.getStartedAt();
+        totalProcessingMs.add(elapsed);
+        maxProcessingMs.accumulateAndGet(elapsed, Math::max);
+        (successful ? completed : failed).increment();
+
+        saveQuietly(job);
+        job.deleteFiles(false);
+    }
+
+    /**
+     * Valida, sanitizza e salva la proposta contenuta nel file di spool.
+     *
+     * @return true se la proposta è stata salvata
+     */
+    private static boolean ingest(IngestionJob job) throws Exception {
+        try (InputStream input = job.openData()) {
+            Reader sanitizedHtml = ProjectFileValidator.openSanitizedContent(input, job.getSize());
+            if (sanitizedHtml == null) {
+                return false;
+            }
+            if (ProjectDao.uploadProject(job.getOwner(), sanitizedHtml, job.getFileName())) {
+                MessageUtils.showInfoMessage("La proposta è stata correttamente caricata!");
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            ProjectFileValidator.showContentError(e);
+            return false;
+        }
+    }
+
+    private static void saveQuietly(IngestionJob job) {
+        try {
+            job.save();
+        } catch (IOException e) {
+            System.err.println("Impossibile salvare lo stato del caricamento " + job.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rilegge la cartella di spool: rimette in coda i caricamenti non terminati, conserva quelli
+     * terminati per la consultazione ed elimina i file temporanei e i dati senza file di stato.
+     *
+     * @return Numero di caricamenti rimessi in coda
+     */
+    int recover() {
+        int requeued = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(IngestionJob.TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(IngestionJob.DATA_SUFFIX)) {
+                    String id = name.substring(0, name.length() - IngestionJob.DATA_SUFFIX.length());
+                    if (!Files.exists(directory.resolve(id + IngestionJob.JOB_SUFFIX))) {
+                        Files.deleteIfExists(file);
+                    }
+                } else if (name.endsWith(IngestionJob.JOB_SUFFIX)) {
+                    requeued += recover(file) ? 1 : 0;
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("Impossibile leggere la cartella dei caricamenti " + directory + ": " + e.getMessage());
+        }
+        return requeued;
+    }
+
+    private boolean recover(Path jobFile) throws IOException {
+        IngestionJob job;
+        try {
+            job = IngestionJob.read(jobFile);
+        } catch (IOException e) {
+            logger.warning(e.getMessage());
+            Files.deleteIfExists(jobFile);
+            return false;
+        }
+        if (job.getState().isFinal()) {
+            jobs.put(job.getId(), job);
+            return false;
+        }
+        if (!Files.exists(job.getDataFile())) {
+            job.markFinished(false);
+            job.getMessages().add(MessageCollector.Level.ERROR, "Il file caricato non è più disponibile");
+            saveQuietly(job);
+            jobs.put(job.getId(), job);
+            return false;
+        }
+        if (!enqueue(job)) {
+            // Coda piena: il caricamento resta consultabile e viene ritentato da sweep
+            logger.warning("Caricamento " + job.getId() + " non rimesso in coda: coda piena, verrà ritentato");
+            deferred.add(job);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rimette in coda i caricamenti rinviati da recover finché c'è posto ed elimina
+     * i caricamenti terminati da più di projects.ingest.retentionMs millisecondi.
+     */
+    void sweep() {
+        IngestionJob next;
+        while ((next = deferred.peek()) != null && !executor.isShutdown() && enqueue(next)) {
+            deferred.poll();
+        }
+
+        long limit = System.currentTimeMillis() - retentionMs;
+        jobs.values().removeIf(job -> {
+            if (job.getState().isFinal() && job.getFinishedAt() < limit) {
+                job.deleteFiles(true);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Arresta il pool lasciando terminare i caricamenti in elaborazione; quelli ancora in coda
+     * restano su disco nello stato QUEUED e vengono ripresi al prossimo avvio.
+     *
+     * @param timeoutMs Attesa massima per i caricamenti in elaborazione
+     */
+    void shutdown(long timeoutMs) {
+        executor.shutdown();
+        executor.getQueue().clear();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                logger.warning("Elaborazione dei caricamenti non terminata entro " + timeoutMs + " ms, interruzione forzata");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Caricamenti in attesa di elaborazione, compresi quelli rinviati da recover
+     */
+    public int getQueueDepth() {
+        return queued.get() + deferred.size();
+    }
+
+    /**
+     * @return Caricamenti in elaborazione
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedCount() { return completed.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+
+    /**
+     * @return Tempo medio di attesa in coda in millisecondi
+     */
+    public double getAverageWaitMillis() {
+        long count = started.sum();
+        return count == 0 ? 0 : (double) totalWaitMs.sum() / count;
+    }
+
+    /**
+     * @return Tempo medio di elaborazione in millisecondi
+     */
+    public double getAverageProcessingMillis() {
+        long finished = completed.sum() + failed.sum();
+        return finished == 0 ? 0 : (double) totalProcessingMs.sum() / finished;
+    }
+
+    /**
+     * @return Tempo massimo di elaborazione in millisecondi
+     */
+    public long getMaxProcessingMillis() {
+        return maxProcessingMs.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Caricamenti asincroni: in coda=%d, in elaborazione=%d, completati=%d, "
+                + "falliti=%d, rifiutati=%d, attesa media=%.0f ms, elaborazione media=%.0f ms, massima=%d ms",
+                getQueueDepth(), getActiveCount(), getCompletedCount(), getFailedCount(), getRejectedCount(),
+                getAverageWaitMillis(), getAverageProcessingMillis(), getMaxProcessingMillis());
+    }
+}
@@ -0,0 +1,97 @@
+package project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
+/**
+ * Listener che avvia l'elaborazione asincrona dei caricamenti delle proposte
+ * quando projects.ingest.enabled=true (vedi ProposalIngestion).
+ * La cartella di spool è projects.ingest.dir, o in sua assenza la sottocartella "ingest"
+ * della cartella temporanea del contesto. All'avvio vengono ripresi i caricamenti in sospeso;
+ * ogni minuto vengono eliminati quelli terminati e scaduti.
+ * Il servizio, con le relative metriche, è disponibile come attributo del contesto.
+ *
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class ProposalIngestionListener implements ServletContextListener {
+
+    private static final Logger logger = Logger.getLogger(ProposalIngestionListener.class.getName());
+
+    // Nome dell'attributo del contesto con il servizio di caricamento asincrono
+    public static final String INGESTION_ATTRIBUTE = "proposalIngestion";
+
+    private static final long SWEEP_PERIOD_MS = 60_000;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private ProposalIngestion ingestion;
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (!ConfigManager.getBoolean("projects.ingest.enabled", false)) {
+            return;
+        }
+        ServletContext context = sce.getServletContext();
+        try {
+            ConfigSnapshot config = ConfigManager.getSnapshot();
+            ingestion = new ProposalIngestion(spoolDirectory(context, config), config);
+        } catch (IOException e) {
+            logger.severe("Caricamento asincrono delle proposte non disponibile: " + e.getMessage());
+            return;
+        }
+
+        int requeued = ingestion.recover();
+        if (requeued > 0) {
+            logger.info("Caricamenti delle proposte ripresi dopo il riavvio: " + requeued);
+        }
+        ProposalIngestion.publish(ingestion);
+        context.setAttribute(INGESTION_ATTRIBUTE, ingestion);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "proposal-ingestion-sweep");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(ingestion::sweep, SWEEP_PERIOD_MS, SWEEP_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static Path spoolDirectory(ServletContext context, ConfigSnapshot config) throws IOException {
+        String configured = config.getString("projects.ingest.dir", "").trim();
+        if (!configured.isEmpty()) {
+            return Paths.get(configured);
+        }
+        Object tempDir = context.getAttribute(ServletContext.TEMPDIR);
+        if (!(tempDir instanceof File)) {
+            throw new IOException("projects.ingest.dir non configurato e cartella temporanea del contesto assente");
+        }
+        return ((File) tempDir).toPath().resolve("ingest");
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (ingestion == null) {
+            return;
+        }
+        ProposalIngestion.publish(null);
+        sce.getServletContext().removeAttribute(INGESTION_ATTRIBUTE);
+        scheduler.shutdownNow();
+        ingestion.shutdown(ConfigManager.getLong("projects.ingest.shutdownTimeoutMs", DEFAULT_SHUTDOWN_TIMEOUT_MS));
+        logger.info(ingestion.toString());
+    }
+}
@@ -1,41 +1,21 @@
 package query;
 
-import java.io.IOException;
-import java.util.Properties;
-
-import utils.ConfigManager;
-
 /**
  * Classe per la gestione centralizzata delle query SQL.
  * Recupera le query dal file di configurazione, evitando duplicazioni
- * e garantendo coerenza.
+ * e garantendo coerenza. I metodi restano disponibili per compatibilità
+ * e delegano a QueryRegistry, che i DAO usano direttamente per i metadati (pool e timeout).
  * 
  * @author Giacomo Pagliara
  */
 public class DatabaseQueries {
-    // Costanti per i nomi delle proprietà
-    private static final String USER_LOGIN_QUERY = "db.query_userLogin";
-    private static final String USER_REGISTRATION_QUERY = "db.query_userRegistration";
-    private static final String USER_SALT_QUERY = "db.query_userSale";
-    private static final String USER_ALREADY_EXISTS_QUERY = "db.query_userAlreadyExist";
-    private static final String TAKE_USER_SALT_QUERY = "db.query_takeUserSale";
-    private static final String INSERT_PROPOSAL_QUERY = "db.query_insertProposta";
-    private static final String GET_USERNAMES_AND_PROPOSALS_QUERY = "db.query_takeUsernameAndProposta";
-    // Aggiungi queste costanti
-    private static final String INSERT_REMEMBER_TOKEN_QUERY = "db.query_insertRememberToken";
-    private static final String CHECK_REMEMBER_TOKEN_QUERY = "db.query_checkRememberToken";
-    private static final String DELETE_REMEMBER_TOKEN_QUERY = "db.query_deleteRememberToken";
-    private static final String DELETE_EXPIRED_TOKENS_QUERY = "db.query_deleteExpiredTokens";
-    // Costante per eliminazione per UUID
-    private static final String DELETE_TOKEN_BY_UUID_QUERY = "db.query_deleteTokenByUuid";
-    
     /**
      * Ottiene la query per il login dell'utente.
      * 
      * @return Query SQL per il login
      */
     public static String getLoginQuery() {
-        return getQueryProperty(USER_LOGIN_QUERY);
+        return getQuery(Query.USER_LOGIN);
     }
     
     /**
@@ -44,7 +24,7 @@ public class DatabaseQueries {
      * @return Query SQL per la registrazione
      */
     public static String getRegistrationUserQuery() {
-        return getQueryProperty(USER_REGISTRATION_QUERY);
+        return getQuery(Query.USER_REGISTRATION);
     }
     
     /**
@@ -53,7 +33,7 @@ public class DatabaseQueries {
      * @return Query SQL per il salvataggio del salt
      */
     public static String getUserSaltQuery() {
-        return getQueryProperty(USER_SALT_QUERY);
+        return getQuery(Query.USER_SALT);
     }
     
     /**
@@ -62,7 +42,7 @@ public class DatabaseQueries {
      * @return Query SQL per verificare l'esistenza
      */
     public static String getUserExistsQuery() {
-        return getQueryProperty(USER_ALREADY_EXISTS_QUERY);
+        return getQuery(Query.USER_ALREADY_EXISTS);
     }
     
     /**
@@ -71,7 +51,30 @@ public class DatabaseQueries {
      * @return Query SQL per recuperare il salt
      */
     public static String getUserSaltRetrievalQuery() {
-        return getQueryProperty(TAKE_USER_SALT_QUERY);
+        return getQuery(Query.TAKE_USER_SALT);
+    }
+    
+    /**
+     * Ottiene la query per recuperare in un'unica lettura l'hash della password
+     * e il salt di un utente. La query riceve lo username come unico parametro
+     * e deve restituire le colonne password e salt, ad esempio:
+     * SELECT u.password, s.salt FROM utente u JOIN sale s ON s.username = u.username WHERE u.username = ?
+     * 
+     * @return Query SQL per recuperare hash e salt
+     */
+    public static String getUserCredentialsQuery() {
+        return getQuery(Query.USER_CREDENTIALS);
+    }
+    
+    /**
+     * Ottiene la query per aggiornare l'hash della password di un utente.
+     * Parametri: nuovo hash e username, ad esempio:
+     * UPDATE utente SET password = ? WHERE username = ?
+     * 
+     * @return Query SQL per aggiornare l'hash della password
+     */
+    public static String getUpdateUserPasswordQuery() {
+        return getQuery(Query.UPDATE_USER_PASSWORD);
     }
     
     /**
@@ -80,7 +83,7 @@ public class DatabaseQueries {
      * @return Query SQL per inserire una proposta
      */
     public static String getInsertProposalQuery() {
-        return getQueryProperty(INSERT_PROPOSAL_QUERY);
+        return getQuery(Query.INSERT_PROPOSAL);
     }
     
     /**
@@ -89,24 +92,37 @@ public class DatabaseQueries {
      * @return Query SQL per recuperare utenti e proposte
      */
     public static String getUsersAndProposalsQuery() {
-        return getQueryProperty(GET_USERNAMES_AND_PROPOSALS_QUERY);
+        return getQuery(Query.USERNAMES_AND_PROPOSALS);
+    }
+    
+    /**
+     * Ottiene la query per recuperare una pagina di proposte con paginazione keyset.
+     * La query deve restituire le colonne id, username, fileName e htmlContent,
+     * ordinate per id crescente, con due parametri: l'id dopo il quale iniziare
+     * e il numero massimo di righe. Ad esempio:
+     * SELECT id, username, fileName, htmlContent FROM proposta WHERE id > ? ORDER BY id LIMIT ?
+     * 
+     * @return Query SQL per recuperare una pagina di proposte
+     */
+    public static String getProposalsPageQuery() {
+        return getQuery(Query.PROPOSALS_PAGE);
     }
     
     //  metodi per il token della funzionalita "ricordami"
     public static String getInsertRememberTokenQuery() {
-        return getQueryProperty(INSERT_REMEMBER_TOKEN_QUERY);
+        return getQuery(Query.INSERT_REMEMBER_TOKEN);
     }
 
     public static String getCheckRememberTokenQuery() {
-        return getQueryProperty(CHECK_REMEMBER_TOKEN_QUERY);
+        return getQuery(Query.CHECK_REMEMBER_TOKEN);
     }
 
     public static String getDeleteRememberTokenQuery() {
-        return getQueryProperty(DELETE_REMEMBER_TOKEN_QUERY);
+        return getQuery(Query.DELETE_REMEMBER_TOKEN);
     }
 
     public static String getDeleteExpiredTokensQuery() {
-        return getQueryProperty(DELETE_EXPIRED_TOKENS_QUERY);
+        return getQuery(Query.DELETE_EXPIRED_TOKENS);
     }
     
     /**
@@ -115,23 +131,51 @@ public class DatabaseQueries {
      * @return Query SQL per l'eliminazione del token per UUID
      */
     public static String getDeleteTokenByUuidQuery() {
-        return getQueryProperty(DELETE_TOKEN_BY_UUID_QUERY);
+        return getQuery(Query.DELETE_TOKEN_BY_UUID);
+    }
+    
+    /**
+     * Ottiene la query per sostituire il valore memorizzato di un token "ricordami",
+     * condizionata al valore precedente. I parametri sono il nuovo valore, l'UUID
+     * e il valore atteso. Ad esempio:
+     * UPDATE remember_token SET token = ? WHERE uuid = ? AND token = ?
+     * 
+     * @return Query SQL per l'aggiornamento del token
+     */
+    public static String getUpdateRememberTokenQuery() {
+        return getQuery(Query.UPDATE_REMEMBER_TOKEN);
+    }
+    
+    /**
+     * Ottiene la query per eliminare un blocco limitato di token scaduti.
+     * L'unico parametro è il numero massimo di righe. Ad esempio:
+     * DELETE FROM remember_token WHERE expiry_date &lt; NOW() LIMIT ?
+     * 
+     * @return Query SQL per l'eliminazione a blocchi dei token scaduti
+     */
+    public static String getDeleteExpiredTokensChunkQuery() {
+        return getQuery(Query.DELETE_EXPIRED_TOKENS_CHUNK);
+    }
+    
+    /**
+     * Ottiene la query per leggere tutti i nomi utente registrati, usata per costruire
+     * il filtro dei nomi utente noti. La query non ha parametri e deve restituire
+     * la colonna username. Ad esempio:
+     * SELECT username FROM utente
+     * 
+     * @return Query SQL per la lettura dei nomi utente
+     */
+    public static String getAllUsernamesQuery() {
+        return getQuery(Query.ALL_USERNAMES);
     }
     
     /**
-     * Recupera una query specifica dal file di configurazione.
+     * Recupera una query dal registro costruito all'avvio, senza lock né accessi alla configurazione.
      * 
-     * @param propertyName Nome della proprietà da recuperare
-     * @return Valore della proprietà o null in caso di errore
+     * @param query Query da recuperare
+     * @return Testo della query o null se non è configurata
      */
-    private static String getQueryProperty(String propertyName) {
-        try {
-            Properties properties = ConfigManager.getProperties();
-            return properties.getProperty(propertyName);
-        } catch (IOException e) {
-            System.err.println("Errore nel recupero della query " + propertyName);
-            e.printStackTrace();
-            return null;
-        }
+    private static String getQuery(Query query) {
+        return QueryRegistry.get().sql(query);
     }
 }
\ No newline at end of file
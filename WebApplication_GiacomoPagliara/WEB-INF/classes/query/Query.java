@@ -0,0 +1,65 @@
+package query;
+
+/**
+ * Elenco delle query SQL dell'applicazione con i relativi metadati:
+ * chiave nel file di configurazione, pool di connessioni da usare,
+ * timeout predefinito e numero di parametri atteso.
+ * Il timeout si può modificare per singola query con la proprietà &lt;chiave&gt;.timeout (secondi).
+ *
+ * @author Giacomo Pagliara
+ */
+public enum Query {
+
+    USER_LOGIN("db.query_userLogin", Pool.READ, 5, Query.UNKNOWN_PARAMETERS, false),
+    USER_REGISTRATION("db.query_userRegistration", Pool.WRITE, 10, 3, true),
+    USER_SALT("db.query_userSale", Pool.WRITE, 10, 2, true),
+    USER_ALREADY_EXISTS("db.query_userAlreadyExist", Pool.READ, 5, 1, true),
+    TAKE_USER_SALT("db.query_takeUserSale", Pool.READ, 5, 1, false),
+    USER_CREDENTIALS("db.query_userCredentials", Pool.READ, 5, 1, true),
+    UPDATE_USER_PASSWORD("db.query_updateUserPassword", Pool.WRITE, 10, 2, true),
+    INSERT_PROPOSAL("db.query_insertProposta", Pool.WRITE, 30, 3, true),
+    USERNAMES_AND_PROPOSALS("db.query_takeUsernameAndProposta", Pool.READ, 30, 0, false),
+    PROPOSALS_PAGE("db.query_takeProposalsPage", Pool.READ, 30, 2, true),
+    INSERT_REMEMBER_TOKEN("db.query_insertRememberToken", Pool.WRITE, 5, 4, true),
+    CHECK_REMEMBER_TOKEN("db.query_checkRememberToken", Pool.READ, 5, 1, true),
+    DELETE_REMEMBER_TOKEN("db.query_deleteRememberToken", Pool.WRITE, 5, 1, true),
+    DELETE_EXPIRED_TOKENS("db.query_deleteExpiredTokens", Pool.WRITE, 60, 0, false),
+    DELETE_TOKEN_BY_UUID("db.query_deleteTokenByUuid", Pool.WRITE, 5, 1, true),
+    UPDATE_REMEMBER_TOKEN("db.query_updateRememberToken", Pool.WRITE, 5, 3, false),
+    DELETE_EXPIRED_TOKENS_CHUNK("db.query_deleteExpiredTokensChunk", Pool.WRITE, 30, 1, true),
+    ALL_USERNAMES("db.query_allUsernames", Pool.READ, 300, 0, false);
+
+    /**
+     * Pool di connessioni su cui eseguire la query.
+     */
+    public enum Pool {
+        READ, WRITE
+    }
+
+    // Valore usato quando il numero di parametri non è noto e non va verificato
+    static final int UNKNOWN_PARAMETERS = -1;
+
+    private final String propertyKey;
+    private final Pool pool;
+    private final int defaultTimeoutSeconds;
+    private final int parameterCount;
+    private final boolean required;
+
+    Query(String propertyKey, Pool pool, int defaultTimeoutSeconds, int parameterCount, boolean required) {
+        this.propertyKey = propertyKey;
+        this.pool = pool;
+        this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+        this.parameterCount = parameterCount;
+        this.required = required;
+    }
+
+    public String getPropertyKey() { return propertyKey; }
+    public Pool getPool() { return pool; }
+    public int getDefaultTimeoutSeconds() { return defaultTimeoutSeconds; }
+    public int getParameterCount() { return parameterCount; }
+
+    /**
+     * @return true se l'applicazione non può funzionare correttamente senza questa query
+     */
+    public boolean isRequired() { return required; }
+}
@@ -0,0 +1,286 @@
+package query;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import utils.ConfigManager;
+
+/**
+ * Registro immutabile delle query SQL, costruito dalla configurazione all'avvio
+ * e ricostruito a ogni ricaricamento (vedi QueryRegistryListener).
+ * Le query sono conservate in un array indicizzato per Query.ordinal(), per cui
+ * la lettura non richiede lock né accessi a Properties.
+ *
+ * Alla costruzione ogni query viene verificata: presenza (obbligatoria per le query
+ * marcate come necessarie), tipo di istruzione coerente con il pool (SELECT in lettura,
+ * INSERT/UPDATE/DELETE in scrittura) e numero di parametri '?' uguale a quello atteso.
+ * I problemi riscontrati sono disponibili con getProblems e vengono registrati all'avvio.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class QueryRegistry {
+
+    private static final Logger logger = Logger.getLogger(QueryRegistry.class.getName());
+
+    private static final Query[] QUERIES = Query.values();
+
+    // Registro corrente; il riferimento volatile garantisce la pubblicazione sicura degli array
+    private static volatile QueryRegistry current = load();
+
+    private final String[] sql;
+    private final int[] timeouts;
+    private final List<String> problems;
+
+    private QueryRegistry(Properties properties) {
+        String[] sql = new String[QUERIES.length];
+        int[] timeouts = new int[QUERIES.length];
+        List<String> problems = new ArrayList<>();
+
+        for (Query query : QUERIES) {
+            String value = properties.getProperty(query.getPropertyKey());
+            value = value == null || value.trim().isEmpty() ? null : value.trim();
+            sql[query.ordinal()] = value;
+            timeouts[query.ordinal()] = readTimeout(properties, query, problems);
+
+            if (value == null) {
+                if (query.isRequired()) {
+                    problems.add(query.getPropertyKey() + ": query non configurata");
+                }
+                continue;
+            }
+            String problem = check(query, value);
+            if (problem != null) {
+                problems.add(query.getPropertyKey() + ": " + problem);
+            }
+        }
+
+        this.sql = sql;
+        this.timeouts = timeouts;
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Restituisce il registro corrente.
+     *
+     * @return Registro delle query
+     */
+    public static QueryRegistry get() {
+        return current;
+    }
+
+    /**
+     * Ricostruisce il registro dalla configurazione e lo sostituisce a quello corrente.
+     *
+     * @return Nuovo registro
+     */
+    public static QueryRegistry reload() {
+        QueryRegistry registry = load();
+        current = registry;
+        return registry;
+    }
+
+    /**
+     * Costruisce un registro dalle proprietà indicate senza pubblicarlo,
+     * ad esempio per validare una configurazione prima di applicarla.
+     *
+     * @param properties Proprietà di configurazione
+     * @return Nuovo registro
+     */
+    public static QueryRegistry build(Properties properties) {
+        return new QueryRegistry(properties);
+    }
+
+    /**
+     * Pubblica un registro costruito con build.
+     *
+     * @param registry Registro da rendere corrente
+     */
+    public static void publish(QueryRegistry registry) {
+        current = registry;
+    }
+
+    /**
+     * Restituisce il testo SQL di una query.
+     *
+     * @param query Query richiesta
+     * @return Testo SQL o null se la query non è configurata
+     */
+    public String sql(Query query) {
+        return sql[query.ordinal()];
+    }
+
+    /**
+     * Restituisce il timeout di una query in secondi.
+     *
+     * @param query Query richiesta
+     * @return Timeout in secondi (0 per nessun limite)
+     */
+    public int timeout(Query query) {
+        return timeouts[query.ordinal()];
+    }
+
+    /**
+     * @return Problemi riscontrati durante la verifica delle query
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Prepara una query sulla connessione indicata applicando il timeout configurato.
+     *
+     * @param connection Connessione al database
+     * @param query Query da preparare
+     * @return Statement preparato
+     * @throws SQLException Se la query non è configurata o la preparazione non riesce
+     */
+    public static PreparedStatement prepare(Connection connection, Query query) throws SQLException {
+        QueryRegistry registry = current;
+        String text = registry.sql(query);
+        if (text == null) {
+            throw new SQLException("Query " + query.getPropertyKey() + " non configurata");
+        }
+        PreparedStatement statement = connection.prepareStatement(text);
+        int timeout = registry.timeout(query);
+        if (timeout > 0) {
+            try {
+                statement.setQueryTimeout(timeout);
+            } catch (SQLException | RuntimeException e) {
+                // Lo statement non arriva al chiamante: va chiuso qui
+                try {
+                    statement.close();
+                } catch (SQLException closeError) {
+                    e.addSuppressed(closeError);
+                }
+                throw e;
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * Legge la configurazione e costruisce un nuovo registro.
+     * Se la configurazione non è leggibile si ottiene un registro vuoto, i cui problemi lo segnalano.
+     */
+    private static QueryRegistry load() {
+        Properties properties;
+        try {
+            properties = ConfigManager.getProperties();
+        } catch (IOException e) {
+            System.err.println("Impossibile caricare le query: " + e.getMessage());
+            properties = new Properties();
+        }
+
+        QueryRegistry registry = new QueryRegistry(properties);
+        for (String problem : registry.problems) {
+            logger.severe("Query non valida - " + problem);
+        }
+        return registry;
+    }
+
+    /**
+     * Legge il timeout di una query, con il valore predefinito in caso di assenza o errore.
+     */
+    private static int readTimeout(Properties properties, Query query, List<String> problems) {
+        String value = properties.getProperty(query.getPropertyKey() + ".timeout");
+        if (value == null || value.trim().isEmpty()) {
+            return query.getDefaultTimeoutSeconds();
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            problems.add(query.getPropertyKey() + ".timeout: valore non numerico");
+            return query.getDefaultTimeoutSeconds();
+        }
+    }
+
+    /**
+     * Verifica tipo di istruzione e numero di parametri di una query.
+     *
+     * @return Descrizione del problema o null se la query è corretta
+     */
+    static String check(Query query, String text) {
+        String verb = firstWord(text);
+        boolean read = "SELECT".equals(verb) || "WITH".equals(verb);
+        boolean write = "INSERT".equals(verb) || "UPDATE".equals(verb) || "DELETE".equals(verb)
+                || "REPLACE".equals(verb);
+        if (query.getPool() == Query.Pool.READ && !read) {
+            return "attesa una SELECT per il pool di lettura, trovato " + verb;
+        }
+        if (query.getPool() == Query.Pool.WRITE && !write) {
+            return "attesa una istruzione di modifica per il pool di scrittura, trovato " + verb;
+        }
+
+        int parameters = countParameters(text);
+        if (parameters < 0) {
+            return "stringa o commento non terminato";
+        }
+        if (query.getParameterCount() != Query.UNKNOWN_PARAMETERS && parameters != query.getParameterCount()) {
+            return "attesi " + query.getParameterCount() + " parametri, trovati " + parameters;
+        }
+        return null;
+    }
+
+    /**
+     * Restituisce la prima parola dell'istruzione in maiuscolo.
+     */
+    private static String firstWord(String text) {
+        int start = 0;
+        while (start < text.length() && !Character.isLetter(text.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < text.length() && Character.isLetter(text.charAt(end))) {
+            end++;
+        }
+        return text.substring(start, end).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Conta i segnaposto '?' esclusi quelli in stringhe, identificatori tra apici inversi e commenti.
+     *
+     * @return Numero di segnaposto, o -1 se una stringa o un commento non è terminato
+     */
+    private static int countParameters(String text) {
+        int count = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                // Stringa o identificatore: salta fino al delimitatore di chiusura, gestendo gli escape
+                int j = i + 1;
+                while (j < length && text.charAt(j) != c) {
+                    j += text.charAt(j) == '\\' ? 2 : 1;
+                }
+                if (j >= length) {
+                    return -1;
+                }
+                i = j + 1;
+            } else if (c == '-' && i + 1 < length && text.charAt(i + 1) == '-' || c == '#') {
+                int end = text.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*') {
+                int end = text.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end + 2;
+            } else {
+                if (c == '?') {
+                    count++;
+                }
+                i++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,61 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import utils.ConfigChangeListener;
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
+/**
+ * Listener che costruisce e verifica il registro delle query all'avvio,
+ * così che una query mancante o errata venga segnalata subito e non alla prima richiesta.
+ * Con db.query.failOnInvalid=true l'avvio dell'applicazione viene interrotto.
+ *
+ * Quando la configurazione viene ricaricata il registro viene ricostruito; una configurazione
+ * che introduce nuovi problemi nelle query viene rifiutata e resta in vigore la precedente.
+ *
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class QueryRegistryListener implements ServletContextListener, ConfigChangeListener {
+
+    private static final String QUERY_PREFIX = "db.query";
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        QueryRegistry registry = QueryRegistry.get();
+        if (!registry.getProblems().isEmpty() && ConfigManager.getBoolean("db.query.failOnInvalid", false)) {
+            throw new IllegalStateException("Configurazione delle query non valida: " + registry.getProblems());
+        }
+        ConfigManager.addListener(this);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ConfigManager.removeListener(this);
+    }
+
+    @Override
+    public List<String> validate(ConfigSnapshot candidate, Set<String> changedKeys) {
+        if (!ConfigSnapshot.anyStartsWith(changedKeys, QUERY_PREFIX)) {
+            return Collections.emptyList();
+        }
+        List<String> problems = new ArrayList<>(QueryRegistry.build(candidate.toProperties()).getProblems());
+        problems.removeAll(QueryRegistry.get().getProblems());
+        return problems;
+    }
+
+    @Override
+    public void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+        if (ConfigSnapshot.anyStartsWith(changedKeys, QUERY_PREFIX)) {
+            QueryRegistry.publish(QueryRegistry.build(current.toProperties()));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ratelimit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mappa dei secchi per chiave (indirizzo IP o nome utente), divisa in segmenti
+ * di dimensione limitata. La lettura di un secchio esistente non acquisisce lock;
+ * la dimensione limitata per segmento impedisce che un attacco con molte chiavi diverse
+ * esaurisca la memoria.
+ *
+ * I secchi rimasti pieni per il tempo di inattività vengono rimossi periodicamente con sweep:
+ * rimuoverli non cambia il comportamento del limite. Se un segmento è pieno al momento
+ * di un inserimento vengono rimossi prima i secchi pieni e poi, se necessario, secchi qualsiasi;
+ * in quest'ultimo caso le chiavi rimosse ripartono con il secchio pieno.
+ *
+ * @author Giacomo Pagliara
+ */
+final class BucketMap {
+
+    private static final int STRIPES = 16;
+
+    private final ConcurrentHashMap<String, TokenBucket>[] stripes;
+    private final int maxPerStripe;
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries Numero massimo complessivo di secchi
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BucketMap(int maxEntries) {
+        this.maxPerStripe = Math.max(1, maxEntries / STRIPES);
+        this.stripes = new ConcurrentHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Restituisce il secchio di una chiave, creandolo pieno se non esiste.
+     *
+     * @param key Chiave
+     * @param now Istante corrente in nanosecondi
+     * @return Secchio della chiave
+     */
+    TokenBucket get(String key, long now) {
+        ConcurrentHashMap<String, TokenBucket> stripe = stripeFor(key);
+        TokenBucket bucket = stripe.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (stripe.size() >= maxPerStripe) {
+            makeRoom(stripe, now);
+        }
+        bucket = new TokenBucket(now);
+        TokenBucket existing = stripe.putIfAbsent(key, bucket);
+        return existing != null ? existing : bucket;
+    }
+
+    /**
+     * Rimuove i secchi inattivi.
+     *
+     * @param now Istante corrente in nanosecondi
+     * @param idleNanos Tempo di inattività oltre il quale un secchio pieno viene rimosso
+     * @return Numero di secchi rimossi
+     */
+    int sweep(long now, long idleNanos) {
+        int removed = 0;
+        for (ConcurrentHashMap<String, TokenBucket> stripe : stripes) {
+            removed += removeIdle(stripe, now, idleNanos, Integer.MAX_VALUE);
+        }
+        return removed;
+    }
+
+    /**
+     * @return Numero attuale di secchi
+     */
+    int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, TokenBucket> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Numero di secchi rimossi per mancanza di spazio
+     */
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    private ConcurrentHashMap<String, TokenBucket> stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Libera circa un decimo del segmento, partendo dai secchi pieni.
+     */
+    private void makeRoom(ConcurrentHashMap<String, TokenBucket> stripe, long now) {
+        int target = Math.max(1, maxPerStripe / 10);
+        int removed = removeIdle(stripe, now, 0, target);
+        Iterator<Map.Entry<String, TokenBucket>> iterator = stripe.entrySet().iterator();
+        while (removed < target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            removed++;
+        }
+        evictions.add(removed);
+    }
+
+    private static int removeIdle(ConcurrentHashMap<String, TokenBucket> stripe, long now, long idleNanos, int max) {
+        int removed = 0;
+        Iterator<Map.Entry<String, TokenBucket>> iterator = stripe.entrySet().iterator();
+        while (removed < max && iterator.hasNext()) {
+            Map.Entry<String, TokenBucket> entry = iterator.next();
+            if (entry.getValue().isIdle(now, idleNanos) && stripe.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
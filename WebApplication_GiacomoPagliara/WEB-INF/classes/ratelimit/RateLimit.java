@@ -0,0 +1,41 @@
+package ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limite immutabile di un token bucket: numero di richieste al minuto e capienza,
+ * cioè quante richieste possono arrivare insieme dopo un periodo di inattività.
+ *
+ * @author Giacomo Pagliara
+ */
+final class RateLimit {
+
+    private final int perMinute;
+    private final int burst;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    /**
+     * @param perMinute Richieste al minuto (maggiore di zero)
+     * @param burst Capienza del secchio (almeno 1)
+     */
+    RateLimit(int perMinute, int burst) {
+        if (perMinute <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("limite non valido: " + perMinute + "/min, capienza " + burst);
+        }
+        this.perMinute = perMinute;
+        this.burst = burst;
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / perMinute;
+        this.toleranceNanos = intervalNanos * (burst - 1);
+    }
+
+    int getPerMinute() { return perMinute; }
+    int getBurst() { return burst; }
+    long getIntervalNanos() { return intervalNanos; }
+    long getToleranceNanos() { return toleranceNanos; }
+
+    @Override
+    public String toString() {
+        return perMinute + "/min, capienza " + burst;
+    }
+}
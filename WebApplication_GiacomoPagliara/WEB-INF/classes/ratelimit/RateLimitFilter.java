@@ -0,0 +1,225 @@
+package ratelimit;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import com.google.gson.JsonObject;
+
+import utils.ConfigChangeListener;
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
+/**
+ * Filtro che limita le richieste POST di login, registrazione e caricamento delle proposte
+ * per indirizzo IP e per nome utente (vedi RateLimiter), prima che raggiungano il database
+ * o il calcolo degli hash. Le richieste oltre il limite ricevono 429 con l'intestazione Retry-After.
+ *
+ * Il nome utente è il parametro "username" per il login e l'utente della sessione per il
+ * caricamento; la registrazione è limitata solo per IP, per non leggere il corpo multipart
+ * nel filtro. Con ratelimit.trustForwardedFor=true l'indirizzo viene letto dal primo valore
+ * di X-Forwarded-For, da abilitare solo dietro un proxy che lo imposta.
+ *
+ * I limitatori sono disponibili come attributo del contesto per la lettura delle statistiche;
+ * i secchi inattivi vengono rimossi periodicamente.
+ *
+ * @author Giacomo Pagliara
+ */
+@WebFilter(urlPatterns = {"/LoginServlet", "/RegistrationServlet", "/ProjectServlet"})
+public class RateLimitFilter implements Filter, ConfigChangeListener {
+
+    private static final Logger logger = Logger.getLogger(RateLimitFilter.class.getName());
+
+    // Nome dell'attributo del contesto con i limitatori per endpoint
+    public static final String LIMITERS_ATTRIBUTE = "rateLimiters";
+
+    private static final String PREFIX = "ratelimit.";
+    private static final int DEFAULT_MAX_ENTRIES = 100_000;
+    private static final long DEFAULT_IDLE_MS = 10 * 60 * 1000L;
+    private static final long SWEEP_PERIOD_MS = 60 * 1000L;
+    private static final int MAX_USERNAME_LENGTH = 64;
+
+    private final Map<String, RateLimiter> limiters = new LinkedHashMap<>();
+    private volatile boolean enabled;
+    private volatile boolean trustForwardedFor;
+    private volatile long idleNanos;
+    private ScheduledExecutorService sweeper;
+    private FilterConfig filterConfig;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        this.filterConfig = filterConfig;
+        int maxEntries = ConfigManager.getInt(PREFIX + "maxEntries", DEFAULT_MAX_ENTRIES);
+
+        // Valori predefiniti: richieste al minuto e capienza per IP e per utente
+        limiters.put("/LoginServlet", new RateLimiter("login", 30, 10, 10, 5, maxEntries));
+        limiters.put("/RegistrationServlet", new RateLimiter("registration", 5, 3, 0, 1, maxEntries));
+        limiters.put("/ProjectServlet", new RateLimiter("upload", 10, 5, 10, 5, maxEntries));
+
+        try {
+            apply(ConfigManager.getSnapshot());
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ServletException("Configurazione del limite delle richieste non valida", e);
+        }
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_PERIOD_MS, SWEEP_PERIOD_MS, TimeUnit.MILLISECONDS);
+
+        filterConfig.getServletContext().setAttribute(LIMITERS_ATTRIBUTE,
+                Collections.unmodifiableCollection(limiters.values()));
+        ConfigManager.addListener(this);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        RateLimiter limiter = limiters.get(httpRequest.getServletPath());
+        if (!enabled || limiter == null || !"POST".equals(httpRequest.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long wait = limiter.acquire(clientAddress(httpRequest), username(httpRequest, limiter), System.nanoTime());
+        if (wait == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        httpResponse.setStatus(429);
+        httpResponse.setHeader("Retry-After", Long.toString(retryAfter));
+        httpResponse.setContentType("application/json");
+        httpResponse.setCharacterEncoding("UTF-8");
+        JsonObject error = new JsonObject();
+        error.addProperty("error", "Troppe richieste, riprova tra " + retryAfter + " secondi");
+        error.addProperty("retryAfter", retryAfter);
+        httpResponse.getWriter().write(error.toString());
+    }
+
+    @Override
+    public void destroy() {
+        ConfigManager.removeListener(this);
+        if (filterConfig != null) {
+            filterConfig.getServletContext().removeAttribute(LIMITERS_ATTRIBUTE);
+        }
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        for (RateLimiter limiter : limiters.values()) {
+            logger.info(limiter.toString());
+        }
+    }
+
+    @Override
+    public List<String> validate(ConfigSnapshot candidate, Set<String> changedKeys) {
+        List<String> problems = new ArrayList<>();
+        if (ConfigSnapshot.anyStartsWith(changedKeys, PREFIX)) {
+            for (RateLimiter limiter : limiters.values()) {
+                RateLimiter probe = new RateLimiter(limiter.getName(), 0, 1, 0, 1, 1);
+                try {
+                    probe.configure(candidate);
+                } catch (IllegalArgumentException e) {
+                    problems.add(e.getMessage());
+                }
+            }
+        }
+        return problems;
+    }
+
+    @Override
+    public void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+        if (ConfigSnapshot.anyStartsWith(changedKeys, PREFIX)) {
+            apply(current);
+            logger.info("Limiti delle richieste aggiornati");
+        }
+    }
+
+    private void apply(ConfigSnapshot config) {
+        for (RateLimiter limiter : limiters.values()) {
+            limiter.configure(config);
+        }
+        trustForwardedFor = config.getBoolean(PREFIX + "trustForwardedFor", false);
+        idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getLong(PREFIX + "idleMs", DEFAULT_IDLE_MS)));
+        enabled = config.getBoolean(PREFIX + "enabled", true);
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        for (RateLimiter limiter : limiters.values()) {
+            removed += limiter.sweep(now, idleNanos);
+        }
+        if (removed > 0) {
+            logger.fine("Limite delle richieste: rimossi " + removed + " secchi inattivi");
+        }
+    }
+
+    private String clientAddress(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isEmpty()) {
+                int comma = forwarded.indexOf(',');
+                return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Restituisce il nome utente normalizzato a cui applicare il limite, o null se non noto.
+     */
+    private static String username(HttpServletRequest request, RateLimiter limiter) {
+        String username;
+        switch (limiter.getName()) {
+            case "login":
+                // Stessa codifica impostata da LoginServlet, che non potrebbe più cambiarla dopo questa lettura
+                if (request.getCharacterEncoding() == null) {
+                    try {
+                        request.setCharacterEncoding("UTF-8");
+                    } catch (UnsupportedEncodingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                username = request.getParameter("username");
+                break;
+            case "upload":
+                HttpSession session = request.getSession(false);
+                username = session != null ? (String) session.getAttribute("nomeUtente") : null;
+                break;
+            default:
+                return null;
+        }
+        if (username == null || username.trim().isEmpty()) {
+            return null;
+        }
+        username = username.trim().toLowerCase(Locale.ROOT);
+        return username.length() > MAX_USERNAME_LENGTH ? username.substring(0, MAX_USERNAME_LENGTH) : username;
+    }
+}
@@ -0,0 +1,135 @@
+package ratelimit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import utils.ConfigSnapshot;
+
+/**
+ * Limitatore delle richieste di un endpoint, con un secchio per indirizzo IP
+ * e uno per nome utente. Una richiesta è accettata solo se entrambi i secchi hanno
+ * un gettone disponibile; il secchio dell'IP viene consultato per primo.
+ *
+ * I limiti si configurano con ratelimit.&lt;endpoint&gt;.ip.perMinute, .ip.burst,
+ * .user.perMinute e .user.burst; un valore di perMinute pari a 0 disattiva il limite.
+ * Le modifiche vengono applicate ai secchi esistenti al ricaricamento della configurazione.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class RateLimiter {
+
+    private final String name;
+    private final int defaultIpPerMinute;
+    private final int defaultIpBurst;
+    private final int defaultUserPerMinute;
+    private final int defaultUserBurst;
+
+    // Limiti correnti; null se il limite è disattivato
+    private volatile RateLimit ipLimit;
+    private volatile RateLimit userLimit;
+
+    private final BucketMap ipBuckets;
+    private final BucketMap userBuckets;
+
+    // Statistiche
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttledByIp = new LongAdder();
+    private final LongAdder throttledByUser = new LongAdder();
+
+    /**
+     * @param name Nome dell'endpoint, usato nelle chiavi di configurazione
+     * @param ipPerMinute Richieste al minuto predefinite per IP
+     * @param ipBurst Capienza predefinita per IP
+     * @param userPerMinute Richieste al minuto predefinite per utente
+     * @param userBurst Capienza predefinita per utente
+     * @param maxEntries Numero massimo di secchi per tipo di chiave
+     */
+    RateLimiter(String name, int ipPerMinute, int ipBurst, int userPerMinute, int userBurst, int maxEntries) {
+        this.name = name;
+        this.defaultIpPerMinute = ipPerMinute;
+        this.defaultIpBurst = ipBurst;
+        this.defaultUserPerMinute = userPerMinute;
+        this.defaultUserBurst = userBurst;
+        this.ipBuckets = new BucketMap(maxEntries);
+        this.userBuckets = new BucketMap(maxEntries);
+    }
+
+    /**
+     * Legge i limiti dalla configurazione.
+     *
+     * @param config Istantanea della configurazione
+     * @throws IllegalArgumentException Se un limite non è valido
+     */
+    void configure(ConfigSnapshot config) {
+        RateLimit ip = read(config, "ip", defaultIpPerMinute, defaultIpBurst);
+        RateLimit user = read(config, "user", defaultUserPerMinute, defaultUserBurst);
+        ipLimit = ip;
+        userLimit = user;
+    }
+
+    /**
+     * Verifica i limiti per una richiesta e, se accettata, consuma i gettoni.
+     *
+     * @param ip Indirizzo del client
+     * @param username Nome utente, o null se non noto
+     * @param now Istante corrente in nanosecondi
+     * @return 0 se la richiesta è accettata, altrimenti i nanosecondi da attendere
+     */
+    long acquire(String ip, String username, long now) {
+        RateLimit ipLimit = this.ipLimit;
+        if (ipLimit != null && ip != null) {
+            long wait = ipBuckets.get(ip, now).tryAcquire(ipLimit, now);
+            if (wait > 0) {
+                throttledByIp.increment();
+                return wait;
+            }
+        }
+        RateLimit userLimit = this.userLimit;
+        if (userLimit != null && username != null) {
+            long wait = userBuckets.get(username, now).tryAcquire(userLimit, now);
+            if (wait > 0) {
+                throttledByUser.increment();
+                return wait;
+            }
+        }
+        allowed.increment();
+        return 0;
+    }
+
+    /**
+     * Rimuove i secchi inattivi.
+     *
+     * @param now Istante corrente in nanosecondi
+     * @param idleNanos Tempo di inattività
+     * @return Numero di secchi rimossi
+     */
+    int sweep(long now, long idleNanos) {
+        return ipBuckets.sweep(now, idleNanos) + userBuckets.sweep(now, idleNanos);
+    }
+
+    public String getName() { return name; }
+    public long getAllowed() { return allowed.sum(); }
+    public long getThrottledByIp() { return throttledByIp.sum(); }
+    public long getThrottledByUser() { return throttledByUser.sum(); }
+    public int getTrackedKeys() { return ipBuckets.size() + userBuckets.size(); }
+    public long getEvictions() { return ipBuckets.getEvictions() + userBuckets.getEvictions(); }
+
+    private RateLimit read(ConfigSnapshot config, String kind, int defaultPerMinute, int defaultBurst) {
+        String prefix = "ratelimit." + name + "." + kind + ".";
+        int perMinute = config.getInt(prefix + "perMinute", defaultPerMinute);
+        if (perMinute == 0) {
+            return null;
+        }
+        try {
+            return new RateLimit(perMinute, config.getInt(prefix + "burst", defaultBurst));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(prefix + "*: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter[" + name + ", ip=" + ipLimit + ", utente=" + userLimit + ", accettate=" + getAllowed()
+                + ", rifiutate ip=" + getThrottledByIp() + ", rifiutate utente=" + getThrottledByUser()
+                + ", chiavi=" + getTrackedKeys() + ", evizioni=" + getEvictions() + "]";
+    }
+}
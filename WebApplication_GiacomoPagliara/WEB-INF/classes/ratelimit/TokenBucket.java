@@ -0,0 +1,69 @@
+package ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Token bucket senza lock, realizzato come "generic cell rate algorithm":
+ * invece di contare i gettoni e l'ultima ricarica, conserva un solo valore, l'istante teorico
+ * (in nanosecondi di System.nanoTime) in cui il secchio tornerà pieno. Un gettone costa un
+ * intervallo; la richiesta è accettata se dopo il consumo il secchio resta entro la capienza.
+ * L'aggiornamento è un compare-and-set su un long, per cui non servono lock né allocazioni.
+ *
+ * I parametri (intervallo e capienza) appartengono al RateLimit e non al secchio, così da
+ * poterli modificare a caldo senza ricreare i secchi.
+ *
+ * @author Giacomo Pagliara
+ */
+final class TokenBucket {
+
+    private static final AtomicLongFieldUpdater<TokenBucket> FULL_AT =
+            AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "fullAt");
+
+    // Istante in cui il secchio sarà di nuovo pieno; nel passato se è già pieno
+    private volatile long fullAt;
+
+    /**
+     * Crea un secchio pieno.
+     *
+     * @param now Istante corrente in nanosecondi
+     */
+    TokenBucket(long now) {
+        this.fullAt = now;
+    }
+
+    /**
+     * Consuma un gettone se disponibile.
+     *
+     * @param limit Limite da applicare
+     * @param now Istante corrente in nanosecondi
+     * @return 0 se il gettone è stato consumato, altrimenti i nanosecondi da attendere
+     */
+    long tryAcquire(RateLimit limit, long now) {
+        long interval = limit.getIntervalNanos();
+        long tolerance = limit.getToleranceNanos();
+        while (true) {
+            long current = fullAt;
+            long start = current - now < 0 ? now : current;
+            // Il gettone è disponibile se il secchio non è già in debito oltre la capienza
+            long wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (FULL_AT.compareAndSet(this, current, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Indica se il secchio è pieno da almeno idleNanos, e può quindi essere rimosso
+     * senza alcun effetto sul limite: un secchio nuovo è identico.
+     *
+     * @param now Istante corrente in nanosecondi
+     * @param idleNanos Tempo minimo di inattività
+     * @return true se il secchio è inattivo
+     */
+    boolean isIdle(long now, long idleNanos) {
+        return now - fullAt >= idleNanos;
+    }
+}
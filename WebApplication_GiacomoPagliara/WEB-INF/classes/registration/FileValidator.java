@@ -6,13 +6,14 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import javax.servlet.http.Part;
-import org.apache.tika.Tika;
 
 import utils.MessageUtils;
+import utils.ContentTypeDetector;
 
 /**
  * Classe per la validazione dei file caricati dagli utenti.
- * Utilizza Apache Tika per verificare i tipi MIME dei file.
+ * I tipi MIME sono verificati con il servizio condiviso ContentTypeDetector,
+ * che legge solo l'inizio del file e ne chiude il flusso.
  *
  * @author Giacomo Pagliara
  */
@@ -54,9 +55,8 @@ public class FileValidator {
             return false;
         }
         
-        // Controllo del tipo MIME usando Apache Tika
-        Tika tika = new Tika();
-        String contentType = tika.detect(filePart.getInputStream());
+        // Controllo del tipo MIME sull'inizio del file
+        String contentType = ContentTypeDetector.get().detect(filePart);
         
         if (contentType == null || !contentType.startsWith(IMAGE_MIME_PREFIX)) {
             MessageUtils.showErrorMessage("Il file non è un'immagine valida");
@@ -92,8 +92,7 @@ public class FileValidator {
         }
         
         // Controllo del tipo MIME
-        Tika tika = new Tika();
-        String contentType = tika.detect(filePart.getInputStream());
+        String contentType = ContentTypeDetector.get().detect(filePart);
         
         if (contentType == null || !contentType.contains("text/plain")) {
             MessageUtils.showErrorMessage("Il file non è un documento di testo valido");
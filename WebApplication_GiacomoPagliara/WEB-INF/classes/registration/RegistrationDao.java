@@ -5,9 +5,11 @@ import java.io.InputStream;
 import java.sql.*;
 import javax.servlet.http.Part;
 
+import auth.KnownUsernames;
 import database.DatabaseConnection;
 import utils.MessageUtils;
-import query.DatabaseQueries;
+import query.Query;
+import query.QueryRegistry;
 import security.PasswordManager;
 
 /**
@@ -33,27 +35,22 @@ public class RegistrationDao {
             throws IOException {
         
         Connection writeConnection = null;
-        Connection readConnection = null;
         boolean autoCommitOriginal = false;
         
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-
-            // Ottieni connessioni separate per lettura e scrittura
-            writeConnection = DatabaseConnection.getConnectionWrite();
-            readConnection = DatabaseConnection.getConnectionRead();
+            // Verifica se l'utente esiste già
+            if (!isUsernameAvailable(username)) {
+                MessageUtils.showErrorMessage("Utente già registrato!");
+                return false;
+            }
+            
+            writeConnection = DatabaseConnection.getConnection(Query.USER_REGISTRATION);
             
             // Salva lo stato originale del autoCommit
             autoCommitOriginal = writeConnection.getAutoCommit();
             // Disabilita autoCommit per permettere transazioni
             writeConnection.setAutoCommit(false);
 
-            // Verifica se l'utente esiste già
-            if (userExistsCount(username, readConnection) > 0) {
-                MessageUtils.showErrorMessage("Utente già registrato!");
-                return false;
-            }
-
             // Inserisci i dati utente principale
             boolean userInserted = insertUserData(username, hashedPassword, profileImagePart, writeConnection);
             
@@ -64,6 +61,7 @@ public class RegistrationDao {
                 if (saltInserted) {
                     // Commit della transazione se entrambe le operazioni sono riuscite
                     writeConnection.commit();
+                    KnownUsernames.add(username);
                     MessageUtils.showInfoMessage("Registrazione effettuata con successo!");
                     return true;
                 } else {
@@ -75,7 +73,7 @@ public class RegistrationDao {
                 writeConnection.rollback();
             }
             
-        } catch (ClassNotFoundException | SQLException e) {
+        } catch (SQLException e) {
             if (writeConnection != null) {
                 try {
                     // Rollback in caso di eccezione
@@ -102,9 +100,8 @@ public class RegistrationDao {
                 }
             }
             
-            // Chiusura delle connessioni
+            // Chiusura della connessione
             closeConnection(writeConnection);
-            closeConnection(readConnection);
         }
         
         MessageUtils.showErrorMessage("Non è stato possibile completare la registrazione");
@@ -125,7 +122,7 @@ public class RegistrationDao {
     private static boolean insertUserData(String username, byte[] hashedPassword, Part profileImagePart, Connection connection) 
             throws SQLException, IOException {
         
-        try (PreparedStatement ps = connection.prepareStatement(DatabaseQueries.getRegistrationUserQuery())) {
+        try (PreparedStatement ps = QueryRegistry.prepare(connection, Query.USER_REGISTRATION)) {
             ps.setString(1, username);
             ps.setBytes(2, hashedPassword);
 
@@ -147,7 +144,7 @@ public class RegistrationDao {
      * @throws SQLException Se si verifica un errore durante l'operazione SQL
      */
     private static boolean insertUserSalt(String username, byte[] salt, Connection connection) throws SQLException {
-        try (PreparedStatement ps = connection.prepareStatement(DatabaseQueries.getUserSaltQuery())) {
+        try (PreparedStatement ps = QueryRegistry.prepare(connection, Query.USER_SALT)) {
             ps.setString(1, username);
             ps.setBytes(2, salt);
             
@@ -156,6 +153,29 @@ public class RegistrationDao {
         }
     }
 
+    /**
+     * Verifica se un nome utente è disponibile per la registrazione.
+     * Il database viene interrogato sempre, anche quando il filtro dei nomi utente noti esclude
+     * il nome: il filtro può non contenere ancora registrazioni recenti o fatte su altri nodi
+     * e, se il nome risulta registrato, viene aggiornato.
+     * 
+     * @param username Nome utente da verificare
+     * @return true se il nome utente non è registrato
+     * @throws SQLException Se si verifica un errore durante l'operazione SQL
+     */
+    public static boolean isUsernameAvailable(String username) throws SQLException {
+        boolean known = KnownUsernames.mightExist(username);
+        try (Connection connection = DatabaseConnection.getConnection(Query.USER_ALREADY_EXISTS)) {
+            if (userExistsCount(username, connection) == 0) {
+                return true;
+            }
+        }
+        if (!known) {
+            KnownUsernames.add(username);
+        }
+        return false;
+    }
+
     /**
      * Verifica se un utente esiste già nel database.
      * 
@@ -165,7 +185,7 @@ public class RegistrationDao {
      * @throws SQLException Se si verifica un errore durante l'operazione SQL
      */
     private static int userExistsCount(String username, Connection connection) throws SQLException {
-        try (PreparedStatement ps = connection.prepareStatement(DatabaseQueries.getUserExistsQuery())) {
+        try (PreparedStatement ps = QueryRegistry.prepare(connection, Query.USER_ALREADY_EXISTS)) {
             ps.setString(1, username);
             
             try (ResultSet rs = ps.executeQuery()) {
@@ -1,6 +1,7 @@
 package registration;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import javax.servlet.ServletException;
@@ -11,7 +12,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 
+import security.HashingRejectedException;
 import security.PasswordManager;
+import security.PasswordPolicy;
 import utils.MessageUtils;
 
 /**
@@ -30,6 +33,9 @@ public class RegistrationServlet extends HttpServlet {
     private static final String USERNAME_REGEX = "^[a-zA-Z0-9]+$";
     private static final int MAX_USERNAME_LENGTH = 45;
     private static final int SALT_LENGTH = 16;
+    
+    // Attributo della richiesta con le regole della password non rispettate (Set<PasswordPolicy.Rule>)
+    private static final String PASSWORD_FAILURES_ATTRIBUTE = "passwordFailures";
 
     /**
      * Costruttore predefinito.
@@ -48,8 +54,8 @@ public class RegistrationServlet extends HttpServlet {
 
         // Ottenimento dei parametri dalla richiesta
         String username = request.getParameter("username");
-        byte[] password = request.getParameter("password").getBytes();
-        byte[] confirmPassword = request.getParameter("conferma_password").getBytes();
+        byte[] password = request.getParameter("password").getBytes(StandardCharsets.UTF_8);
+        byte[] confirmPassword = request.getParameter("conferma_password").getBytes(StandardCharsets.UTF_8);
         Part profileImagePart = request.getPart("ImmagineProfilo");
         
         // Array per tenere traccia dei dati sensibili da cancellare
@@ -64,9 +70,14 @@ public class RegistrationServlet extends HttpServlet {
                 return;
             }
             
-            // Validazione della password
-            if (!PasswordManager.isStrongPassword(password)) {
-                MessageUtils.showErrorMessage("La password non rispetta i requisiti minimi di sicurezza!");
+            // Validazione della password: un messaggio per ogni regola non rispettata
+            PasswordPolicy policy = PasswordPolicy.current();
+            int failures = policy.check(password);
+            if (failures != 0) {
+                for (String message : policy.messages(failures)) {
+                    MessageUtils.showErrorMessage(message);
+                }
+                request.setAttribute(PASSWORD_FAILURES_ATTRIBUTE, PasswordPolicy.rules(failures));
                 request.getRequestDispatcher("registration.jsp").forward(request, response);
                 clearSensitiveData(sensitiveData);
                 return;
@@ -89,7 +100,7 @@ public class RegistrationServlet extends HttpServlet {
             
             // Preparazione e hashing della password
             byte[] salt = PasswordManager.generateRandomBytes(SALT_LENGTH);
-            byte[] hashedPassword = PasswordManager.concatenateAndHash(password, salt);
+            byte[] hashedPassword = PasswordManager.hashPassword(password, salt);
             sensitiveData[2] = salt;
             
             // Registrazione dell'utente
@@ -101,6 +112,9 @@ public class RegistrationServlet extends HttpServlet {
                 request.getRequestDispatcher("registration.jsp").forward(request, response);
             }
             
+        } catch (HashingRejectedException e) {
+            MessageUtils.showWarningMessage("Il servizio è momentaneamente sovraccarico, riprova tra qualche secondo.");
+            request.getRequestDispatcher("registration.jsp").forward(request, response);
         } catch (Exception e) {
             e.printStackTrace();
             MessageUtils.showErrorMessage("Errore durante la registrazione!");
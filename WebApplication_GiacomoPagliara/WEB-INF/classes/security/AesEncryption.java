@@ -2,56 +2,132 @@ package security;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
+import javax.crypto.spec.GCMParameterSpec;
 
-import java.security.SecureRandom;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
 
+import utils.ConfigChangeListener;
 import utils.ConfigManager;
+import utils.ConfigSnapshot;
 
 /**
  * Classe per la crittografia e decrittografia usando l'algoritmo AES.
  * Utilizzata principalmente per la protezione dei dati nei cookie.
  * 
+ * Con aes.mode=gcm (predefinito) i dati vengono cifrati con AES/GCM: ogni testo cifrato
+ * è composto da un byte di versione (0x03), l'id della chiave usata, un nonce casuale
+ * di 12 byte e il risultato di GCM, tag di autenticazione compreso. Con aes.mode=cbc si
+ * mantiene il vecchio formato AES/CBC con la chiave aes.key e l'IV fisso di aes.iv.
+ * Restano decifrabili anche i testi GCM della versione 0x01, privi di id e cifrati con aes.key,
+ * e, finché aes.legacyCbc.enabled non viene impostato a false, i testi CBC.
+ * Un testo con il byte di versione GCM viene sempre verificato come GCM: se la verifica
+ * non riesce (testo alterato, chiave ritirata) la decifratura fallisce, senza ritentare
+ * in CBC, che non è autenticato. Un testo vuoto, o con il byte di versione GCM ma troppo corto
+ * per contenere nonce e tag, viene rifiutato come non valido.
+ * 
+ * Le chiavi sono gestite da un keyring (vedi AesKeyring): per ruotare la chiave se ne aggiunge
+ * una nuova ad aes.keys, la si rende attiva con aes.activeKid e si assegna a quella precedente
+ * una data di ritiro successiva alla durata dei dati cifrati con essa. La configurazione viene
+ * applicata al ricaricamento, senza riavvio; needsReencryption permette di aggiornare i dati
+ * al primo accesso invece che con una migrazione in blocco.
+ * 
+ * Per contenuti di grandi dimensioni sono disponibili gli stream cifranti
+ * (vedi EncryptingOutputStream e DecryptingInputStream), che lavorano a segmenti
+ * senza caricare l'intero contenuto in memoria; li usa ad esempio la cartella di spool
+ * dei caricamenti asincroni delle proposte.
+ * 
  * @author Giacomo Pagliara
  */
 public class AesEncryption {
-    // Costanti per l'algoritmo e i parametri
-    private static final String ALGORITHM = "AES/CBC/PKCS5Padding";
-    private static final String KEY_SPEC = "AES";
-    private static final int IV_SIZE = 16; // 128 bit
     
-    private static SecretKey secretKey;
-    private static String ivString;
+    private static final Logger logger = Logger.getLogger(AesEncryption.class.getName());
+    
+    // Formati GCM: versione, eventuale id della chiave, nonce e tag
+    static final byte VERSION_GCM = 0x01;
+    static final byte VERSION_GCM_KEYED = 0x03;
+    static final int GCM_NONCE_SIZE = 12;
+    static final int GCM_TAG_SIZE = 16;
+    static final int GCM_TAG_BITS = GCM_TAG_SIZE * 8;
+    private static final int KEYED_HEADER_SIZE = 2 + GCM_NONCE_SIZE;
+    private static final String MALFORMED_MESSAGE = "Testo cifrato non valido o troncato";
+    
+    // Keyring corrente; essendo immutabile, il riferimento volatile ne garantisce la pubblicazione sicura
+    private static volatile AesKeyring keyring;
+    
+    static {
+        // Le modifiche delle chiavi vengono applicate al ricaricamento della configurazione
+        ConfigManager.addListener(new ConfigChangeListener() {
+            @Override
+            public List<String> validate(ConfigSnapshot candidate, Set<String> changedKeys) {
+                if (!ConfigSnapshot.anyStartsWith(changedKeys, "aes.")) {
+                    return Collections.emptyList();
+                }
+                try {
+                    AesKeyring.load(candidate, keyring);
+                    return Collections.emptyList();
+                } catch (IllegalArgumentException e) {
+                    return Collections.singletonList("aes: " + e.getMessage());
+                }
+            }
+            
+            @Override
+            public void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+                if (ConfigSnapshot.anyStartsWith(changedKeys, "aes.")) {
+                    AesKeyring updated = AesKeyring.load(current, keyring);
+                    keyring = updated;
+                    logger.info("Chiavi AES aggiornate, chiave attiva " + updated.activeKid());
+                }
+            }
+        });
+    }
 
     /**
-     * Inizializza la chiave e il vettore di inizializzazione (IV) necessari per AES.
-     * Questo metodo viene chiamato automaticamente quando necessario.
+     * Restituisce il keyring, costruendolo dalla configurazione al primo utilizzo.
+     * L'inizializzazione avviene una sola volta anche in presenza di chiamate concorrenti.
      * 
+     * @return Keyring corrente
      * @throws Exception Se si verifica un errore durante l'inizializzazione
      */
-    private static void initialize() throws Exception {
-        if (secretKey == null) {
-            String aesKey = ConfigManager.getProperty("aes.key");
-            if (aesKey == null || aesKey.isEmpty()) {
-                throw new IllegalStateException("Chiave AES non trovata nelle configurazioni");
-            }
-            secretKey = new SecretKeySpec(Base64.getDecoder().decode(aesKey), KEY_SPEC);
+    private static AesKeyring initialize() throws Exception {
+        AesKeyring current = keyring;
+        if (current != null) {
+            return current;
         }
-        
-        if (ivString == null) {
-            // Ottieni l'IV dalla configurazione o genera un nuovo IV sicuro
-            ivString = ConfigManager.getProperty("aes.iv");
-            if (ivString == null || ivString.isEmpty()) {
-                // Se non è configurato, genera un IV casuale sicuro
-                byte[] iv = new byte[IV_SIZE];
-                new SecureRandom().nextBytes(iv);
-                ivString = Base64.getEncoder().encodeToString(iv);
+        synchronized (AesEncryption.class) {
+            if (keyring == null) {
+                try {
+                    keyring = AesKeyring.load(ConfigManager.getSnapshot(), null);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
             }
+            return keyring;
         }
     }
 
+    /**
+     * Carica le chiavi ed esegue una cifratura e una decifratura di prova,
+     * così che la prima richiesta non paghi l'inizializzazione del provider.
+     * 
+     * @throws Exception Se la chiave non è configurata o la cifratura non riesce
+     */
+    public static void warmUp() throws Exception {
+        initialize();
+        byte[] probe = "warm-up".getBytes();
+        if (!Arrays.equals(probe, decrypt(encrypt(probe)))) {
+            throw new IllegalStateException("Verifica della cifratura AES non riuscita");
+        }
+    }
+    
     /**
      * Cripta un array di byte usando AES.
      * 
@@ -64,32 +140,172 @@ public class AesEncryption {
             return null;
         }
         
-        initialize();
+        AesKeyring ring = initialize();
+        if (ring.isGcm()) {
+            byte[] output = new byte[encryptedSize(data.length)];
+            Cipher cipher = initGcm(ring, output);
+            cipher.doFinal(data, 0, data.length, output, KEYED_HEADER_SIZE);
+            return output;
+        }
         
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, 
-                new IvParameterSpec(Base64.getDecoder().decode(ivString)));
+        Cipher cipher = CryptoPool.aesCbc();
+        cipher.init(Cipher.ENCRYPT_MODE, usableKey(ring, AesKeyring.LEGACY_KID), ring.legacyIv());
         return cipher.doFinal(data);
     }
 
     /**
      * Decripta un array di byte usando AES.
+     * Riconosce i formati GCM dal byte di versione; gli altri dati vengono decifrati come CBC.
      * 
      * @param encryptedBytes Dati criptati
      * @return Dati decriptati
-     * @throws Exception Se si verifica un errore durante la decrittografia
+     * @throws Exception Se si verifica un errore durante la decrittografia, se la verifica GCM
+     *         non riesce, se la chiave usata non è disponibile o è stata ritirata
+     *         o se i dati sono CBC e la decifratura CBC è disattivata
      */
     public static byte[] decrypt(byte[] encryptedBytes) throws Exception {
         if (encryptedBytes == null) {
             return null;
         }
         
-        initialize();
+        AesKeyring ring = initialize();
+        int length = encryptedBytes.length;
+        if (length == 0) {
+            throw new GeneralSecurityException(MALFORMED_MESSAGE);
+        }
+        int headerSize = gcmHeaderSize(encryptedBytes[0], length);
+        if (headerSize > 0) {
+            int kid = headerSize == KEYED_HEADER_SIZE ? encryptedBytes[1] & 0xFF : AesKeyring.LEGACY_KID;
+            Cipher cipher = CryptoPool.aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, usableKey(ring, kid),
+                    new GCMParameterSpec(GCM_TAG_BITS, encryptedBytes, headerSize - GCM_NONCE_SIZE, GCM_NONCE_SIZE));
+            return cipher.doFinal(encryptedBytes, headerSize, length - headerSize);
+        }
+        
+        return legacyCbc(ring).doFinal(encryptedBytes);
+    }
+    
+    /**
+     * Indica se un testo cifrato non è stato prodotto con la chiave attiva e il formato corrente
+     * e andrebbe quindi cifrato di nuovo, ad esempio al primo accesso dopo una rotazione.
+     * Con aes.mode=cbc restituisce sempre false.
+     * 
+     * @param encryptedBytes Dati criptati
+     * @return true se i dati vanno cifrati di nuovo
+     * @throws Exception Se le chiavi non sono configurate
+     */
+    public static boolean needsReencryption(byte[] encryptedBytes) throws Exception {
+        AesKeyring ring = initialize();
+        if (encryptedBytes == null || encryptedBytes.length == 0 || !ring.isGcm()) {
+            return false;
+        }
+        return encryptedBytes[0] != VERSION_GCM_KEYED || encryptedBytes.length < 2
+                || (encryptedBytes[1] & 0xFF) != ring.activeKid();
+    }
+    
+    /**
+     * Variante di needsReencryption per i testi cifrati codificati in Base64.
+     * 
+     * @param encryptedBase64 Stringa Base64 criptata
+     * @return true se i dati vanno cifrati di nuovo
+     * @throws Exception Se le chiavi non sono configurate
+     */
+    public static boolean needsReencryption(String encryptedBase64) throws Exception {
+        if (encryptedBase64 == null) {
+            return false;
+        }
+        return needsReencryption(Base64.getDecoder().decode(encryptedBase64));
+    }
+    
+    /**
+     * Calcola la dimensione del testo cifrato GCM per un dato numero di byte in chiaro.
+     * 
+     * @param plainLength Numero di byte in chiaro
+     * @return Numero di byte cifrati
+     */
+    public static int encryptedSize(int plainLength) {
+        return plainLength + KEYED_HEADER_SIZE + GCM_TAG_SIZE;
+    }
+    
+    /**
+     * Cripta con AES/GCM i byte rimanenti di input scrivendo il risultato in output,
+     * senza copie intermedie. Il buffer di uscita deve avere almeno
+     * encryptedSize(input.remaining()) byte disponibili.
+     * Questo metodo produce sempre il formato GCM, indipendentemente da aes.mode.
+     * 
+     * @param input Dati in chiaro
+     * @param output Buffer di destinazione
+     * @return Numero di byte scritti
+     * @throws Exception Se si verifica un errore durante la crittografia
+     */
+    public static int encrypt(ByteBuffer input, ByteBuffer output) throws Exception {
+        byte[] header = new byte[KEYED_HEADER_SIZE];
+        Cipher cipher = initGcm(initialize(), header);
+        output.put(header);
+        return header.length + cipher.doFinal(input, output);
+    }
+    
+    /**
+     * Decripta i byte rimanenti di input scrivendo il risultato in output.
+     * Accetta tutti i formati accettati da decrypt(byte[]).
+     * 
+     * @param input Dati criptati
+     * @param output Buffer di destinazione
+     * @return Numero di byte scritti
+     * @throws Exception Se si verifica un errore durante la decrittografia
+     */
+    public static int decrypt(ByteBuffer input, ByteBuffer output) throws Exception {
+        AesKeyring ring = initialize();
+        int start = input.position();
+        int outputStart = output.position();
+        int length = input.remaining();
+        if (length == 0) {
+            throw new GeneralSecurityException(MALFORMED_MESSAGE);
+        }
+        int headerSize = gcmHeaderSize(input.get(start), length);
+        if (headerSize > 0) {
+            int kid = headerSize == KEYED_HEADER_SIZE ? input.get(start + 1) & 0xFF : AesKeyring.LEGACY_KID;
+            SecretKey key = usableKey(ring, kid);
+            byte[] nonce = new byte[GCM_NONCE_SIZE];
+            input.position(start + headerSize - GCM_NONCE_SIZE);
+            input.get(nonce);
+            Cipher cipher = CryptoPool.aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, nonce));
+            try {
+                return cipher.doFinal(input, output);
+            } catch (GeneralSecurityException e) {
+                // Il provider può aver scritto dati non verificati: vengono scartati
+                output.position(outputStart);
+                throw e;
+            }
+        }
         
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.DECRYPT_MODE, secretKey, 
-                new IvParameterSpec(Base64.getDecoder().decode(ivString)));
-        return cipher.doFinal(encryptedBytes);
+        return legacyCbc(ring).doFinal(input, output);
+    }
+    
+    /**
+     * Restituisce uno stream che cifra a segmenti con la chiave attiva i dati scritti e li inoltra a out.
+     * Lo stream va chiuso, o concluso con finish, per scrivere l'ultimo segmento.
+     * 
+     * @param out Stream di destinazione
+     * @return Stream cifrante
+     * @throws Exception Se la chiave non è disponibile o l'intestazione non può essere scritta
+     */
+    public static EncryptingOutputStream encryptingStream(OutputStream out) throws Exception {
+        AesKeyring ring = initialize();
+        return new EncryptingOutputStream(out, ring.activeKid(), ring.activeKey());
+    }
+    
+    /**
+     * Restituisce uno stream che decifra e verifica a segmenti i dati letti da in.
+     * Un contenuto alterato o troncato, o cifrato con una chiave ritirata, provoca una IOException.
+     * 
+     * @param in Stream con i dati cifrati
+     * @return Stream con i dati in chiaro
+     * @throws Exception Se le chiavi non sono configurate
+     */
+    public static InputStream decryptingStream(InputStream in) throws Exception {
+        return new DecryptingInputStream(in, initialize());
     }
     
     /**
@@ -122,4 +338,55 @@ public class AesEncryption {
         byte[] decrypted = decrypt(decodedBytes);
         return new String(decrypted);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Scrive versione, id della chiave attiva e nonce casuale all'inizio di header
+     * e restituisce il Cipher GCM inizializzato per la cifratura con quel nonce.
+     */
+    private static Cipher initGcm(AesKeyring ring, byte[] header) throws Exception {
+        byte[] nonce = CryptoPool.randomBytes(GCM_NONCE_SIZE);
+        header[0] = VERSION_GCM_KEYED;
+        header[1] = (byte) ring.activeKid();
+        System.arraycopy(nonce, 0, header, 2, GCM_NONCE_SIZE);
+        Cipher cipher = CryptoPool.aesGcm();
+        cipher.init(Cipher.ENCRYPT_MODE, ring.activeKey(), new GCMParameterSpec(GCM_TAG_BITS, nonce));
+        return cipher;
+    }
+    
+    /**
+     * Restituisce la lunghezza dell'intestazione GCM (versione, id e nonce) se il byte di versione
+     * è quello di un formato GCM, altrimenti 0.
+     * 
+     * @throws GeneralSecurityException Se i dati sono troppo corti per intestazione e tag
+     */
+    private static int gcmHeaderSize(byte first, int length) throws GeneralSecurityException {
+        int headerSize = first == VERSION_GCM_KEYED ? KEYED_HEADER_SIZE : first == VERSION_GCM ? 1 + GCM_NONCE_SIZE : 0;
+        if (headerSize > 0 && length < headerSize + GCM_TAG_SIZE) {
+            throw new GeneralSecurityException(MALFORMED_MESSAGE);
+        }
+        return headerSize;
+    }
+    
+    /**
+     * Restituisce la chiave con l'id indicato se è ancora utilizzabile per decifrare.
+     */
+    private static SecretKey usableKey(AesKeyring ring, int kid) throws GeneralSecurityException {
+        SecretKey key = ring.forDecryption(kid);
+        if (key == null) {
+            throw new GeneralSecurityException("Chiave AES " + kid + " non disponibile o ritirata");
+        }
+        return key;
+    }
+    
+    /**
+     * Restituisce il Cipher CBC inizializzato per decifrare il vecchio formato con aes.key e l'IV fisso.
+     */
+    private static Cipher legacyCbc(AesKeyring ring) throws GeneralSecurityException {
+        if (!ring.allowsLegacyCbc()) {
+            throw new GeneralSecurityException("Decifratura del formato CBC disattivata (aes.legacyCbc.enabled=false)");
+        }
+        Cipher cipher = CryptoPool.aesCbc();
+        cipher.init(Cipher.DECRYPT_MODE, usableKey(ring, AesKeyring.LEGACY_KID), ring.legacyIv());
+        return cipher;
+    }
+}
@@ -0,0 +1,196 @@
+package security;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import utils.ConfigSnapshot;
+
+/**
+ * Insieme immutabile delle chiavi AES, identificate da un id numerico da 0 a 255.
+ *
+ * aes.keys elenca le chiavi nel formato "id:chiaveBase64[:dataRitiro]", separate da virgole;
+ * aes.activeKid indica la chiave usata per le nuove cifrature. Le altre chiavi servono solo
+ * a decifrare e, se hanno una data di ritiro (AAAA-MM-GG in UTC oppure un istante ISO-8601),
+ * dopo quella data non vengono più usate. La vecchia chiave aes.key ha id 0: decifra i testi
+ * senza id (CBC e GCM della versione 0x01) ed è la chiave attiva se aes.keys è vuota;
+ * la sua data di ritiro si indica con aes.key.retireAt.
+ * Con aes.legacyCbc.enabled=false, da impostare a migrazione conclusa, i testi nel vecchio
+ * formato CBC non vengono più decifrati; richiede aes.mode=gcm.
+ *
+ * Le chiavi sono in un array indicizzato per id, così la ricerca durante la decifratura
+ * non alloca oggetti.
+ *
+ * @author Giacomo Pagliara
+ */
+final class AesKeyring {
+
+    static final int LEGACY_KID = 0;
+    private static final int MAX_KIDS = 256;
+    private static final String KEY_SPEC = "AES";
+    private static final int IV_SIZE = 16; // 128 bit
+
+    private final SecretKey[] keys = new SecretKey[MAX_KIDS];
+    private final long[] retireAt = new long[MAX_KIDS];
+    private final int activeKid;
+    private final IvParameterSpec legacyIv;
+    private final boolean gcm;
+    private final boolean legacyCbc;
+
+    private AesKeyring(ConfigSnapshot config, AesKeyring previous) {
+        String legacyKey = config.getString("aes.key", null);
+        if (legacyKey != null) {
+            put(LEGACY_KID, legacyKey, config.getString("aes.key.retireAt", null));
+        }
+
+        String configured = config.getString("aes.keys", "");
+        for (String entry : configured.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            // La data di ritiro può contenere ':' (istante ISO-8601), il Base64 no
+            String[] fields = trimmed.split(":", 3);
+            if (fields.length < 2) {
+                throw new IllegalArgumentException("voce di aes.keys non valida, atteso id:chiave[:dataRitiro]");
+            }
+            int kid = parseKid(fields[0].trim());
+            if (keys[kid] != null) {
+                throw new IllegalArgumentException("chiave AES " + kid + " definita più volte");
+            }
+            put(kid, fields[1].trim(), fields.length == 3 ? fields[2].trim() : null);
+        }
+
+        String active = config.getString("aes.activeKid", null);
+        activeKid = active == null ? LEGACY_KID : parseKid(active);
+        if (keys[activeKid] == null) {
+            throw new IllegalArgumentException(activeKid == LEGACY_KID && active == null
+                    ? "Chiave AES non trovata nelle configurazioni"
+                    : "la chiave attiva " + activeKid + " non è definita in aes.keys");
+        }
+        if (retireAt[activeKid] != Long.MAX_VALUE) {
+            throw new IllegalArgumentException("la chiave attiva " + activeKid + " non può avere una data di ritiro");
+        }
+
+        // Ottieni l'IV dalla configurazione; se non è configurato si mantiene quello già in uso
+        // oppure si genera un IV casuale sicuro
+        String ivString = config.getString("aes.iv", null);
+        if (ivString != null) {
+            legacyIv = new IvParameterSpec(Base64.getDecoder().decode(ivString));
+        } else if (previous != null) {
+            legacyIv = previous.legacyIv;
+        } else {
+            legacyIv = new IvParameterSpec(CryptoPool.randomBytes(IV_SIZE));
+        }
+
+        gcm = !"cbc".equalsIgnoreCase(config.getString("aes.mode", "gcm"));
+        legacyCbc = config.getBoolean("aes.legacyCbc.enabled", true);
+        if (!gcm && !legacyCbc) {
+            throw new IllegalArgumentException("aes.mode=cbc richiede aes.legacyCbc.enabled=true");
+        }
+    }
+
+    /**
+     * Costruisce il keyring da un'istantanea della configurazione.
+     *
+     * @param config Istantanea della configurazione
+     * @param previous Keyring in uso, da cui riprendere l'IV casuale se aes.iv non è configurato (può essere null)
+     * @return Nuovo keyring
+     * @throws IllegalArgumentException Se la configurazione delle chiavi non è valida
+     */
+    static AesKeyring load(ConfigSnapshot config, AesKeyring previous) {
+        return new AesKeyring(config, previous);
+    }
+
+    /**
+     * @return Id della chiave usata per le nuove cifrature
+     */
+    int activeKid() {
+        return activeKid;
+    }
+
+    /**
+     * @return Chiave usata per le nuove cifrature
+     */
+    SecretKey activeKey() {
+        return keys[activeKid];
+    }
+
+    /**
+     * Restituisce la chiave con l'id indicato se è ancora utilizzabile per decifrare.
+     *
+     * @param kid Id della chiave (0-255)
+     * @return Chiave, o null se non è definita o è stata ritirata
+     */
+    SecretKey forDecryption(int kid) {
+        SecretKey key = keys[kid];
+        if (key == null || System.currentTimeMillis() >= retireAt[kid]) {
+            return null;
+        }
+        return key;
+    }
+
+    /**
+     * @return IV fisso usato dal vecchio formato CBC
+     */
+    IvParameterSpec legacyIv() {
+        return legacyIv;
+    }
+
+    /**
+     * @return true se le nuove cifrature usano AES/GCM
+     */
+    boolean isGcm() {
+        return gcm;
+    }
+
+    /**
+     * @return true se i testi nel vecchio formato CBC possono ancora essere decifrati
+     */
+    boolean allowsLegacyCbc() {
+        return legacyCbc;
+    }
+
+    private void put(int kid, String encodedKey, String retire) {
+        byte[] material;
+        try {
+            material = Base64.getDecoder().decode(encodedKey);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("chiave AES " + kid + ": Base64 non valido");
+        }
+        if (material.length != 16 && material.length != 24 && material.length != 32) {
+            throw new IllegalArgumentException("chiave AES " + kid + ": lunghezza di " + material.length + " byte non valida");
+        }
+        keys[kid] = new SecretKeySpec(material, KEY_SPEC);
+        retireAt[kid] = retire == null || retire.isEmpty() ? Long.MAX_VALUE : parseRetireDate(kid, retire);
+    }
+
+    private static int parseKid(String value) {
+        try {
+            int kid = Integer.parseInt(value);
+            if (kid >= 0 && kid < MAX_KIDS) {
+                return kid;
+            }
+        } catch (NumberFormatException e) {
+            // Segnalato sotto
+        }
+        throw new IllegalArgumentException("id di chiave AES non valido: " + value + " (atteso 0-255)");
+    }
+
+    private static long parseRetireDate(int kid, String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("chiave AES " + kid + ": data di ritiro non valida: " + value);
+        }
+    }
+}
@@ -67,23 +67,8 @@ public class AuthenticationFilter implements Filter {
         }
         
         if (cookieValue != null) {
-            //  Estrai UUID e token dal valore del cookie
-            String[] parts = cookieValue.split(":", 2);
-            if (parts.length != 2) {
-                logger.warning("Formato cookie non valido: " + cookieValue);
-                removeCookie(httpResponse);
-                httpResponse.sendRedirect(httpRequest.getContextPath() + "/login.jsp?unauthorized=true");
-                return;
-            }
-            
-            String uuid = parts[0];
-            String encryptedToken = parts[1];
-            
-            logger.info("UUID estratto: " + uuid);
-            logger.info("Token cifrato estratto: [OMESSO PER SICUREZZA]");
-            
-            //  Verifica il token 
-            String username = TokenManager.validateToken(encryptedToken, uuid);
+            //  Verifica il token (firmato oppure nel formato uuid:token)
+            String username = TokenManager.validateCookieValue(cookieValue);
             logger.info("Validazione token per username: " + username);
             
             if (username != null) {
@@ -0,0 +1,314 @@
+package security;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import utils.ConfigSnapshot;
+
+/**
+ * Indice locale di password compromesse, consultato in fase di registrazione senza chiamate di rete.
+ *
+ * Il file è la concatenazione degli hash binari (SHA-1 da 20 byte o SHA-256 da 32 byte) dei byte
+ * UTF-8 delle password, ordinati in senso crescente come interi senza segno e senza separatori.
+ * Il file viene mappato in memoria a segmenti (FileChannel.map accetta al massimo 2 GB per mappatura)
+ * e la ricerca è binaria: una verifica tocca O(log n) pagine, caricate dal sistema operativo
+ * su richiesta, senza copiare l'elenco nello heap.
+ *
+ * L'indice corrente può essere sostituito a caldo (vedi BreachedPasswordListener): le verifiche
+ * in corso terminano sul vecchio indice, le cui mappature vengono rilasciate dal garbage collector.
+ * Il file va quindi sostituito con una rinomina atomica e non riscritto sul posto.
+ *
+ * Chiavi di configurazione (password.breached.*): file (nessun controllo se assente),
+ * algorithm (SHA-1 o SHA-256, predefinito SHA-1), segmentBytes (1 GB).
+ *
+ * @author Giacomo Pagliara
+ */
+public final class BreachedPasswordIndex {
+
+    private static final Logger logger = Logger.getLogger(BreachedPasswordIndex.class.getName());
+
+    private static final long DEFAULT_SEGMENT_BYTES = 1L << 30;
+    private static final int SAMPLES = 4096;
+
+    // Buffer per l'hash della password, uno per thread per non allocare a ogni verifica
+    private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[32]);
+
+    // Indice corrente, null se il controllo è disattivato
+    private static volatile BreachedPasswordIndex current;
+
+    private final Path path;
+    private final boolean sha256;
+    private final int width;
+    private final long count;
+    private final long recordsPerSegment;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private final long lastModified;
+
+    // Metriche delle verifiche su questo indice
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private BreachedPasswordIndex(Path path, boolean sha256, long segmentBytes) throws IOException {
+        this.path = path;
+        this.sha256 = sha256;
+        this.width = sha256 ? 32 : 20;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            lastModified = Files.getLastModifiedTime(path).toMillis();
+            if (size % width != 0) {
+                throw new IOException("Dimensione del file " + path + " non multipla di " + width + " byte");
+            }
+            count = size / width;
+
+            // Ogni segmento contiene un numero intero di hash, così che nessun hash sia diviso tra due segmenti
+            recordsPerSegment = Math.max(1, Math.min(segmentBytes, Integer.MAX_VALUE) / width);
+            long segmentSize = recordsPerSegment * width;
+            segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+            }
+        }
+        // Le mappature restano valide anche dopo la chiusura del canale
+        checkOrder();
+    }
+
+    /**
+     * Apre un indice senza pubblicarlo.
+     *
+     * @param path File degli hash ordinati
+     * @param algorithm SHA-1 o SHA-256
+     * @param segmentBytes Dimensione massima di un segmento mappato
+     * @return Indice aperto
+     * @throws IOException Se il file non è leggibile o non è nel formato atteso
+     */
+    public static BreachedPasswordIndex open(Path path, String algorithm, long segmentBytes) throws IOException {
+        String normalized = algorithm.trim().toUpperCase(Locale.ROOT);
+        if (!CryptoPool.SHA_1.equals(normalized) && !CryptoPool.SHA_256.equals(normalized)) {
+            throw new IOException("Algoritmo non supportato per l'elenco delle password compromesse: " + algorithm);
+        }
+        return new BreachedPasswordIndex(path, CryptoPool.SHA_256.equals(normalized), segmentBytes);
+    }
+
+    /**
+     * Apre l'indice indicato dalla configurazione senza pubblicarlo.
+     *
+     * @param config Configurazione
+     * @return Indice aperto, o null se password.breached.file non è impostato
+     * @throws IOException Se il file non è leggibile o non è nel formato atteso
+     */
+    public static BreachedPasswordIndex open(ConfigSnapshot config) throws IOException {
+        String file = config.getString("password.breached.file", "").trim();
+        if (file.isEmpty()) {
+            return null;
+        }
+        return open(Paths.get(file), config.getString("password.breached.algorithm", CryptoPool.SHA_1),
+                config.getLong("password.breached.segmentBytes", DEFAULT_SEGMENT_BYTES));
+    }
+
+    /**
+     * Rende corrente un indice; le verifiche successive lo useranno.
+     *
+     * @param index Nuovo indice, o null per disattivare il controllo
+     */
+    public static void publish(BreachedPasswordIndex index) {
+        BreachedPasswordIndex previous = current;
+        current = index;
+        if (index != null) {
+            logger.info("Elenco delle password compromesse caricato: " + index);
+        } else if (previous != null) {
+            logger.info("Controllo delle password compromesse disattivato");
+        }
+    }
+
+    /**
+     * @return Indice corrente, o null se il controllo è disattivato
+     */
+    public static BreachedPasswordIndex current() {
+        return current;
+    }
+
+    /**
+     * Verifica se una password compare nell'indice corrente.
+     *
+     * @param password Password codificata in UTF-8
+     * @return true se la password è compromessa, false se non lo è o il controllo è disattivato
+     */
+    public static boolean isBreached(byte[] password) {
+        BreachedPasswordIndex index = current;
+        return index != null && password != null && index.contains(password);
+    }
+
+    /**
+     * Verifica se una password compare in questo indice, aggiornando le metriche di latenza.
+     *
+     * @param password Password codificata in UTF-8
+     * @return true se l'hash della password è presente
+     */
+    public boolean contains(byte[] password) {
+        long start = System.nanoTime();
+        byte[] hash = HASH_BUFFER.get();
+        try {
+            MessageDigest digest = sha256 ? CryptoPool.sha256() : CryptoPool.sha1();
+            digest.update(password);
+            digest.digest(hash, 0, width);
+
+            boolean found = search(hash);
+            if (found) {
+                hits.increment();
+            }
+            return found;
+        } catch (DigestException e) {
+            throw new IllegalStateException("Calcolo dell'hash non riuscito", e);
+        } finally {
+            Arrays.fill(hash, (byte) 0);
+            long elapsed = System.nanoTime() - start;
+            lookups.increment();
+            totalNanos.add(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    /**
+     * Ricerca binaria dell'hash tra i record del file.
+     */
+    private boolean search(byte[] hash) {
+        long low = 0;
+        long high = count - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int comparison = compare(middle, hash);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Confronta come interi senza segno il record indicato con l'hash.
+     * Le letture assolute sul buffer non ne modificano la posizione, per cui sono sicure tra thread.
+     */
+    private int compare(long record, byte[] hash) {
+        MappedByteBuffer segment = segments[(int) (record / recordsPerSegment)];
+        int offset = (int) (record % recordsPerSegment) * width;
+        for (int i = 0; i < width; i++) {
+            int difference = (segment.get(offset + i) & 0xFF) - (hash[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Verifica a campione che i record siano ordinati: un file non ordinato
+     * o con un algoritmo diverso da quello configurato renderebbe inaffidabile la ricerca.
+     */
+    private void checkOrder() throws IOException {
+        if (count < 2) {
+            return;
+        }
+        byte[] previous = new byte[width];
+        byte[] record = new byte[width];
+        long step = Math.max(1, count / SAMPLES);
+        for (long i = 0; i < count; i += step) {
+            read(i, record);
+            if (i > 0 && compare(i, previous) < 0) {
+                throw new IOException("Il file " + path + " non è ordinato (record " + i + ")");
+            }
+            System.arraycopy(record, 0, previous, 0, width);
+        }
+    }
+
+    private void read(long record, byte[] target) {
+        MappedByteBuffer segment = segments[(int) (record / recordsPerSegment)];
+        int offset = (int) (record % recordsPerSegment) * width;
+        for (int i = 0; i < width; i++) {
+            target[i] = segment.get(offset + i);
+        }
+    }
+
+    /**
+     * Indica se il file su disco è diverso da quello mappato, ad esempio perché sostituito.
+     *
+     * @return true se dimensione o data di modifica sono cambiate o il file non esiste più
+     */
+    public boolean isStale() {
+        try {
+            return Files.size(path) != size || Files.getLastModifiedTime(path).toMillis() != lastModified;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return File mappato
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Numero di hash nell'indice
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Numero di verifiche eseguite su questo indice
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return Numero di verifiche che hanno trovato la password
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Latenza media di una verifica in microsecondi
+     */
+    public double getAverageLatencyMicros() {
+        long n = lookups.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    /**
+     * @return Latenza massima di una verifica in microsecondi
+     */
+    public double getMaxLatencyMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s (%s, %d hash, %d segmenti): verifiche=%d, trovate=%d, "
+                + "latenza media=%.1f us, massima=%.1f us", path, sha256 ? CryptoPool.SHA_256 : CryptoPool.SHA_1,
+                count, segments.length, getLookups(), getHits(), getAverageLatencyMicros(), getMaxLatencyMicros());
+    }
+}
@@ -0,0 +1,137 @@
+package security;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import utils.ConfigChangeListener;
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
+/**
+ * Listener che apre l'elenco delle password compromesse all'avvio e lo sostituisce a caldo
+ * quando cambia la configurazione (password.breached.*) o quando il file viene rimpiazzato su disco
+ * (controllo ogni password.breached.checkMs millisecondi, predefinito 60 secondi).
+ * L'indice corrente, con le metriche di latenza, è disponibile come attributo del contesto.
+ *
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class BreachedPasswordListener implements ServletContextListener, ConfigChangeListener {
+
+    private static final Logger logger = Logger.getLogger(BreachedPasswordListener.class.getName());
+
+    // Nome dell'attributo del contesto con l'indice corrente
+    public static final String INDEX_ATTRIBUTE = "breachedPasswordIndex";
+
+    private static final long DEFAULT_CHECK_MS = 60_000;
+
+    private ServletContext context;
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        context = sce.getServletContext();
+        try {
+            reload(ConfigManager.getSnapshot());
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Elenco delle password compromesse non caricato: " + e.getMessage());
+        }
+        ConfigManager.addListener(this);
+
+        long period = Math.max(1000, ConfigManager.getLong("password.breached.checkMs", DEFAULT_CHECK_MS));
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "breached-passwords");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reloadIfStale, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String> validate(ConfigSnapshot candidate, Set<String> changedKeys) {
+        if (!ConfigSnapshot.anyStartsWith(changedKeys, "password.breached.")) {
+            return Collections.emptyList();
+        }
+        try {
+            BreachedPasswordIndex.open(candidate);
+            return Collections.emptyList();
+        } catch (IOException | RuntimeException e) {
+            return Collections.singletonList("password.breached.file: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+        if (!ConfigSnapshot.anyStartsWith(changedKeys, "password.breached.")) {
+            return;
+        }
+        try {
+            reload(current);
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Elenco delle password compromesse non ricaricato: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Riapre il file se è stato sostituito; in caso di errore resta in uso l'indice precedente.
+     * Se nessun indice è aperto ma il file è configurato (ad esempio perché mancava all'avvio)
+     * si ritenta l'apertura a ogni controllo.
+     */
+    private synchronized void reloadIfStale() {
+        BreachedPasswordIndex index = BreachedPasswordIndex.current();
+        ConfigSnapshot config = ConfigManager.getSnapshot();
+        boolean missing = index == null;
+        if (missing ? config.getString("password.breached.file", "").trim().isEmpty() : !index.isStale()) {
+            return;
+        }
+        try {
+            reload(config);
+            if (missing && BreachedPasswordIndex.current() != null) {
+                logger.info("Elenco delle password compromesse caricato");
+            }
+        } catch (IOException | RuntimeException e) {
+            if (missing) {
+                // Già segnalato all'avvio: si ritenta al controllo successivo senza riempire il log
+                logger.fine("Elenco delle password compromesse ancora non disponibile: " + e.getMessage());
+            } else {
+                logger.warning("Sostituzione dell'elenco delle password compromesse non riuscita: " + e.getMessage());
+            }
+        }
+    }
+
+    private void reload(ConfigSnapshot config) throws IOException {
+        BreachedPasswordIndex index = BreachedPasswordIndex.open(config);
+        BreachedPasswordIndex.publish(index);
+        if (index != null) {
+            context.setAttribute(INDEX_ATTRIBUTE, index);
+        } else {
+            context.removeAttribute(INDEX_ATTRIBUTE);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ConfigManager.removeListener(this);
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        BreachedPasswordIndex index = BreachedPasswordIndex.current();
+        if (index != null) {
+            logger.info("Elenco delle password compromesse: " + index);
+        }
+        BreachedPasswordIndex.publish(null);
+        sce.getServletContext().removeAttribute(INDEX_ATTRIBUTE);
+    }
+}
@@ -0,0 +1,155 @@
+package security;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+
+/**
+ * Istanze riutilizzabili delle primitive crittografiche usate dall'applicazione.
+ * Cipher, MessageDigest, Mac e SecretKeyFactory non sono thread-safe: ogni thread
+ * riceve le proprie istanze, create alla prima richiesta e poi riutilizzate, così
+ * da evitare la ricerca del provider a ogni operazione.
+ * Anche il generatore casuale è per thread, per non serializzare su un'unica istanza
+ * i thread che generano salt e token; ogni istanza si inizializza dalla sorgente di entropia
+ * del sistema.
+ *
+ * Le istanze restituite vanno usate e rilasciate all'interno della stessa chiamata:
+ * non devono essere conservate né passate ad altri thread. Prima dell'uso il Cipher e il Mac
+ * vanno inizializzati con init; il MessageDigest viene restituito già azzerato.
+ * I valori contengono solo classi del JDK, per cui non trattengono il classloader
+ * dell'applicazione dopo un undeploy.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class CryptoPool {
+
+    public static final String AES_CBC = "AES/CBC/PKCS5Padding";
+    public static final String AES_GCM = "AES/GCM/NoPadding";
+    public static final String SHA_1 = "SHA-1";
+    public static final String SHA_256 = "SHA-256";
+    public static final String HMAC_SHA_256 = "HmacSHA256";
+    public static final String PBKDF2_SHA_256 = "PBKDF2WithHmacSHA256";
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private static final ThreadLocal<Cipher> AES_CBC_CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(AES_CBC);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Algoritmo " + AES_CBC + " non disponibile", e);
+        }
+    });
+
+    private static final ThreadLocal<Cipher> AES_GCM_CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(AES_GCM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Algoritmo " + AES_GCM + " non disponibile", e);
+        }
+    });
+
+    private static final ThreadLocal<MessageDigest> SHA_1_DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(SHA_1);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Algoritmo " + SHA_1 + " non disponibile", e);
+        }
+    });
+
+    private static final ThreadLocal<MessageDigest> SHA_256_DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(SHA_256);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Algoritmo " + SHA_256 + " non disponibile", e);
+        }
+    });
+
+    private static final ThreadLocal<Mac> HMAC_SHA_256_MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(HMAC_SHA_256);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Algoritmo " + HMAC_SHA_256 + " non disponibile", e);
+        }
+    });
+
+    private static final ThreadLocal<SecretKeyFactory> PBKDF2_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(PBKDF2_SHA_256);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Algoritmo " + PBKDF2_SHA_256 + " non disponibile", e);
+        }
+    });
+
+    private CryptoPool() {
+    }
+
+    /**
+     * @return Generatore casuale sicuro del thread corrente
+     */
+    public static SecureRandom random() {
+        return RANDOM.get();
+    }
+
+    /**
+     * Genera un array di byte casuali.
+     *
+     * @param length Numero di byte
+     * @return Byte casuali
+     */
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.get().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return Cipher AES/CBC/PKCS5Padding del thread corrente, da inizializzare prima dell'uso
+     */
+    public static Cipher aesCbc() {
+        return AES_CBC_CIPHER.get();
+    }
+
+    /**
+     * @return Cipher AES/GCM/NoPadding del thread corrente, da inizializzare con un nonce nuovo prima dell'uso
+     */
+    public static Cipher aesGcm() {
+        return AES_GCM_CIPHER.get();
+    }
+
+    /**
+     * @return MessageDigest SHA-1 del thread corrente, già azzerato (solo per la ricerca
+     *         negli elenchi di password compromesse, non per nuovi hash)
+     */
+    public static MessageDigest sha1() {
+        MessageDigest digest = SHA_1_DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * @return MessageDigest SHA-256 del thread corrente, già azzerato
+     */
+    public static MessageDigest sha256() {
+        MessageDigest digest = SHA_256_DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * @return Mac HmacSHA256 del thread corrente, da inizializzare con la chiave prima dell'uso
+     */
+    public static Mac hmacSha256() {
+        return HMAC_SHA_256_MAC.get();
+    }
+
+    /**
+     * @return SecretKeyFactory PBKDF2WithHmacSHA256 del thread corrente
+     */
+    public static SecretKeyFactory pbkdf2Sha256() {
+        return PBKDF2_FACTORY.get();
+    }
+}
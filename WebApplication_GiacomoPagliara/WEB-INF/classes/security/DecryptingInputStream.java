@@ -0,0 +1,162 @@
+package security;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Stream che decifra i dati prodotti da EncryptingOutputStream.
+ * Ogni segmento viene verificato prima che il suo contenuto sia restituito, per cui non vengono
+ * mai letti dati non autenticati; un contenuto alterato, riordinato o troncato provoca una IOException.
+ * In memoria viene tenuto un solo segmento. Si ottiene con AesEncryption.decryptingStream.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class DecryptingInputStream extends FilterInputStream {
+
+    private final AesKeyring keyring;
+    private SecretKey key;
+    private byte[] header;
+    private byte[] encrypted;
+    private byte[] plain;
+    private int position;
+    private int limit;
+    private int counter;
+    // Primo byte del segmento successivo, letto per stabilire se il segmento corrente è l'ultimo
+    private int lookahead = -1;
+    private boolean finished;
+
+    DecryptingInputStream(InputStream in, AesKeyring keyring) {
+        super(in);
+        this.keyring = keyring;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == limit) {
+            if (finished) {
+                return -1;
+            }
+            readSegment();
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(plain, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Anche i dati saltati vanno verificati
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (plain != null) {
+            PasswordManager.clearBytes(plain);
+        }
+        super.close();
+    }
+
+    private void readSegment() throws IOException {
+        if (header == null) {
+            readHeader();
+        }
+
+        // Legge un segmento completo più un byte, per sapere se ne seguono altri
+        int offset = 0;
+        if (lookahead >= 0) {
+            encrypted[offset++] = (byte) lookahead;
+        }
+        offset += readFully(encrypted, offset, encrypted.length - offset);
+        boolean last;
+        if (offset == encrypted.length) {
+            lookahead = in.read();
+            last = lookahead < 0;
+        } else {
+            last = true;
+        }
+        if (offset < AesEncryption.GCM_TAG_SIZE) {
+            throw new EOFException("Contenuto cifrato troncato");
+        }
+
+        try {
+            Cipher cipher = CryptoPool.aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, key,
+                    new GCMParameterSpec(AesEncryption.GCM_TAG_BITS, GcmSegments.nonce(header, counter, last)));
+            cipher.updateAAD(header);
+            limit = cipher.doFinal(encrypted, 0, offset, plain, 0);
+            position = 0;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Segmento cifrato non valido o alterato", e);
+        }
+        counter++;
+        finished = last;
+    }
+
+    private void readHeader() throws IOException {
+        byte[] read = new byte[GcmSegments.HEADER_SIZE];
+        if (readFully(read, 0, read.length) < read.length || read[0] != GcmSegments.VERSION_STREAM) {
+            throw new IOException("Intestazione dello stream cifrato non valida");
+        }
+        int segmentSize = GcmSegments.segmentSize(read);
+        if (segmentSize < GcmSegments.MIN_SEGMENT_SIZE || segmentSize > GcmSegments.MAX_SEGMENT_SIZE) {
+            throw new IOException("Dimensione dei segmenti non valida: " + segmentSize);
+        }
+        key = keyring.forDecryption(GcmSegments.kid(read));
+        if (key == null) {
+            throw new IOException("Chiave AES " + GcmSegments.kid(read) + " non disponibile o ritirata");
+        }
+        header = read;
+        encrypted = new byte[segmentSize + AesEncryption.GCM_TAG_SIZE];
+        plain = new byte[segmentSize];
+    }
+
+    private int readFully(byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = in.read(buffer, offset + total, length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+}
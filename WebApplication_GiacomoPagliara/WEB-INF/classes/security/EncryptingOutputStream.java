@@ -0,0 +1,110 @@
+package security;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Stream che cifra i dati a segmenti con AES/GCM (formato descritto in GcmSegments).
+ * In memoria viene tenuto un solo segmento, per cui la dimensione del contenuto non è limitata
+ * dalla heap. Un segmento viene cifrato solo quando arrivano altri dati oppure alla chiusura:
+ * flush non può quindi emettere un segmento incompleto e si limita allo stream sottostante.
+ * Lo stream va sempre chiuso, o concluso con finish, altrimenti il contenuto risulta troncato in lettura.
+ * Si ottiene con AesEncryption.encryptingStream.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class EncryptingOutputStream extends FilterOutputStream {
+
+    private final SecretKey key;
+    private final byte[] header;
+    private final byte[] plain = new byte[GcmSegments.SEGMENT_SIZE];
+    private final byte[] encrypted = new byte[GcmSegments.SEGMENT_SIZE + AesEncryption.GCM_TAG_SIZE];
+    private int position;
+    private int counter;
+    private boolean closed;
+
+    EncryptingOutputStream(OutputStream out, int kid, SecretKey key) throws IOException {
+        super(out);
+        this.key = key;
+        this.header = GcmSegments.header(kid, CryptoPool.randomBytes(GcmSegments.PREFIX_SIZE), GcmSegments.SEGMENT_SIZE);
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            // Il segmento pieno viene cifrato solo ora che è certo non essere l'ultimo
+            if (position == plain.length) {
+                writeSegment(false);
+            }
+            int n = Math.min(len, plain.length - position);
+            System.arraycopy(b, off, plain, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Scrive l'ultimo segmento senza chiudere lo stream sottostante, ad esempio per sincronizzarlo
+     * su disco prima della chiusura. Dopo finish non si possono scrivere altri dati.
+     *
+     * @throws IOException Se la scrittura non riesce
+     */
+    public void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeSegment(true);
+        } finally {
+            PasswordManager.clearBytes(plain);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeSegment(boolean last) throws IOException {
+        if (counter == -1) {
+            throw new IOException("Contenuto troppo grande per lo stream cifrato");
+        }
+        try {
+            Cipher cipher = CryptoPool.aesGcm();
+            cipher.init(Cipher.ENCRYPT_MODE, key,
+                    new GCMParameterSpec(AesEncryption.GCM_TAG_BITS, GcmSegments.nonce(header, counter, last)));
+            cipher.updateAAD(header);
+            int length = cipher.doFinal(plain, 0, position, encrypted, 0);
+            out.write(encrypted, 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cifratura del segmento non riuscita", e);
+        }
+        counter++;
+        position = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream chiuso");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package security;
+
+/**
+ * Formato a segmenti usato dagli stream cifranti.
+ *
+ * Intestazione (13 byte): versione 0x02, id della chiave (vedi AesKeyring), prefisso casuale
+ * di 7 byte, dimensione dei segmenti in chiaro (int big-endian). Seguono i segmenti, ciascuno cifrato con AES/GCM e seguito dal
+ * proprio tag; tutti i segmenti tranne l'ultimo contengono esattamente la dimensione dichiarata.
+ * Il nonce di ogni segmento è prefisso, contatore (4 byte) e un byte che vale 1 solo per l'ultimo
+ * segmento, così che riordino, rimozione o troncamento dei segmenti vengano rilevati.
+ * L'intestazione è autenticata come dato aggiuntivo di ogni segmento.
+ *
+ * @author Giacomo Pagliara
+ */
+final class GcmSegments {
+
+    static final byte VERSION_STREAM = 0x02;
+    static final int PREFIX_SIZE = 7;
+    static final int HEADER_SIZE = 2 + PREFIX_SIZE + 4;
+
+    // Dimensione dei segmenti in chiaro scritti e limiti accettati in lettura
+    static final int SEGMENT_SIZE = 64 * 1024;
+    static final int MIN_SEGMENT_SIZE = 1024;
+    static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+
+    private GcmSegments() {
+    }
+
+    /**
+     * Costruisce l'intestazione dello stream.
+     */
+    static byte[] header(int kid, byte[] prefix, int segmentSize) {
+        byte[] header = new byte[HEADER_SIZE];
+        header[0] = VERSION_STREAM;
+        header[1] = (byte) kid;
+        System.arraycopy(prefix, 0, header, 2, PREFIX_SIZE);
+        header[9] = (byte) (segmentSize >>> 24);
+        header[10] = (byte) (segmentSize >>> 16);
+        header[11] = (byte) (segmentSize >>> 8);
+        header[12] = (byte) segmentSize;
+        return header;
+    }
+
+    /**
+     * Legge l'id della chiave da un'intestazione.
+     */
+    static int kid(byte[] header) {
+        return header[1] & 0xFF;
+    }
+
+    /**
+     * Legge la dimensione dei segmenti da un'intestazione.
+     */
+    static int segmentSize(byte[] header) {
+        return (header[9] & 0xFF) << 24 | (header[10] & 0xFF) << 16 | (header[11] & 0xFF) << 8 | header[12] & 0xFF;
+    }
+
+    /**
+     * Calcola il nonce di un segmento.
+     */
+    static byte[] nonce(byte[] header, int counter, boolean last) {
+        byte[] nonce = new byte[AesEncryption.GCM_NONCE_SIZE];
+        System.arraycopy(header, 2, nonce, 0, PREFIX_SIZE);
+        nonce[7] = (byte) (counter >>> 24);
+        nonce[8] = (byte) (counter >>> 16);
+        nonce[9] = (byte) (counter >>> 8);
+        nonce[10] = (byte) counter;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+}
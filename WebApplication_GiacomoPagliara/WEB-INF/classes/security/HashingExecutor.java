@@ -0,0 +1,105 @@
+package security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import utils.ConfigManager;
+
+/**
+ * Executor dedicato al calcolo degli hash delle password.
+ * Il numero di thread e la lunghezza della coda sono limitati: durante un picco
+ * di login le richieste in eccesso vengono rifiutate subito con
+ * HashingRejectedException invece di occupare i thread delle servlet con lavoro CPU.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class HashingExecutor {
+
+    // Valori predefiniti
+    private static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int DEFAULT_QUEUE_SIZE = 32;
+    private static final long DEFAULT_TIMEOUT_MS = 5_000;
+
+    private static final ThreadPoolExecutor EXECUTOR;
+    private static final long TIMEOUT_MS;
+
+    // Contatori statistici
+    private static final LongAdder COMPLETED = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+
+    static {
+        int threads = Math.max(1, ConfigManager.getInt("password.hash.threads", DEFAULT_THREADS));
+        int queueSize = Math.max(1, ConfigManager.getInt("password.hash.queueSize", DEFAULT_QUEUE_SIZE));
+        TIMEOUT_MS = ConfigManager.getLong("password.hash.timeoutMs", DEFAULT_TIMEOUT_MS);
+
+        AtomicInteger counter = new AtomicInteger();
+        EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private HashingExecutor() {
+        // Classe di utilità
+    }
+
+    /**
+     * Esegue un'operazione di hashing sull'executor dedicato e ne attende il risultato.
+     *
+     * @param task Operazione da eseguire
+     * @return Risultato dell'operazione
+     * @throws HashingRejectedException Se la coda è piena o l'attesa supera il timeout
+     */
+    public static <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = EXECUTOR.submit(task);
+        } catch (RejectedExecutionException e) {
+            REJECTED.increment();
+            throw new HashingRejectedException("Troppe operazioni di hashing in corso", e);
+        }
+
+        try {
+            T result = future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            COMPLETED.increment();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            REJECTED.increment();
+            throw new HashingRejectedException("Timeout nell'attesa dell'hashing della password", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new HashingRejectedException("Attesa dell'hashing della password interrotta", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Errore durante l'hashing della password", cause);
+        }
+    }
+
+    /**
+     * Arresta l'executor. Da invocare alla chiusura dell'applicazione.
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    public static int getQueueDepth() { return EXECUTOR.getQueue().size(); }
+    public static int getActiveCount() { return EXECUTOR.getActiveCount(); }
+    public static long getCompletedCount() { return COMPLETED.sum(); }
+    public static long getRejectedCount() { return REJECTED.sum(); }
+}
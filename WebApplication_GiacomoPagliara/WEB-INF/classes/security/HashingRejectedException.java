@@ -0,0 +1,20 @@
+package security;
+
+/**
+ * Eccezione sollevata quando un'operazione di hashing delle password viene
+ * rifiutata perché l'executor dedicato è saturo o l'attesa ha superato il limite.
+ * Permette alle servlet di rispondere subito invece di accodare altro lavoro.
+ *
+ * @author Giacomo Pagliara
+ */
+public class HashingRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public HashingRejectedException(String message) {
+        super(message);
+    }
+
+    public HashingRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
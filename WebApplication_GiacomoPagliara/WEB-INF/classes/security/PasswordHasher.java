@@ -0,0 +1,231 @@
+package security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.logging.Logger;
+
+import javax.crypto.spec.PBEKeySpec;
+
+import utils.ConfigManager;
+
+/**
+ * Hashing delle password con PBKDF2-HMAC-SHA256 e formato con indicazione dell'algoritmo.
+ * Gli hash prodotti hanno la forma "$pbkdf2-sha256$&lt;iterazioni&gt;$&lt;hash in Base64&gt;"
+ * (byte ASCII), per cui il costo usato resta noto anche dopo una ricalibrazione.
+ * Gli hash privi del prefisso sono considerati nel vecchio formato SHA-256(password || salt).
+ *
+ * Il numero di iterazioni viene calibrato all'avvio in modo che un hash richieda
+ * circa password.kdf.targetMs millisecondi, entro i limiti configurati.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class PasswordHasher {
+
+    private static final Logger logger = Logger.getLogger(PasswordHasher.class.getName());
+
+    // Algoritmo e formato
+    private static final String TAG = "pbkdf2-sha256";
+    private static final byte[] PREFIX = ("$" + TAG + "$").getBytes(StandardCharsets.US_ASCII);
+    private static final int HASH_BITS = 256;
+
+    // Parametri di calibrazione predefiniti
+    private static final long DEFAULT_TARGET_MS = 100;
+    private static final int DEFAULT_MIN_ITERATIONS = 100_000;
+    private static final int DEFAULT_MAX_ITERATIONS = 2_000_000;
+    private static final int PROBE_ITERATIONS = 20_000;
+    private static final int PROBE_ROUNDS = 3;
+
+    // Numero di iterazioni usato per i nuovi hash; pubblicato in modo sicuro tramite volatile
+    private static volatile int iterations = Math.max(
+            ConfigManager.getInt("password.kdf.minIterations", DEFAULT_MIN_ITERATIONS),
+            ConfigManager.getInt("password.kdf.iterations", 0));
+
+    private PasswordHasher() {
+        // Classe di utilità
+    }
+
+    /**
+     * Calibra il numero di iterazioni sul tempo obiettivo configurato.
+     * Se password.kdf.iterations è impostato, il valore configurato viene usato così com'è.
+     *
+     * @return Numero di iterazioni scelto
+     */
+    public static int calibrate() {
+        int fixed = ConfigManager.getInt("password.kdf.iterations", 0);
+        if (fixed > 0) {
+            iterations = fixed;
+            logger.info("Iterazioni PBKDF2 fissate da configurazione: " + fixed);
+            return fixed;
+        }
+
+        long targetMs = ConfigManager.getLong("password.kdf.targetMs", DEFAULT_TARGET_MS);
+        int min = ConfigManager.getInt("password.kdf.minIterations", DEFAULT_MIN_ITERATIONS);
+        int max = Math.max(min, ConfigManager.getInt("password.kdf.maxIterations", DEFAULT_MAX_ITERATIONS));
+
+        byte[] probePassword = "calibrazione".getBytes(StandardCharsets.US_ASCII);
+        byte[] probeSalt = new byte[16];
+
+        // Si usa il tempo minimo su più giri per ridurre l'effetto della compilazione JIT
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            derive(probePassword, probeSalt, PROBE_ITERATIONS);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        double nanosPerIteration = (double) bestNanos / PROBE_ITERATIONS;
+        long scaled = (long) (targetMs * 1_000_000L / nanosPerIteration);
+        int chosen = (int) Math.max(min, Math.min(max, scaled / 1000 * 1000));
+        iterations = chosen;
+
+        logger.info("Iterazioni PBKDF2 calibrate: " + chosen + " (obiettivo " + targetMs + " ms)");
+        return chosen;
+    }
+
+    /**
+     * Calcola l'hash di una password nel formato con indicazione dell'algoritmo.
+     *
+     * @param password Password in byte array
+     * @param salt Salt in byte array
+     * @return Hash codificato come byte ASCII
+     */
+    public static byte[] hash(byte[] password, byte[] salt) {
+        int cost = iterations;
+        byte[] derived = derive(password, salt, cost);
+        try {
+            String encoded = "$" + TAG + "$" + cost + "$" + Base64.getEncoder().withoutPadding().encodeToString(derived);
+            return encoded.getBytes(StandardCharsets.US_ASCII);
+        } finally {
+            Arrays.fill(derived, (byte) 0);
+        }
+    }
+
+    /**
+     * Verifica una password rispetto a un hash nel formato con indicazione dell'algoritmo.
+     *
+     * @param password Password inserita dall'utente
+     * @param storedHash Hash memorizzato
+     * @param salt Salt memorizzato
+     * @return true se la password corrisponde, false altrimenti
+     */
+    public static boolean verify(byte[] password, byte[] storedHash, byte[] salt) {
+        int separator = indexOf(storedHash, (byte) '$', PREFIX.length);
+        if (!isTagged(storedHash) || separator < 0) {
+            return false;
+        }
+
+        int cost;
+        byte[] expected;
+        try {
+            cost = Integer.parseInt(new String(storedHash, PREFIX.length, separator - PREFIX.length,
+                    StandardCharsets.US_ASCII));
+            expected = Base64.getDecoder().decode(Arrays.copyOfRange(storedHash, separator + 1, storedHash.length));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (cost <= 0) {
+            return false;
+        }
+
+        byte[] derived = derive(password, salt, cost);
+        try {
+            return constantTimeEquals(derived, expected);
+        } finally {
+            Arrays.fill(derived, (byte) 0);
+        }
+    }
+
+    /**
+     * Indica se un hash è nel formato con indicazione dell'algoritmo.
+     *
+     * @param storedHash Hash memorizzato
+     * @return true se l'hash inizia con il prefisso PBKDF2
+     */
+    public static boolean isTagged(byte[] storedHash) {
+        if (storedHash == null || storedHash.length <= PREFIX.length) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (storedHash[i] != PREFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indica se un hash va ricalcolato perché in un formato obsoleto
+     * o con un numero di iterazioni inferiore a quello corrente.
+     *
+     * @param storedHash Hash memorizzato
+     * @return true se l'hash va ricalcolato al prossimo login riuscito
+     */
+    public static boolean needsRehash(byte[] storedHash) {
+        if (!isTagged(storedHash)) {
+            return true;
+        }
+        int separator = indexOf(storedHash, (byte) '$', PREFIX.length);
+        if (separator < 0) {
+            return true;
+        }
+        try {
+            int cost = Integer.parseInt(new String(storedHash, PREFIX.length, separator - PREFIX.length,
+                    StandardCharsets.US_ASCII));
+            return cost < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return Numero di iterazioni usato per i nuovi hash
+     */
+    public static int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Calcola PBKDF2-HMAC-SHA256. I byte della password vengono estesi a char
+     * uno a uno, in modo che la conversione sia senza perdita per qualunque codifica.
+     */
+    private static byte[] derive(byte[] password, byte[] salt, int cost) {
+        char[] chars = new char[password.length];
+        for (int i = 0; i < password.length; i++) {
+            chars[i] = (char) (password[i] & 0xFF);
+        }
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, cost, HASH_BITS);
+        try {
+            return CryptoPool.pbkdf2Sha256().generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalStateException("Algoritmo di hashing non disponibile", e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * Confronto a tempo costante di due array di byte.
+     */
+    static boolean constantTimeEquals(byte[] a, byte[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        int result = 0;
+        for (int i = 0; i < a.length; i++) {
+            result |= a[i] ^ b[i];
+        }
+        return result == 0;
+    }
+
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
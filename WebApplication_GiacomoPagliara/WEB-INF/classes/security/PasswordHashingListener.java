@@ -0,0 +1,25 @@
+package security;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Listener che calibra il costo dell'hashing delle password all'avvio,
+ * fuori dal percorso delle richieste, e arresta l'executor dedicato alla chiusura.
+ * 
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class PasswordHashingListener implements ServletContextListener {
+    
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        PasswordHasher.calibrate();
+    }
+    
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        HashingExecutor.shutdown();
+    }
+}
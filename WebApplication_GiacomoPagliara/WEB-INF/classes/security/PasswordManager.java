@@ -1,9 +1,6 @@
 package security;
 
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.regex.Pattern;
 
 /**
  * Classe per la gestione sicura delle password.
@@ -14,10 +11,8 @@ import java.util.regex.Pattern;
  */
 public class PasswordManager {
     
-    // Costanti per i requisiti delle password
-    private static final int MIN_PASSWORD_LENGTH = 8;
-    private static final String SPECIAL_CHARACTERS = "!@#$%^&*()-_+=<>?.";
-    private static final String HASH_ALGORITHM = "SHA-256";
+    // Salt fisso per simulateVerification: il risultato viene scartato
+    private static final byte[] DUMMY_SALT = new byte[16];
     
     /**
      * Cancella in modo sicuro il contenuto di un array di byte.
@@ -40,10 +35,7 @@ public class PasswordManager {
      * @return Array di byte casuali della lunghezza specificata
      */
     public static byte[] generateRandomBytes(int saltLength) {
-        byte[] salt = new byte[saltLength];
-        SecureRandom secureRandom = new SecureRandom();
-        secureRandom.nextBytes(salt);
-        return salt;
+        return CryptoPool.randomBytes(saltLength);
     }
 
     /**
@@ -52,117 +44,89 @@ public class PasswordManager {
      * @param password Password in byte array
      * @param salt Salt in byte array
      * @return Hash SHA-256 della concatenazione di password e salt
-     * @throws RuntimeException se l'algoritmo di hashing non è disponibile
      */
     public static byte[] concatenateAndHash(byte[] password, byte[] salt) {
-        try {
-            // Alloca un nuovo array di byte con dimensioni totali
-            byte[] concatenatedData = new byte[password.length + salt.length];
-
-            // Copia i dati dal primo array di byte al nuovo array
-            System.arraycopy(password, 0, concatenatedData, 0, password.length);
-
-            // Copia i dati dal secondo array di byte al nuovo array
-            System.arraycopy(salt, 0, concatenatedData, password.length, salt.length);
-
-            // Ottieni un'istanza di MessageDigest con l'algoritmo SHA-256
-            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
-
-            // Calcola l'hash dell'array di byte concatenato
-            return digest.digest(concatenatedData);
-
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Algoritmo di hashing non disponibile", e);
-        }
+        // Aggiornare il digest con i due array equivale a calcolarlo sulla concatenazione,
+        // senza creare una copia della password in memoria
+        MessageDigest digest = CryptoPool.sha256();
+        digest.update(password);
+        digest.update(salt);
+        return digest.digest();
     }
 
     /**
-     * Verifica se una password rispetta i criteri di sicurezza.
-     * Una password forte deve:
-     * - Avere almeno 8 caratteri
-     * - Contenere almeno una lettera maiuscola
-     * - Contenere almeno un numero
-     * - Contenere almeno un carattere speciale
+     * Verifica se una password rispetta la politica delle password corrente
+     * (vedi PasswordPolicy). La verifica avviene sui byte, senza creare copie della password.
      * 
-     * @param password Password da verificare come array di byte
+     * @param password Password da verificare come array di byte UTF-8
      * @return true se la password rispetta tutti i criteri, false altrimenti
      */
     public static boolean isStrongPassword(byte[] password) {
-        if (password == null) {
-            return false;
-        }
-        
-        String passwordString = new String(password);
-
-        return isLengthValid(passwordString) && 
-               containsUpperCase(passwordString) && 
-               containsDigit(passwordString) &&
-               containsSpecialCharacter(passwordString);
-    }
-
-    /**
-     * Verifica se la password ha la lunghezza minima richiesta.
-     * 
-     * @param password Password come stringa
-     * @return true se la lunghezza è valida, false altrimenti
-     */
-    private static boolean isLengthValid(String password) {
-        return password != null && password.length() >= MIN_PASSWORD_LENGTH;
+        return password != null && PasswordPolicy.current().check(password) == 0;
     }
-
+    
     /**
-     * Verifica se la password contiene almeno una lettera maiuscola.
+     * Calcola l'hash di una password con PBKDF2 nel formato con indicazione dell'algoritmo.
+     * Il calcolo avviene sull'executor dedicato all'hashing.
      * 
-     * @param password Password come stringa
-     * @return true se contiene almeno una maiuscola, false altrimenti
+     * @param password Password in byte array
+     * @param salt Salt in byte array
+     * @return Hash della password, da memorizzare così com'è
+     * @throws HashingRejectedException Se l'executor di hashing è saturo
      */
-    private static boolean containsUpperCase(String password) {
-        return password != null && Pattern.compile("[A-Z]").matcher(password).find();
+    public static byte[] hashPassword(byte[] password, byte[] salt) {
+        return HashingExecutor.execute(() -> PasswordHasher.hash(password, salt));
     }
-
+    
     /**
-     * Verifica se la password contiene almeno un numero.
+     * Indica se l'hash memorizzato va ricalcolato con i parametri correnti,
+     * perché nel vecchio formato SHA-256 o con meno iterazioni di quelle attuali.
      * 
-     * @param password Password come stringa
-     * @return true se contiene almeno un numero, false altrimenti
+     * @param storedHash Hash archiviato nel database
+     * @return true se l'hash va ricalcolato
      */
-    private static boolean containsDigit(String password) {
-        return password != null && Pattern.compile("\\d").matcher(password).find();
+    public static boolean needsRehash(byte[] storedHash) {
+        return PasswordHasher.needsRehash(storedHash);
     }
-
+    
     /**
-     * Verifica se la password contiene almeno un carattere speciale.
+     * Esegue un hash PBKDF2 con il costo corrente e ne scarta il risultato, per gli utenti inesistenti:
+     * il login richiede così lo stesso tempo che per una password errata e non rivela quali utenti esistono.
      * 
-     * @param password Password come stringa
-     * @return true se contiene almeno un carattere speciale, false altrimenti
+     * @param inputPassword Password inserita dall'utente
+     * @throws HashingRejectedException Se l'executor di hashing è saturo
      */
-    private static boolean containsSpecialCharacter(String password) {
-        return password != null && 
-               Pattern.compile("[" + Pattern.quote(SPECIAL_CHARACTERS) + "]").matcher(password).find();
+    public static void simulateVerification(byte[] inputPassword) {
+        clearBytes(HashingExecutor.execute(() -> PasswordHasher.hash(inputPassword, DUMMY_SALT)));
     }
     
     /**
      * Verifica se una password corrisponde a quella archiviata.
+     * Supporta sia gli hash PBKDF2 con indicazione dell'algoritmo, verificati
+     * sull'executor dedicato, sia il vecchio formato SHA-256(password || salt).
      * 
      * @param inputPassword Password inserita dall'utente
      * @param storedHash Hash archiviato nel database
      * @param salt Salt archiviato nel database
      * @return true se la password corrisponde, false altrimenti
+     * @throws HashingRejectedException Se l'executor di hashing è saturo
      */
     public static boolean verifyPassword(byte[] inputPassword, byte[] storedHash, byte[] salt) {
-        byte[] hashedInput = concatenateAndHash(inputPassword, salt);
-        
-        // Controllo se gli hash hanno la stessa lunghezza
-        if (hashedInput.length != storedHash.length) {
+        if (inputPassword == null || storedHash == null || salt == null) {
             return false;
         }
         
-        // Confronto time-constant per evitare timing attacks
-        int result = 0;
-        for (int i = 0; i < hashedInput.length; i++) {
-            result |= hashedInput[i] ^ storedHash[i];
+        if (PasswordHasher.isTagged(storedHash)) {
+            return HashingExecutor.execute(() -> PasswordHasher.verify(inputPassword, storedHash, salt));
         }
         
-        return result == 0;
+        // Vecchio formato: SHA-256 della concatenazione di password e salt
+        byte[] hashedInput = concatenateAndHash(inputPassword, salt);
+        try {
+            // Confronto time-constant per evitare timing attacks
+            return PasswordHasher.constantTimeEquals(hashedInput, storedHash);
+        } finally {
+            clearBytes(hashedInput);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,348 @@
+package security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import utils.ConfigChangeListener;
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
+/**
+ * Politica delle password configurabile: lunghezza minima e massima, classi di caratteri
+ * richieste, numero massimo di caratteri uguali consecutivi ed elenco di password vietate.
+ *
+ * La verifica avviene in un'unica passata direttamente sui byte UTF-8 della password,
+ * senza convertirla in String (che lascerebbe in memoria una copia non cancellabile)
+ * e senza allocazioni: il risultato è una maschera di bit con le regole non rispettate
+ * (vedi Rule). Le password vietate sono confrontate senza distinzione tra maiuscole e minuscole
+ * tramite un hash calcolato durante la stessa passata.
+ *
+ * Chiavi di configurazione (password.*): minLength (8), maxLength (128), requireUppercase (true),
+ * requireLowercase (false), requireDigit (true), requireSpecial (true), specialCharacters,
+ * maxRepeat (0 = nessun limite), blocklist (elenco separato da virgole).
+ * Se è configurato un elenco di password compromesse (vedi BreachedPasswordIndex) la password
+ * viene cercata anche lì; la ricerca calcola un hash della password e non alloca memoria.
+ * La politica viene aggiornata al ricaricamento della configurazione.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class PasswordPolicy {
+
+    /**
+     * Regole della politica; ciascuna corrisponde a un bit della maschera restituita da check.
+     */
+    public enum Rule {
+        MIN_LENGTH, MAX_LENGTH, UPPERCASE, LOWERCASE, DIGIT, SPECIAL, REPEAT, BLOCKLIST, BREACHED;
+
+        /**
+         * @return Bit della regola nella maschera
+         */
+        public int bit() {
+            return 1 << ordinal();
+        }
+    }
+
+    private static final String DEFAULT_SPECIAL_CHARACTERS = "!@#$%^&*()-_+=<>?.";
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private static volatile PasswordPolicy current = load();
+
+    static {
+        ConfigManager.addListener(new ConfigChangeListener() {
+            @Override
+            public void configChanged(ConfigSnapshot previous, ConfigSnapshot snapshot, Set<String> changedKeys) {
+                if (ConfigSnapshot.anyStartsWith(changedKeys, "password.")) {
+                    current = new PasswordPolicy(snapshot);
+                }
+            }
+        });
+    }
+
+    private final int minLength;
+    private final int maxLength;
+    private final boolean requireUppercase;
+    private final boolean requireLowercase;
+    private final boolean requireDigit;
+    private final boolean requireSpecial;
+    private final int maxRepeat;
+    private final boolean[] special = new boolean[128];
+    private final String specialCharacters;
+
+    // Password vietate in minuscolo, ordinate per hash per la ricerca binaria
+    private final long[] blockedHashes;
+    private final byte[][] blocked;
+
+    private PasswordPolicy(ConfigSnapshot config) {
+        minLength = Math.max(1, config.getInt("password.minLength", 8));
+        maxLength = Math.max(minLength, config.getInt("password.maxLength", 128));
+        requireUppercase = config.getBoolean("password.requireUppercase", true);
+        requireLowercase = config.getBoolean("password.requireLowercase", false);
+        requireDigit = config.getBoolean("password.requireDigit", true);
+        requireSpecial = config.getBoolean("password.requireSpecial", true);
+        maxRepeat = Math.max(0, config.getInt("password.maxRepeat", 0));
+
+        // Caratteri speciali (solo ASCII), memorizzati in una tabella per un controllo senza ricerche
+        String specials = config.getString("password.specialCharacters", DEFAULT_SPECIAL_CHARACTERS);
+        StringBuilder accepted = new StringBuilder();
+        for (int i = 0; i < specials.length(); i++) {
+            char c = specials.charAt(i);
+            if (c < 128 && !special[c]) {
+                special[c] = true;
+                accepted.append(c);
+            }
+        }
+        specialCharacters = accepted.toString();
+
+        List<byte[]> entries = new ArrayList<>();
+        for (String entry : config.getString("password.blocklist", "").split(",")) {
+            String trimmed = entry.trim();
+            if (!trimmed.isEmpty()) {
+                entries.add(trimmed.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        entries.sort((a, b) -> Long.compare(hash(a), hash(b)));
+        blocked = entries.toArray(new byte[0][]);
+        blockedHashes = new long[blocked.length];
+        for (int i = 0; i < blocked.length; i++) {
+            blockedHashes[i] = hash(blocked[i]);
+        }
+    }
+
+    /**
+     * @return Politica corrente
+     */
+    public static PasswordPolicy current() {
+        return current;
+    }
+
+    /**
+     * Verifica una password rispetto a tutte le regole.
+     *
+     * @param password Password codificata in UTF-8
+     * @return Maschera delle regole non rispettate (vedi Rule.bit), 0 se la password è valida
+     */
+    public int check(byte[] password) {
+        if (password == null) {
+            return Rule.MIN_LENGTH.bit();
+        }
+
+        int length = 0;
+        boolean upper = false;
+        boolean lower = false;
+        boolean digit = false;
+        boolean hasSpecial = false;
+        int previous = -1;
+        int run = 0;
+        int longestRun = 0;
+        long hash = FNV_OFFSET;
+
+        int i = 0;
+        while (i < password.length) {
+            // Decodifica il code point UTF-8 che inizia in i
+            int b = password[i] & 0xFF;
+            int codePoint;
+            int size;
+            if (b < 0x80) {
+                codePoint = b;
+                size = 1;
+            } else if (b >= 0xF0) {
+                codePoint = b & 0x07;
+                size = 4;
+            } else if (b >= 0xE0) {
+                codePoint = b & 0x0F;
+                size = 3;
+            } else {
+                codePoint = b & 0x1F;
+                size = 2;
+            }
+            for (int k = 1; k < size && i + k < password.length; k++) {
+                codePoint = codePoint << 6 | (password[i + k] & 0x3F);
+            }
+
+            if (codePoint < 128) {
+                upper |= codePoint >= 'A' && codePoint <= 'Z';
+                lower |= codePoint >= 'a' && codePoint <= 'z';
+                digit |= codePoint >= '0' && codePoint <= '9';
+                hasSpecial |= special[codePoint];
+                // Hash della password in minuscolo, per il confronto con le password vietate
+                int folded = codePoint >= 'A' && codePoint <= 'Z' ? codePoint + 32 : codePoint;
+                hash = (hash ^ folded) * FNV_PRIME;
+            } else {
+                upper |= Character.isUpperCase(codePoint);
+                lower |= Character.isLowerCase(codePoint);
+                digit |= Character.isDigit(codePoint);
+                for (int k = 0; k < size && i + k < password.length; k++) {
+                    hash = (hash ^ (password[i + k] & 0xFF)) * FNV_PRIME;
+                }
+            }
+
+            run = codePoint == previous ? run + 1 : 1;
+            longestRun = Math.max(longestRun, run);
+            previous = codePoint;
+            length++;
+            i += size;
+        }
+
+        int failures = 0;
+        if (length < minLength) {
+            failures |= Rule.MIN_LENGTH.bit();
+        }
+        if (length > maxLength) {
+            failures |= Rule.MAX_LENGTH.bit();
+        }
+        if (requireUppercase && !upper) {
+            failures |= Rule.UPPERCASE.bit();
+        }
+        if (requireLowercase && !lower) {
+            failures |= Rule.LOWERCASE.bit();
+        }
+        if (requireDigit && !digit) {
+            failures |= Rule.DIGIT.bit();
+        }
+        if (requireSpecial && !hasSpecial) {
+            failures |= Rule.SPECIAL.bit();
+        }
+        if (maxRepeat > 0 && longestRun > maxRepeat) {
+            failures |= Rule.REPEAT.bit();
+        }
+        if (isBlocked(password, hash)) {
+            failures |= Rule.BLOCKLIST.bit();
+        }
+        if (BreachedPasswordIndex.isBreached(password)) {
+            failures |= Rule.BREACHED.bit();
+        }
+        return failures;
+    }
+
+    /**
+     * Restituisce le regole contenute in una maschera restituita da check.
+     *
+     * @param failures Maschera delle regole non rispettate
+     * @return Regole non rispettate, nell'ordine di dichiarazione
+     */
+    public static Set<Rule> rules(int failures) {
+        Set<Rule> rules = EnumSet.noneOf(Rule.class);
+        for (Rule rule : Rule.values()) {
+            if ((failures & rule.bit()) != 0) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Restituisce i messaggi per l'utente corrispondenti alle regole non rispettate.
+     *
+     * @param failures Maschera delle regole non rispettate
+     * @return Messaggi, uno per regola
+     */
+    public List<String> messages(int failures) {
+        if (failures == 0) {
+            return Collections.emptyList();
+        }
+        List<String> messages = new ArrayList<>();
+        for (Rule rule : rules(failures)) {
+            messages.add(message(rule));
+        }
+        return messages;
+    }
+
+    /**
+     * Restituisce il messaggio per l'utente relativo a una regola.
+     *
+     * @param rule Regola
+     * @return Messaggio
+     */
+    public String message(Rule rule) {
+        switch (rule) {
+            case MIN_LENGTH:
+                return "La password deve contenere almeno " + minLength + " caratteri";
+            case MAX_LENGTH:
+                return "La password non può superare " + maxLength + " caratteri";
+            case UPPERCASE:
+                return "La password deve contenere almeno una lettera maiuscola";
+            case LOWERCASE:
+                return "La password deve contenere almeno una lettera minuscola";
+            case DIGIT:
+                return "La password deve contenere almeno un numero";
+            case SPECIAL:
+                return "La password deve contenere almeno un carattere speciale tra " + specialCharacters;
+            case REPEAT:
+                return "La password non può contenere più di " + maxRepeat + " caratteri uguali consecutivi";
+            case BLOCKLIST:
+                return "La password è troppo comune";
+            case BREACHED:
+                return "La password compare in un elenco di password compromesse: scegline un'altra";
+            default:
+                return "La password non rispetta i requisiti di sicurezza";
+        }
+    }
+
+    /**
+     * Verifica se la password coincide, senza distinzione tra maiuscole e minuscole ASCII,
+     * con una password vietata che ha lo stesso hash.
+     */
+    private boolean isBlocked(byte[] password, long hash) {
+        int index = Arrays.binarySearch(blockedHashes, hash);
+        if (index < 0) {
+            return false;
+        }
+        // Più voci possono avere lo stesso hash: si esaminano quelle adiacenti
+        while (index > 0 && blockedHashes[index - 1] == hash) {
+            index--;
+        }
+        for (; index < blocked.length && blockedHashes[index] == hash; index++) {
+            if (equalsIgnoreAsciiCase(blocked[index], password)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equalsIgnoreAsciiCase(byte[] lowercase, byte[] password) {
+        if (lowercase.length != password.length) {
+            return false;
+        }
+        for (int i = 0; i < password.length; i++) {
+            int b = password[i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 32;
+            }
+            if (b != lowercase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calcola lo stesso hash di check su una voce già in minuscolo.
+     */
+    private static long hash(byte[] lowercase) {
+        long hash = FNV_OFFSET;
+        for (byte b : lowercase) {
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Legge la politica dalla configurazione, con i valori predefiniti se non è disponibile.
+     */
+    private static PasswordPolicy load() {
+        try {
+            return new PasswordPolicy(ConfigManager.getSnapshot());
+        } catch (IOException e) {
+            System.err.println("Impossibile caricare la politica delle password: " + e.getMessage());
+            return new PasswordPolicy(ConfigSnapshot.EMPTY);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import utils.ConfigManager;
+
+/**
+ * Token "ricordami" firmati con HMAC-SHA256, verificabili senza accedere al database.
+ * Il valore del cookie ha la forma:
+ * s1.&lt;username in Base64&gt;.&lt;emissione ms&gt;.&lt;scadenza ms&gt;.&lt;id chiave&gt;.&lt;id token&gt;.&lt;firma&gt;
+ *
+ * Le chiavi si configurano con token.hmac.keys ("id1:chiaveBase64,id2:chiaveBase64")
+ * e token.hmac.activeKid indica quella usata per i nuovi token. Le altre chiavi
+ * restano valide per la verifica, così da poterle ruotare senza invalidare i cookie emessi.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class SignedTokens {
+
+    private static final Logger logger = Logger.getLogger(SignedTokens.class.getName());
+
+    private static final String VERSION = "s1";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int FIELD_COUNT = 7;
+    private static final int MIN_KEY_BYTES = 32;
+    private static final int ID_BYTES = 16;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    // Chiavi per id, caricate all'avvio; la mappa non viene più modificata
+    private static final Map<String, SecretKey> KEYS = loadKeys();
+    private static final String ACTIVE_KID = ConfigManager.getString("token.hmac.activeKid", null);
+
+    /**
+     * Contenuto di un token verificato.
+     */
+    public static final class Claims {
+        private final String username;
+        private final long issuedAt;
+        private final long expiresAt;
+        private final String tokenId;
+
+        private Claims(String username, long issuedAt, long expiresAt, String tokenId) {
+            this.username = username;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.tokenId = tokenId;
+        }
+
+        public String getUsername() { return username; }
+        public long getIssuedAt() { return issuedAt; }
+        public long getExpiresAt() { return expiresAt; }
+        public String getTokenId() { return tokenId; }
+    }
+
+    private SignedTokens() {
+        // Classe di utilità
+    }
+
+    /**
+     * Indica se la chiave attiva è configurata e i token firmati possono essere emessi.
+     *
+     * @return true se la modalità stateless è utilizzabile
+     */
+    public static boolean isConfigured() {
+        return ACTIVE_KID != null && KEYS.containsKey(ACTIVE_KID);
+    }
+
+    /**
+     * Genera un nuovo identificativo casuale per un token.
+     *
+     * @return Identificativo in Base64 URL-safe
+     */
+    public static String newTokenId() {
+        byte[] id = new byte[ID_BYTES];
+        CryptoPool.random().nextBytes(id);
+        return ENCODER.encodeToString(id);
+    }
+
+    /**
+     * Emette un token firmato con la chiave attiva.
+     *
+     * @param username Nome utente
+     * @param tokenId Identificativo del token
+     * @param issuedAt Istante di emissione in millisecondi
+     * @param expiresAt Scadenza in millisecondi
+     * @return Valore del cookie
+     */
+    public static String issue(String username, String tokenId, long issuedAt, long expiresAt) {
+        if (!isConfigured()) {
+            throw new IllegalStateException("Chiave HMAC attiva non configurata");
+        }
+        String payload = VERSION + "." + ENCODER.encodeToString(username.getBytes(StandardCharsets.UTF_8))
+                + "." + issuedAt + "." + expiresAt + "." + ACTIVE_KID + "." + tokenId;
+        return payload + "." + ENCODER.encodeToString(sign(KEYS.get(ACTIVE_KID), payload));
+    }
+
+    /**
+     * Verifica firma e scadenza di un token. La revoca non viene controllata.
+     *
+     * @param value Valore del cookie
+     * @param now Istante corrente in millisecondi
+     * @return Contenuto del token, o null se il token non è valido o è scaduto
+     */
+    public static Claims verify(String value, long now) {
+        if (value == null || !value.startsWith(VERSION + ".")) {
+            return null;
+        }
+        String[] fields = value.split("\\.", -1);
+        if (fields.length != FIELD_COUNT) {
+            return null;
+        }
+
+        SecretKey key = KEYS.get(fields[4]);
+        if (key == null) {
+            return null;
+        }
+
+        try {
+            String payload = value.substring(0, value.lastIndexOf('.'));
+            byte[] expected = sign(key, payload);
+            if (!MessageDigest.isEqual(expected, DECODER.decode(fields[6]))) {
+                return null;
+            }
+
+            long issuedAt = Long.parseLong(fields[2]);
+            long expiresAt = Long.parseLong(fields[3]);
+            if (expiresAt <= now) {
+                return null;
+            }
+            String username = new String(DECODER.decode(fields[1]), StandardCharsets.UTF_8);
+            return new Claims(username, issuedAt, expiresAt, fields[5]);
+        } catch (IllegalArgumentException e) {
+            // Base64 o numeri non validi
+            return null;
+        }
+    }
+
+    /**
+     * Calcola l'HMAC del payload.
+     */
+    private static byte[] sign(SecretKey key, String payload) {
+        try {
+            Mac mac = CryptoPool.hmacSha256();
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException("Impossibile calcolare la firma del token", e);
+        }
+    }
+
+    /**
+     * Legge le chiavi HMAC dalla configurazione, scartando quelle non valide o troppo corte.
+     */
+    private static Map<String, SecretKey> loadKeys() {
+        Map<String, SecretKey> keys = new HashMap<>();
+        String configured = ConfigManager.getString("token.hmac.keys", "");
+        for (String entry : configured.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf(':');
+            String kid = separator > 0 ? trimmed.substring(0, separator).trim() : "";
+            if (kid.isEmpty() || kid.indexOf('.') >= 0) {
+                logger.warning("Voce di token.hmac.keys senza id valido ignorata");
+                continue;
+            }
+            try {
+                byte[] material = Base64.getDecoder().decode(trimmed.substring(separator + 1).trim());
+                if (material.length < MIN_KEY_BYTES) {
+                    logger.warning("Chiave HMAC " + kid + " ignorata: lunghezza inferiore a " + MIN_KEY_BYTES + " byte");
+                    continue;
+                }
+                keys.put(kid, new SecretKeySpec(material, MAC_ALGORITHM));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Chiave HMAC " + kid + " ignorata: Base64 non valido");
+            }
+        }
+        return Collections.unmodifiableMap(keys);
+    }
+}
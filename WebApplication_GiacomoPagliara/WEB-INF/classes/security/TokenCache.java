@@ -0,0 +1,232 @@
+package security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache in memoria dei token "ricordami" già validati, indicizzata per UUID.
+ * Evita la lettura dal database e le decifrature AES a ogni richiesta
+ * che passa da AuthenticationFilter o da LoginServlet senza sessione attiva.
+ *
+ * La cache ha una dimensione massima (le voci usate meno di recente vengono scartate)
+ * e ogni voce scade dopo il TTL configurato, ma mai oltre la scadenza del token
+ * registrata nel database. Le voci non contengono il token, solo il suo digest
+ * SHA-256, confrontato a tempo costante con quello del token presentato.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class TokenCache {
+
+    // Limiti modificabili a caldo con reconfigure
+    private volatile int maxSize;
+    private volatile long ttlMillis;
+
+    // Voci in ordine di accesso; l'accesso è protetto dal monitor dell'istanza
+    private final LinkedHashMap<String, CachedToken> entries;
+
+    // Incrementato a ogni invalidazione: una validazione iniziata prima non può popolare la cache
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    // Contatori statistici
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Voce della cache.
+     */
+    private static final class CachedToken {
+        private final String username;
+        private final byte[] tokenDigest;
+        private final long expiresAt;
+
+        private CachedToken(String username, byte[] tokenDigest, long expiresAt) {
+            this.username = username;
+            this.tokenDigest = tokenDigest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Crea una cache con i limiti indicati.
+     *
+     * @param maxSize Numero massimo di voci
+     * @param ttlMillis Durata massima di una voce in millisecondi
+     */
+    public TokenCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, CachedToken>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedToken> eldest) {
+                if (size() > TokenCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Restituisce l'epoca di invalidazione corrente, da passare a put
+     * per scartare i risultati di validazioni concorrenti a un'invalidazione.
+     *
+     * @return Epoca corrente
+     */
+    public long currentEpoch() {
+        return invalidationEpoch.get();
+    }
+
+    /**
+     * Cerca un token nella cache.
+     *
+     * @param uuid UUID del token
+     * @param presentedToken Token presentato dal client
+     * @return Nome utente associato se il token è in cache e corrisponde, null altrimenti
+     */
+    public String get(String uuid, String presentedToken) {
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        CachedToken entry;
+        synchronized (this) {
+            entry = entries.get(uuid);
+            if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(uuid);
+                expirations.increment();
+                entry = null;
+            }
+        }
+
+        if (entry != null && MessageDigest.isEqual(entry.tokenDigest, digest(presentedToken))) {
+            hits.increment();
+            return entry.username;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Inserisce un token validato nella cache.
+     *
+     * @param uuid UUID del token
+     * @param presentedToken Token presentato dal client e validato
+     * @param username Nome utente associato
+     * @param dbExpiryMillis Scadenza del token registrata nel database
+     * @param epoch Epoca letta con currentEpoch prima della validazione
+     */
+    public void put(String uuid, String presentedToken, String username, long dbExpiryMillis, long epoch) {
+        if (maxSize <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAt = Math.min(now + ttlMillis, dbExpiryMillis);
+        if (expiresAt <= now) {
+            return;
+        }
+
+        CachedToken entry = new CachedToken(username, digest(presentedToken), expiresAt);
+        synchronized (this) {
+            // Un'invalidazione avvenuta durante la validazione rende il risultato non affidabile
+            if (invalidationEpoch.get() == epoch) {
+                entries.put(uuid, entry);
+            }
+        }
+    }
+
+    /**
+     * Modifica i limiti della cache. Le voci in eccesso vengono scartate partendo
+     * dalle meno usate; se il TTL diminuisce la cache viene svuotata, perché le voci
+     * esistenti potrebbero durare più del nuovo limite.
+     *
+     * @param newMaxSize Nuovo numero massimo di voci (0 disabilita la cache)
+     * @param newTtlMillis Nuova durata massima di una voce in millisecondi
+     */
+    public void reconfigure(int newMaxSize, long newTtlMillis) {
+        synchronized (this) {
+            boolean shorterTtl = newTtlMillis < ttlMillis;
+            maxSize = newMaxSize;
+            ttlMillis = newTtlMillis;
+            if (shorterTtl || newMaxSize <= 0) {
+                invalidationEpoch.incrementAndGet();
+                entries.clear();
+                return;
+            }
+            Iterator<CachedToken> iterator = entries.values().iterator();
+            while (entries.size() > newMaxSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Rimuove un token dalla cache.
+     *
+     * @param uuid UUID del token
+     */
+    public void invalidate(String uuid) {
+        synchronized (this) {
+            invalidationEpoch.incrementAndGet();
+            entries.remove(uuid);
+        }
+    }
+
+    /**
+     * Rimuove dalla cache tutti i token di un utente.
+     *
+     * @param username Nome utente
+     */
+    public void invalidateUsername(String username) {
+        synchronized (this) {
+            invalidationEpoch.incrementAndGet();
+            Iterator<CachedToken> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().username.equals(username)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Svuota la cache.
+     */
+    public void clear() {
+        synchronized (this) {
+            invalidationEpoch.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getExpirations() { return expirations.sum(); }
+
+    @Override
+    public String toString() {
+        return "TokenCache[dimensione=" + size() + ", hit=" + getHits() + ", miss=" + getMisses()
+                + ", evizioni=" + getEvictions() + ", scadenze=" + getExpirations() + "]";
+    }
+
+    /**
+     * Calcola il digest SHA-256 del token.
+     */
+    private static byte[] digest(String token) {
+        return CryptoPool.sha256().digest(token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,38 +1,149 @@
 package security;
 
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
+import utils.ConfigChangeListener;
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
 /**
  * Listener per eseguire pulizia periodica dei token scaduti.
+ * La prima esecuzione è ritardata per non competere con l'avvio dell'applicazione;
+ * le successive avvengono a intervalli brevi e con carico limitato (vedi TokenCleanupTask).
+ * Il task è disponibile come attributo del contesto per la lettura delle statistiche.
+ * Le modifiche delle chiavi token.cleanup.* vengono applicate al ricaricamento della configurazione.
+ *
+ * In modalità stateless un secondo thread rilegge il file delle revoche ogni token.revocation.reloadMs,
+ * così un logout fatto su un altro nodo ha effetto entro quell'intervallo e non alla pulizia successiva.
+ * Ha un thread proprio perché una pulizia lunga non ritardi la propagazione delle revoche.
  */
 @WebListener
-public class TokenCleanupListener implements ServletContextListener {
-    
+public class TokenCleanupListener implements ServletContextListener, ConfigChangeListener {
+
+    private static final Logger logger = Logger.getLogger(TokenCleanupListener.class.getName());
+
+    // Nome dell'attributo del contesto con il task di pulizia
+    public static final String TASK_ATTRIBUTE = "tokenCleanupTask";
+
+    // Valori predefiniti
+    private static final long DEFAULT_INITIAL_DELAY_MS = 2 * 60 * 1000L;
+    private static final long DEFAULT_PERIOD_MS = 15 * 60 * 1000L;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MS = 10_000;
+    private static final long DEFAULT_REVOCATION_RELOAD_MS = 10_000;
+
     private ScheduledExecutorService scheduler;
-    
+    private TokenCleanupTask task;
+    private ScheduledFuture<?> schedule;
+    private long period;
+    private ScheduledExecutorService revocationScheduler;
+    private ScheduledFuture<?> revocationSchedule;
+    private long revocationPeriod;
+
     @Override
     public void contextInitialized(ServletContextEvent sce) {
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        
-        // Pianifica la pulizia dei token scaduti ogni 24 ore
-        scheduler.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                TokenManager.cleanExpiredTokens();
+        long initialDelay = ConfigManager.getLong("token.cleanup.initialDelayMs", DEFAULT_INITIAL_DELAY_MS);
+        period = readPeriod(ConfigManager.getLong("token.cleanup.periodMs", DEFAULT_PERIOD_MS));
+
+        task = new TokenCleanupTask();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-cleanup");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        // Intervallo tra la fine di un'esecuzione e l'inizio della successiva:
+        // un'esecuzione lenta non provoca esecuzioni sovrapposte o ravvicinate
+        schedule = scheduler.scheduleWithFixedDelay(task, initialDelay, period, TimeUnit.MILLISECONDS);
+
+        if (TokenManager.isStateless()) {
+            revocationPeriod = readPeriod(ConfigManager.getLong("token.revocation.reloadMs", DEFAULT_REVOCATION_RELOAD_MS));
+            revocationScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "token-revocation-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            revocationSchedule = scheduleRevocationReload(revocationPeriod);
+        }
+        sce.getServletContext().setAttribute(TASK_ATTRIBUTE, task);
+        ConfigManager.addListener(this);
+    }
+
+    @Override
+    public synchronized void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+        if (revocationScheduler != null && changedKeys.contains("token.revocation.reloadMs")
+                && !revocationScheduler.isShutdown()) {
+            long newPeriod = readPeriod(current.getLong("token.revocation.reloadMs", DEFAULT_REVOCATION_RELOAD_MS));
+            if (newPeriod != revocationPeriod) {
+                revocationSchedule.cancel(false);
+                revocationPeriod = newPeriod;
+                revocationSchedule = scheduleRevocationReload(newPeriod);
+                logger.info("Rilettura delle revoche ripianificata ogni " + newPeriod + " ms");
             }
-        }, 0, 24, TimeUnit.HOURS);
+        }
+        if (task == null || !ConfigSnapshot.anyStartsWith(changedKeys, "token.cleanup.")) {
+            return;
+        }
+        task.reconfigure(current);
+
+        long newPeriod = readPeriod(current.getLong("token.cleanup.periodMs", DEFAULT_PERIOD_MS));
+        if (newPeriod != period && !scheduler.isShutdown()) {
+            // La nuova cadenza parte dalla fine dell'esecuzione eventualmente in corso
+            schedule.cancel(false);
+            period = newPeriod;
+            schedule = scheduler.scheduleWithFixedDelay(task, newPeriod, newPeriod, TimeUnit.MILLISECONDS);
+            logger.info("Pulizia dei token ripianificata ogni " + newPeriod + " ms");
+        }
     }
-    
+
+    private ScheduledFuture<?> scheduleRevocationReload(long reloadPeriod) {
+        return revocationScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                TokenManager.refreshRevocations();
+            } catch (RuntimeException e) {
+                // Un errore non deve annullare le riletture successive
+                logger.warning("Rilettura delle revoche non riuscita: " + e.getMessage());
+            }
+        }, reloadPeriod, reloadPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    private static long readPeriod(long configured) {
+        return Math.max(1000, configured);
+    }
+
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-        if (scheduler != null) {
+        ConfigManager.removeListener(this);
+        sce.getServletContext().removeAttribute(TASK_ATTRIBUTE);
+        if (revocationScheduler != null) {
+            revocationScheduler.shutdownNow();
+        }
+        if (scheduler == null) {
+            return;
+        }
+
+        // Lascia terminare il blocco in corso invece di interrompere la DELETE
+        task.stop();
+        scheduler.shutdown();
+        try {
+            long timeout = ConfigManager.getLong("token.cleanup.shutdownTimeoutMs", DEFAULT_SHUTDOWN_TIMEOUT_MS);
+            if (!scheduler.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                logger.warning("Pulizia dei token non terminata entro " + timeout + " ms, interruzione forzata");
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
             scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
         }
+        logger.info("Pulizia dei token arrestata: " + task);
     }
-}
\ No newline at end of file
+}
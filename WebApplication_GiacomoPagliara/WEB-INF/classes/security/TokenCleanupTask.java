@@ -0,0 +1,155 @@
+package security;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
+
+/**
+ * Pulizia incrementale dei token "ricordami" scaduti.
+ * Ogni esecuzione elimina i token a blocchi di dimensione limitata, con una pausa
+ * tra un blocco e l'altro, così da non tenere a lungo i lock sulla tabella
+ * e non accumulare ritardo di replica. Il numero di blocchi per esecuzione è limitato:
+ * l'eventuale arretrato viene smaltito nelle esecuzioni successive.
+ *
+ * Statistiche: righe eliminate (totali e ultima esecuzione), durata dell'ultima
+ * esecuzione e ritardo, cioè il tempo trascorso dall'ultima esecuzione che ha
+ * eliminato tutti i token scaduti.
+ *
+ * @author Giacomo Pagliara
+ */
+public class TokenCleanupTask implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(TokenCleanupTask.class.getName());
+
+    // Valori predefiniti
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final long DEFAULT_PAUSE_MS = 200;
+    private static final int DEFAULT_MAX_CHUNKS = 200;
+
+    // Parametri modificabili a caldo con reconfigure
+    private volatile int chunkSize;
+    private volatile long pauseMillis;
+    private volatile int maxChunksPerRun;
+
+    // Impostato alla chiusura dell'applicazione per interrompere l'esecuzione al blocco successivo
+    private volatile boolean stopped;
+
+    // Statistiche
+    private final LongAdder totalDeleted = new LongAdder();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long lastRunDeleted;
+    private volatile long lastRunDurationMs;
+    private volatile long lastDrainedAt = System.currentTimeMillis();
+
+    /**
+     * Crea il task leggendo dimensione dei blocchi, pausa e numero massimo di blocchi
+     * da token.cleanup.chunkSize, token.cleanup.pauseMs e token.cleanup.maxChunksPerRun.
+     */
+    public TokenCleanupTask() {
+        this.chunkSize = Math.max(1, ConfigManager.getInt("token.cleanup.chunkSize", DEFAULT_CHUNK_SIZE));
+        this.pauseMillis = Math.max(0, ConfigManager.getLong("token.cleanup.pauseMs", DEFAULT_PAUSE_MS));
+        this.maxChunksPerRun = Math.max(1, ConfigManager.getInt("token.cleanup.maxChunksPerRun", DEFAULT_MAX_CHUNKS));
+    }
+
+    /**
+     * Applica i parametri di una nuova configurazione, a partire dall'esecuzione successiva.
+     *
+     * @param config Nuova istantanea della configurazione
+     */
+    public void reconfigure(ConfigSnapshot config) {
+        chunkSize = Math.max(1, config.getInt("token.cleanup.chunkSize", DEFAULT_CHUNK_SIZE));
+        pauseMillis = Math.max(0, config.getLong("token.cleanup.pauseMs", DEFAULT_PAUSE_MS));
+        maxChunksPerRun = Math.max(1, config.getInt("token.cleanup.maxChunksPerRun", DEFAULT_MAX_CHUNKS));
+    }
+
+    @Override
+    public void run() {
+        // Parametri letti una volta per esecuzione
+        int chunkSize = this.chunkSize;
+        long pauseMillis = this.pauseMillis;
+        int maxChunksPerRun = this.maxChunksPerRun;
+
+        long start = System.currentTimeMillis();
+        long deleted = 0;
+        int chunks = 0;
+        boolean drained = false;
+
+        try {
+            while (!stopped && chunks < maxChunksPerRun) {
+                int rows = TokenManager.deleteExpiredTokensChunk(chunkSize);
+                chunks++;
+                deleted += rows;
+                totalDeleted.add(rows);
+
+                // Un blocco incompleto indica che non restano token scaduti
+                if (rows < chunkSize) {
+                    drained = true;
+                    break;
+                }
+                Thread.sleep(pauseMillis);
+            }
+        } catch (SQLException e) {
+            failures.increment();
+            logger.warning("Pulizia dei token scaduti interrotta: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Un'eccezione non gestita annullerebbe le esecuzioni successive di scheduleWithFixedDelay
+            failures.increment();
+            logger.log(Level.WARNING, "Pulizia dei token scaduti interrotta da un errore imprevisto", e);
+        }
+
+        int pruned = 0;
+        try {
+            pruned = TokenManager.pruneRevocations();
+        } catch (RuntimeException e) {
+            failures.increment();
+            logger.log(Level.WARNING, "Manutenzione delle revoche non riuscita", e);
+        }
+
+        long end = System.currentTimeMillis();
+        if (drained) {
+            lastDrainedAt = end;
+        }
+        lastRunDeleted = deleted;
+        lastRunDurationMs = end - start;
+        runs.increment();
+
+        if (deleted > 0 || pruned > 0 || !drained) {
+            logger.info("Pulizia token: " + deleted + " righe in " + chunks + " blocchi, " + pruned
+                    + " revoche scadute, " + lastRunDurationMs + " ms" + (drained ? "" : ", arretrato residuo"));
+        }
+    }
+
+    /**
+     * Richiede l'interruzione dell'esecuzione in corso al termine del blocco corrente.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getTotalDeleted() { return totalDeleted.sum(); }
+    public long getRuns() { return runs.sum(); }
+    public long getFailures() { return failures.sum(); }
+    public long getLastRunDeleted() { return lastRunDeleted; }
+    public long getLastRunDurationMs() { return lastRunDurationMs; }
+
+    /**
+     * @return Millisecondi trascorsi dall'ultima esecuzione che ha eliminato tutti i token scaduti
+     */
+    public long getLagMs() {
+        return System.currentTimeMillis() - lastDrainedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenCleanupTask[eliminate=" + getTotalDeleted() + ", esecuzioni=" + getRuns()
+                + ", errori=" + getFailures() + ", ultima=" + lastRunDeleted + " righe in " + lastRunDurationMs
+                + " ms, ritardo=" + getLagMs() + " ms]";
+    }
+}
@@ -1,6 +1,8 @@
 package security;
 
-import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -8,44 +10,127 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Base64;
 import java.util.Calendar;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.logging.Logger;
 
 import database.DatabaseConnection;
-import query.DatabaseQueries;
+import query.Query;
+import query.QueryRegistry;
+import utils.ConfigManager;
+import utils.ConfigSnapshot;
 import utils.MessageUtils;
 
 /**
  * Classe per la gestione dei token di autenticazione "ricordami".
  * Implementa funzionalità per generare, verificare e invalidare token.
  * 
+ * Con token.storage=digest (predefinito) il database conserva solo il digest SHA-256
+ * del token contenuto nel cookie, preceduto da "sha256:": la validazione richiede
+ * una ricerca per UUID, un hash e un confronto a tempo costante, senza operazioni AES.
+ * Con token.storage=aes viene mantenuto il vecchio formato cifrato.
+ * Le righe nel vecchio formato restano valide e vengono convertite al primo utilizzo.
+ * Con token.storage=aes le righe cifrate con una chiave AES non più attiva vengono
+ * cifrate di nuovo al primo utilizzo (vedi AesEncryption).
+ * 
+ * Con token.mode=stateless il cookie contiene un token firmato con HMAC (vedi SignedTokens)
+ * e la validazione non accede al database; le revoche dei logout sono conservate
+ * in un TokenRevocationList persistito su file (token.revocation.file). Il file va indicato
+ * esplicitamente e deve trovarsi su una memoria durevole condivisa dai nodi: se le revoche
+ * andassero perse i cookie revocati tornerebbero validi fino alla scadenza.
+ * Un logout ha effetto subito sul nodo che lo riceve; gli altri nodi leggono il file
+ * ogni token.revocation.reloadMs (10 secondi per impostazione predefinita), per cui
+ * nel frattempo il cookie revocato viene ancora accettato da loro.
+ * La modalità predefinita token.mode=database usa la tabella remember_token.
+ * 
  * @author Giacomo Pagliara
  */
 public class TokenManager {
     
+    private static final Logger logger = Logger.getLogger(TokenManager.class.getName());
+    
     // Durata dei token in giorni
     private static final int TOKEN_DURATION_DAYS = 1;
+    private static final long TOKEN_DURATION_MS = TOKEN_DURATION_DAYS * 24L * 60 * 60 * 1000;
     
     // Lunghezza del token in byte
     private static final int TOKEN_BYTE_LENGTH = 32;
     
+    // Prefisso dei token memorizzati come digest
+    private static final String DIGEST_PREFIX = "sha256:";
+    
+    // Modalità di memorizzazione dei nuovi token: "digest" oppure "aes"
+    private static final boolean DIGEST_STORAGE =
+            !"aes".equals(ConfigManager.getString("token.storage", "digest").trim().toLowerCase(Locale.ROOT));
+    
+    // File delle revoche dei token firmati, obbligatorio in modalità stateless
+    private static final String REVOCATION_FILE_PROPERTY = "token.revocation.file";
+    
+    // Modalità stateless: token firmati e revoche in memoria, senza accessi al database in validazione
+    private static final boolean STATELESS = isStatelessConfigured();
+    private static final TokenRevocationList REVOCATIONS = STATELESS
+            ? new TokenRevocationList(Paths.get(ConfigManager.getString(REVOCATION_FILE_PROPERTY, "").trim()))
+            : null;
+    
+    // Colonna con la scadenza del token restituita da db.query_checkRememberToken,
+    // necessaria per limitare la durata delle voci in cache
+    private static final String EXPIRY_COLUMN = "expiry_date";
+    
+    // Cache dei token validati (token.cache.maxSize = 0 la disabilita)
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+    private static final long DEFAULT_CACHE_TTL_MS = 5 * 60 * 1000L;
+    private static final TokenCache CACHE = new TokenCache(
+            ConfigManager.getInt("token.cache.maxSize", DEFAULT_CACHE_SIZE),
+            ConfigManager.getLong("token.cache.ttlMs", DEFAULT_CACHE_TTL_MS));
+    
+    static {
+        // I limiti della cache seguono i ricaricamenti della configurazione
+        ConfigManager.addListener((previous, current, changedKeys) -> {
+            if (ConfigSnapshot.anyStartsWith(changedKeys, "token.cache.")) {
+                CACHE.reconfigure(current.getInt("token.cache.maxSize", DEFAULT_CACHE_SIZE),
+                        current.getLong("token.cache.ttlMs", DEFAULT_CACHE_TTL_MS));
+            }
+        });
+    }
+    
     /**
-     * Classe per restituire sia il token in chiaro che l'UUID
+     * Classe per restituire il token in chiaro, l'UUID e il token da inserire nel cookie
      */
     public static class TokenResult {
         private String plainToken;
         private String uuid;
+        private String cookieToken;
+        private String cookieValue;
         
         public TokenResult(String plainToken, String uuid) {
+            this(plainToken, uuid, plainToken);
+        }
+        
+        public TokenResult(String plainToken, String uuid, String cookieToken) {
+            this(plainToken, uuid, cookieToken, uuid + ":" + cookieToken);
+        }
+        
+        private TokenResult(String plainToken, String uuid, String cookieToken, String cookieValue) {
             this.plainToken = plainToken;
             this.uuid = uuid;
+            this.cookieToken = cookieToken;
+            this.cookieValue = cookieValue;
         }
         
         public String getPlainToken() { return plainToken; }
         public String getUuid() { return uuid; }
+        public String getCookieToken() { return cookieToken; }
+        
+        /**
+         * @return Valore del cookie "ricordami": uuid:token, oppure il token firmato in modalità stateless
+         */
+        public String getCookieValue() { return cookieValue; }
     }
     
     /**
      * Genera un nuovo token univoco per l'utente e lo memorizza nel database.
+     * In modalità stateless il token viene solo firmato: ogni dispositivo riceve
+     * un token indipendente, revocabile singolarmente al logout.
      * 
      * @param username Nome utente
      * @return TokenResult contenente token generato e UUID o null in caso di errore
@@ -55,22 +140,36 @@ public class TokenManager {
             return null;
         }
         
+        if (STATELESS) {
+            String tokenId = SignedTokens.newTokenId();
+            long now = System.currentTimeMillis();
+            String signed = SignedTokens.issue(username, tokenId, now, now + TOKEN_DURATION_MS);
+            return new TokenResult(signed, tokenId, signed, signed);
+        }
+        
         // Genera UUID per identificare il token
         String uuid = UUID.randomUUID().toString();
         
         // Genera un token casuale sicuro
-        byte[] randomBytes = new byte[TOKEN_BYTE_LENGTH];
-        new SecureRandom().nextBytes(randomBytes);
+        byte[] randomBytes = CryptoPool.randomBytes(TOKEN_BYTE_LENGTH);
         String plainToken = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
         
-        // Cripta il token con AES
-        String encryptedToken;
-        try {
-            encryptedToken = AesEncryption.encryptToBase64(plainToken);
-        } catch (Exception e) {
-            MessageUtils.showErrorMessage("Errore durante la crittografia del token");
-            e.printStackTrace();
-            return null;
+        // In modalità digest il cookie contiene il token in chiaro e il database solo il suo digest;
+        // altrimenti sia il cookie che il database contengono il token cifrato con AES
+        String cookieToken;
+        String storedToken;
+        if (DIGEST_STORAGE) {
+            cookieToken = plainToken;
+            storedToken = digestToken(plainToken);
+        } else {
+            try {
+                cookieToken = AesEncryption.encryptToBase64(plainToken);
+            } catch (Exception e) {
+                MessageUtils.showErrorMessage("Errore durante la crittografia del token");
+                e.printStackTrace();
+                return null;
+            }
+            storedToken = cookieToken;
         }
         
         // Calcola la data di scadenza (1 giorno da ora)
@@ -78,22 +177,21 @@ public class TokenManager {
         calendar.add(Calendar.DAY_OF_MONTH, TOKEN_DURATION_DAYS);
         Timestamp expiryDate = new Timestamp(calendar.getTimeInMillis());
         
-        // Salva il token criptato nel database
+        // Salva il token nel database
         Connection connection = null;
         try {
-            // Prima elimina eventuali token esistenti per l'utente
+            // Prima elimina eventuali token esistenti per l'utente (invalidando anche la cache)
             deleteTokensByUsername(username);
             
-            connection = DatabaseConnection.getConnectionWrite();
+            connection = DatabaseConnection.getConnection(Query.INSERT_REMEMBER_TOKEN);
             // Query modificata per includere l'UUID
-            String query = DatabaseQueries.getInsertRememberTokenQuery();
-            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            try (PreparedStatement stmt = QueryRegistry.prepare(connection, Query.INSERT_REMEMBER_TOKEN)) {
                 stmt.setString(1, username);
-                stmt.setString(2, encryptedToken);
+                stmt.setString(2, storedToken);
                 stmt.setString(3, uuid);
                 stmt.setTimestamp(4, expiryDate);
                 stmt.executeUpdate();
-                return new TokenResult(plainToken, uuid);
+                return new TokenResult(plainToken, uuid, cookieToken);
             }
         } catch (SQLException e) {
             MessageUtils.showErrorMessage("Errore durante la generazione del token");
@@ -104,10 +202,66 @@ public class TokenManager {
         }
     }
     
+    /**
+     * Verifica il valore di un cookie "ricordami" e restituisce il nome utente associato.
+     * Accetta sia i token firmati (in modalità stateless) sia quelli nel formato uuid:token.
+     * 
+     * @param cookieValue Valore del cookie
+     * @return Nome utente associato al token o null se non valido
+     */
+    public static String validateCookieValue(String cookieValue) {
+        if (cookieValue == null || cookieValue.isEmpty()) {
+            return null;
+        }
+        
+        if (STATELESS) {
+            SignedTokens.Claims claims = SignedTokens.verify(cookieValue, System.currentTimeMillis());
+            if (claims != null) {
+                return REVOCATIONS.isRevoked(claims) ? null : claims.getUsername();
+            }
+        }
+        
+        // Formato uuid:token, ancora accettato per i cookie emessi prima del passaggio a stateless
+        String[] parts = cookieValue.split(":", 2);
+        if (parts.length != 2) {
+            return null;
+        }
+        return validateToken(parts[1], parts[0]);
+    }
+    
+    /**
+     * Revoca il token contenuto in un cookie "ricordami".
+     * I token firmati vengono aggiunti all'insieme delle revoche fino alla loro scadenza,
+     * quelli nel formato uuid:token vengono eliminati dal database.
+     * 
+     * @param cookieValue Valore del cookie
+     * @return true se il token è stato revocato, false se il valore non è valido o si è verificato un errore
+     */
+    public static boolean revokeCookieValue(String cookieValue) {
+        if (cookieValue == null || cookieValue.isEmpty()) {
+            return false;
+        }
+        
+        if (STATELESS) {
+            SignedTokens.Claims claims = SignedTokens.verify(cookieValue, System.currentTimeMillis());
+            if (claims != null) {
+                REVOCATIONS.revokeToken(claims.getTokenId(), claims.getExpiresAt());
+                return true;
+            }
+        }
+        
+        String[] parts = cookieValue.split(":", 2);
+        return parts.length == 2 && deleteTokenByUuid(parts[0]);
+    }
+    
     /**
      * Verifica se un token è valido e restituisce il nome utente associato.
+     * I token già validati vengono serviti dalla cache fino alla scadenza
+     * della voce, che non supera mai quella registrata nel database.
+     * Le righe nel vecchio formato vengono aggiornate dopo aver restituito la connessione
+     * di lettura, così la richiesta non tiene mai due connessioni del pool contemporaneamente.
      * 
-     * @param encryptedToken Token cifrato da verificare
+     * @param encryptedToken Token contenuto nel cookie (in chiaro o cifrato, secondo il formato)
      * @param uuid UUID associato al token
      * @return Nome utente associato al token o null se non valido
      */
@@ -116,30 +270,41 @@ public class TokenManager {
             return null;
         }
         
+        String cachedUsername = CACHE.get(uuid, encryptedToken);
+        if (cachedUsername != null) {
+            return cachedUsername;
+        }
+        long epoch = CACHE.currentEpoch();
+        
+        String validUsername = null;
+        String storedToken = null;
+        String replacement = null;
         Connection connection = null;
         try {
-            connection = DatabaseConnection.getConnectionRead();
+            connection = DatabaseConnection.getConnection(Query.CHECK_REMEMBER_TOKEN);
             
             // Query modificata per cercare per UUID
-            String query = DatabaseQueries.getCheckRememberTokenQuery();
-            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            try (PreparedStatement stmt = QueryRegistry.prepare(connection, Query.CHECK_REMEMBER_TOKEN)) {
                 stmt.setString(1, uuid);
                 try (ResultSet resultSet = stmt.executeQuery()) {
                     if (resultSet.next()) {
                         String username = resultSet.getString("username");
-                        String storedEncryptedToken = resultSet.getString("token");
+                        storedToken = resultSet.getString("token");
+                        
+                        boolean valid;
+                        if (storedToken != null && storedToken.startsWith(DIGEST_PREFIX)) {
+                            valid = matchesDigest(encryptedToken, storedToken);
+                        } else if (matchesEncrypted(encryptedToken, storedToken)) {
+                            valid = true;
+                            // Riga nel vecchio formato: la si converte in digest o la si cifra con la chiave attiva
+                            replacement = DIGEST_STORAGE ? digestToken(encryptedToken) : reencryptedToken(uuid, storedToken);
+                        } else {
+                            valid = false;
+                        }
                         
-                        try {
-                            // Decripta entrambi i token
-                            String plainStoredToken = AesEncryption.decryptFromBase64(storedEncryptedToken);
-                            String plainCookieToken = AesEncryption.decryptFromBase64(encryptedToken);
-                            
-                            // Confronta i token in chiaro
-                            if (plainStoredToken.equals(plainCookieToken)) {
-                                return username;
-                            }
-                        } catch (Exception e) {
-                            System.out.println("Errore nella decriptazione dei token: " + e.getMessage());
+                        if (valid) {
+                            cacheValidToken(resultSet, uuid, encryptedToken, username, epoch);
+                            validUsername = username;
                         }
                     }
                 }
@@ -151,9 +316,142 @@ public class TokenManager {
             closeConnection(connection);
         }
         
+        if (replacement != null) {
+            replaceStoredToken(uuid, storedToken, replacement);
+        }
+        return validUsername;
+    }
+    
+    /**
+     * Confronta a tempo costante il digest del token presentato con quello memorizzato.
+     * 
+     * @param presentedToken Token contenuto nel cookie
+     * @param storedToken Digest memorizzato, con prefisso
+     * @return true se i digest coincidono
+     */
+    private static boolean matchesDigest(String presentedToken, String storedToken) {
+        byte[] expected = storedToken.getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = digestToken(presentedToken).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual);
+    }
+    
+    /**
+     * Verifica un token nel vecchio formato, decifrando il token memorizzato e quello del cookie.
+     * 
+     * @param presentedToken Token cifrato contenuto nel cookie
+     * @param storedToken Token cifrato memorizzato
+     * @return true se i token in chiaro coincidono
+     */
+    private static boolean matchesEncrypted(String presentedToken, String storedToken) {
+        if (storedToken == null) {
+            return false;
+        }
+        try {
+            // Decripta entrambi i token
+            String plainStoredToken = AesEncryption.decryptFromBase64(storedToken);
+            String plainCookieToken = AesEncryption.decryptFromBase64(presentedToken);
+            
+            // Confronta i token in chiaro
+            return MessageDigest.isEqual(plainStoredToken.getBytes(StandardCharsets.UTF_8),
+                    plainCookieToken.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            System.out.println("Errore nella decriptazione dei token: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Cifra di nuovo con la chiave AES attiva un token memorizzato con una chiave precedente,
+     * così che dopo una rotazione le righe vengano aggiornate al primo utilizzo
+     * e la vecchia chiave possa essere ritirata. Il cookie già emesso resta valido,
+     * perché il confronto avviene sui token in chiaro.
+     * 
+     * @param uuid UUID del token
+     * @param storedToken Token cifrato memorizzato
+     * @return Token cifrato con la chiave attiva, o null se non va aggiornato o la cifratura non riesce
+     */
+    private static String reencryptedToken(String uuid, String storedToken) {
+        try {
+            if (AesEncryption.needsReencryption(storedToken)) {
+                String plainToken = AesEncryption.decryptFromBase64(storedToken);
+                return AesEncryption.encryptToBase64(plainToken);
+            }
+        } catch (Exception e) {
+            System.err.println("Nuova cifratura del token " + uuid + " non riuscita: " + e.getMessage());
+        }
         return null;
     }
     
+    /**
+     * Sostituisce il valore memorizzato di un token mantenendo valido il cookie già emesso:
+     * usato per convertire in digest i token nel vecchio formato e per cifrare di nuovo
+     * quelli cifrati con una chiave non più attiva. L'aggiornamento è condizionato al valore
+     * letto, per non sovrascrivere un token rigenerato nel frattempo.
+     * Gli errori vengono solo registrati: la riga resta com'è e continua a funzionare.
+     * 
+     * @param uuid UUID del token
+     * @param storedToken Valore memorizzato letto dal database
+     * @param replacement Nuovo valore da memorizzare
+     */
+    private static void replaceStoredToken(String uuid, String storedToken, String replacement) {
+        Connection connection = null;
+        try {
+            connection = DatabaseConnection.getConnection(Query.UPDATE_REMEMBER_TOKEN);
+            try (PreparedStatement stmt = QueryRegistry.prepare(connection, Query.UPDATE_REMEMBER_TOKEN)) {
+                stmt.setString(1, replacement);
+                stmt.setString(2, uuid);
+                stmt.setString(3, storedToken);
+                stmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            System.err.println("Aggiornamento del token " + uuid + " non riuscito: " + e.getMessage());
+        } finally {
+            closeConnection(connection);
+        }
+    }
+    
+    /**
+     * Calcola la forma memorizzata di un token: "sha256:" seguito dal digest in Base64 URL-safe.
+     * 
+     * @param token Token contenuto nel cookie
+     * @return Digest con prefisso
+     */
+    private static String digestToken(String token) {
+        byte[] digest = CryptoPool.sha256().digest(token.getBytes(StandardCharsets.UTF_8));
+        return DIGEST_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+    
+    /**
+     * Inserisce in cache un token appena validato, usando la scadenza letta dal database.
+     * Se la query non restituisce la colonna della scadenza il token non viene messo in cache.
+     * 
+     * @param resultSet Riga del token validato
+     * @param uuid UUID del token
+     * @param encryptedToken Token presentato dal client
+     * @param username Nome utente associato
+     * @param epoch Epoca di invalidazione letta prima della validazione
+     */
+    private static void cacheValidToken(ResultSet resultSet, String uuid, String encryptedToken,
+            String username, long epoch) {
+        try {
+            Timestamp expiry = resultSet.getTimestamp(EXPIRY_COLUMN);
+            if (expiry != null) {
+                CACHE.put(uuid, encryptedToken, username, expiry.getTime(), epoch);
+            }
+        } catch (SQLException e) {
+            // Colonna della scadenza non disponibile: il token non viene messo in cache
+        }
+    }
+    
+    /**
+     * Restituisce la cache dei token validati, per la lettura delle statistiche.
+     * 
+     * @return Cache dei token
+     */
+    public static TokenCache getTokenCache() {
+        return CACHE;
+    }
+    
     /**
      * Elimina tutti i token associati a un utente.
      * 
@@ -165,11 +463,18 @@ public class TokenManager {
             return false;
         }
         
+        CACHE.invalidateUsername(username);
+        
+        if (STATELESS) {
+            // Revoca tutti i token firmati emessi finora: nessuno può restare valido oltre la loro durata
+            long now = System.currentTimeMillis();
+            REVOCATIONS.revokeUser(username, now, now + TOKEN_DURATION_MS);
+        }
+        
         Connection connection = null;
         try {
-            connection = DatabaseConnection.getConnectionWrite();
-            String query = DatabaseQueries.getDeleteRememberTokenQuery();
-            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            connection = DatabaseConnection.getConnection(Query.DELETE_REMEMBER_TOKEN);
+            try (PreparedStatement stmt = QueryRegistry.prepare(connection, Query.DELETE_REMEMBER_TOKEN)) {
                 stmt.setString(1, username);
                 stmt.executeUpdate();
                 return true;
@@ -194,10 +499,17 @@ public class TokenManager {
             return false;
         }
         
+        CACHE.invalidate(uuid);
+        
+        if (STATELESS) {
+            // In modalità stateless l'UUID è l'id del token firmato
+            REVOCATIONS.revokeToken(uuid, System.currentTimeMillis() + TOKEN_DURATION_MS);
+        }
+        
         Connection connection = null;
         try {
-            connection = DatabaseConnection.getConnectionWrite();
-            try (PreparedStatement stmt = connection.prepareStatement(DatabaseQueries.getDeleteTokenByUuidQuery())) {
+            connection = DatabaseConnection.getConnection(Query.DELETE_TOKEN_BY_UUID);
+            try (PreparedStatement stmt = QueryRegistry.prepare(connection, Query.DELETE_TOKEN_BY_UUID)) {
                 stmt.setString(1, uuid);
                 stmt.executeUpdate();
                 return true;
@@ -212,15 +524,16 @@ public class TokenManager {
     }
     
     /**
-     * Elimina tutti i token scaduti dal database.
+     * Elimina tutti i token scaduti dal database con un'unica DELETE.
+     * Per la pulizia periodica si usa deleteExpiredTokensChunk, che limita le righe per istruzione.
      * 
      * @return true se l'operazione ha successo, false altrimenti
      */
     public static boolean cleanExpiredTokens() {
         Connection connection = null;
         try {
-            connection = DatabaseConnection.getConnectionWrite();
-            try (PreparedStatement stmt = connection.prepareStatement(DatabaseQueries.getDeleteExpiredTokensQuery())) {
+            connection = DatabaseConnection.getConnection(Query.DELETE_EXPIRED_TOKENS);
+            try (PreparedStatement stmt = QueryRegistry.prepare(connection, Query.DELETE_EXPIRED_TOKENS)) {
                 stmt.executeUpdate();
                 return true;
             }
@@ -232,6 +545,70 @@ public class TokenManager {
         }
     }
     
+    /**
+     * Elimina al massimo limit token scaduti dal database.
+     * 
+     * @param limit Numero massimo di righe da eliminare
+     * @return Numero di righe eliminate
+     * @throws SQLException Se si verifica un errore SQL
+     */
+    public static int deleteExpiredTokensChunk(int limit) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection(Query.DELETE_EXPIRED_TOKENS_CHUNK);
+             PreparedStatement stmt = QueryRegistry.prepare(connection, Query.DELETE_EXPIRED_TOKENS_CHUNK)) {
+            stmt.setInt(1, limit);
+            return stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Elimina dall'insieme delle revoche le voci relative a token ormai scaduti.
+     * 
+     * @return Numero di voci eliminate
+     */
+    public static int pruneRevocations() {
+        return STATELESS ? REVOCATIONS.prune(System.currentTimeMillis()) : 0;
+    }
+    
+    /**
+     * Integra le revoche scritte da altri nodi nel file delle revoche.
+     * Fino a questa chiamata un token revocato altrove resta valido su questo nodo.
+     * 
+     * @return true se sono state lette nuove revoche
+     */
+    public static boolean refreshRevocations() {
+        return STATELESS && REVOCATIONS.refresh();
+    }
+    
+    /**
+     * @return true se i token "ricordami" sono firmati e validati senza database
+     */
+    public static boolean isStateless() {
+        return STATELESS;
+    }
+    
+    /**
+     * Legge token.mode e verifica che la modalità stateless abbia una chiave attiva
+     * e un file delle revoche configurato. In mancanza di uno dei due si torna alla modalità con database.
+     * 
+     * @return true se la modalità stateless è richiesta e utilizzabile
+     */
+    private static boolean isStatelessConfigured() {
+        String mode = ConfigManager.getString("token.mode", "database").toLowerCase(Locale.ROOT);
+        if (!"stateless".equals(mode)) {
+            return false;
+        }
+        if (!SignedTokens.isConfigured()) {
+            logger.severe("token.mode=stateless richiede token.hmac.keys e token.hmac.activeKid: uso la modalità database");
+            return false;
+        }
+        if (ConfigManager.getString(REVOCATION_FILE_PROPERTY, "").trim().isEmpty()) {
+            logger.severe("token.mode=stateless richiede " + REVOCATION_FILE_PROPERTY
+                    + " su una memoria durevole: uso la modalità database");
+            return false;
+        }
+        return true;
+    }
+    
     /**
      * Chiude in modo sicuro una connessione al database.
      * 
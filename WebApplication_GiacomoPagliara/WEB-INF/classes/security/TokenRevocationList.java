@@ -0,0 +1,300 @@
+package security;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Insieme delle revoche dei token "ricordami" firmati.
+ * Contiene gli id dei token revocati e, per utente, l'istante prima del quale
+ * tutti i token emessi sono revocati (logout da tutti i dispositivi).
+ * Ogni voce viene scartata quando i token a cui si riferisce sono comunque scaduti,
+ * per cui la dimensione resta limitata ai logout delle ultime ore.
+ *
+ * Le revoche vengono aggiunte in coda a un file e ricaricate all'avvio.
+ * La manutenzione periodica (prune) elimina le voci scadute, ricarica il file
+ * se è stato modificato da un altro nodo e lo riscrive quando contiene troppe righe superate.
+ * Una revoca fatta su un altro nodo diventa visibile qui solo al ricaricamento successivo:
+ * refresh, più leggero di prune, va quindi eseguito con un intervallo breve
+ * (token.revocation.reloadMs, vedi TokenCleanupListener), che è il ritardo massimo di propagazione.
+ * Aggiunte e riscritture avvengono con un lock esclusivo sul file &lt;file&gt;.lock, condiviso
+ * dai nodi: la riscrittura rilegge il file sotto il lock, per cui non perde le revoche
+ * aggiunte nel frattempo dagli altri nodi.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class TokenRevocationList {
+
+    private static final Logger logger = Logger.getLogger(TokenRevocationList.class.getName());
+
+    // Tipi di riga nel file
+    private static final String TOKEN_RECORD = "J";
+    private static final String USER_RECORD = "U";
+
+    // Righe minime prima di considerare la riscrittura del file
+    private static final int COMPACTION_THRESHOLD = 64;
+
+    private final Path file;
+    private final Path lockFile;
+
+    // Id token -> scadenza del token
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    // Utente -> revoca dei token emessi fino a un certo istante
+    private final Map<String, UserRevocation> revokedUsers = new ConcurrentHashMap<>();
+
+    // Stato del file, protetto dal monitor dell'istanza
+    private long appendedLines;
+    private long knownFileSize = -1;
+
+    /**
+     * Revoca di tutti i token di un utente emessi fino a notBefore.
+     */
+    private static final class UserRevocation {
+        private final long notBefore;
+        private final long expiresAt;
+
+        private UserRevocation(long notBefore, long expiresAt) {
+            this.notBefore = notBefore;
+            this.expiresAt = expiresAt;
+        }
+
+        private UserRevocation merge(UserRevocation other) {
+            return new UserRevocation(Math.max(notBefore, other.notBefore), Math.max(expiresAt, other.expiresAt));
+        }
+    }
+
+    /**
+     * Crea l'insieme delle revoche caricando quelle ancora valide dal file indicato.
+     *
+     * @param file File in cui persistere le revoche
+     */
+    public TokenRevocationList(Path file) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        synchronized (this) {
+            reload(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Verifica se un token è stato revocato.
+     *
+     * @param claims Contenuto del token verificato
+     * @return true se il token o tutti i token dell'utente sono stati revocati
+     */
+    public boolean isRevoked(SignedTokens.Claims claims) {
+        if (revokedTokens.containsKey(claims.getTokenId())) {
+            return true;
+        }
+        UserRevocation revocation = revokedUsers.get(claims.getUsername());
+        return revocation != null && claims.getIssuedAt() <= revocation.notBefore;
+    }
+
+    /**
+     * Revoca un singolo token.
+     *
+     * @param tokenId Id del token
+     * @param expiresAt Scadenza del token, dopo la quale la voce può essere scartata
+     */
+    public void revokeToken(String tokenId, long expiresAt) {
+        revokedTokens.merge(tokenId, expiresAt, Math::max);
+        append(TOKEN_RECORD + "\t" + tokenId + "\t" + expiresAt);
+    }
+
+    /**
+     * Revoca tutti i token di un utente emessi fino all'istante indicato.
+     *
+     * @param username Nome utente
+     * @param notBefore Istante fino al quale i token sono revocati
+     * @param expiresAt Istante dopo il quale nessun token revocato può essere ancora valido
+     */
+    public void revokeUser(String username, long notBefore, long expiresAt) {
+        revokedUsers.merge(username, new UserRevocation(notBefore, expiresAt), UserRevocation::merge);
+        append(USER_RECORD + "\t" + encode(username) + "\t" + notBefore + "\t" + expiresAt);
+    }
+
+    /**
+     * Elimina le voci scadute, integra le revoche scritte da altri nodi
+     * e riscrive il file se contiene troppe righe superate.
+     *
+     * @param now Istante corrente in millisecondi
+     * @return Numero di voci eliminate
+     */
+    public synchronized int prune(long now) {
+        int before = size();
+        if (fileSize() != knownFileSize) {
+            reload(now);
+        }
+        revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+        revokedUsers.values().removeIf(revocation -> revocation.expiresAt <= now);
+
+        int removed = Math.max(0, before - size());
+        if (appendedLines > COMPACTION_THRESHOLD && appendedLines > 2L * size()) {
+            compact(now);
+        }
+        return removed;
+    }
+
+    /**
+     * Ricarica il file se è stato modificato da un altro nodo, senza eliminare voci
+     * né riscrivere il file. Se il file non è cambiato costa solo la lettura della dimensione.
+     *
+     * @return true se il file è stato ricaricato
+     */
+    public synchronized boolean refresh() {
+        if (fileSize() == knownFileSize) {
+            return false;
+        }
+        reload(System.currentTimeMillis());
+        return true;
+    }
+
+    public int size() { return revokedTokens.size() + revokedUsers.size(); }
+    public Path getFile() { return file; }
+
+    /**
+     * Legge il file e unisce le voci non scadute a quelle in memoria.
+     */
+    private void reload(long now) {
+        if (!Files.exists(file)) {
+            knownFileSize = -1;
+            return;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warning("Impossibile leggere le revoche da " + file + ": " + e.getMessage());
+            return;
+        }
+
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            try {
+                if (TOKEN_RECORD.equals(fields[0]) && fields.length == 3) {
+                    long expiresAt = Long.parseLong(fields[2]);
+                    if (expiresAt > now) {
+                        revokedTokens.merge(fields[1], expiresAt, Math::max);
+                    }
+                } else if (USER_RECORD.equals(fields[0]) && fields.length == 4) {
+                    UserRevocation revocation = new UserRevocation(Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                    if (revocation.expiresAt > now) {
+                        revokedUsers.merge(decode(fields[1]), revocation, UserRevocation::merge);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // Riga troncata o non valida (ad esempio per un arresto durante la scrittura)
+            }
+        }
+        appendedLines = lines.size();
+        knownFileSize = fileSize();
+    }
+
+    /**
+     * Aggiunge una riga in coda al file. In caso di errore la revoca resta valida in memoria.
+     */
+    private synchronized void append(String line) {
+        try {
+            underLock(() -> {
+                try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            });
+        } catch (IOException e) {
+            logger.warning("Impossibile salvare la revoca in " + file + ": " + e.getMessage());
+            return;
+        }
+        appendedLines++;
+        knownFileSize = fileSize();
+    }
+
+    /**
+     * Riscrive il file con le voci non scadute, sostituendolo in modo atomico.
+     * Sotto il lock il file viene prima riletto e unito alle voci in memoria,
+     * così le revoche scritte dagli altri nodi dopo l'ultima lettura vengono conservate.
+     */
+    private void compact(long now) {
+        try {
+            underLock(() -> {
+                reload(now);
+                revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+                revokedUsers.values().removeIf(revocation -> revocation.expiresAt <= now);
+                rewrite();
+            });
+        } catch (IOException e) {
+            logger.warning("Impossibile compattare il file delle revoche " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Scrive le voci in memoria in un file temporaneo e lo sostituisce al file delle revoche.
+     * Va invocato con il lock acquisito.
+     */
+    private void rewrite() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long lines = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : revokedTokens.entrySet()) {
+                writer.write(TOKEN_RECORD + "\t" + entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+                lines++;
+            }
+            for (Map.Entry<String, UserRevocation> entry : revokedUsers.entrySet()) {
+                UserRevocation revocation = entry.getValue();
+                writer.write(USER_RECORD + "\t" + encode(entry.getKey()) + "\t" + revocation.notBefore
+                        + "\t" + revocation.expiresAt);
+                writer.newLine();
+                lines++;
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        appendedLines = lines;
+        knownFileSize = fileSize();
+    }
+
+    /**
+     * Operazione sul file delle revoche da eseguire con il lock acquisito.
+     */
+    private interface LockedAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Esegue un'operazione con il lock esclusivo condiviso tra i nodi, rilasciato alla chiusura del canale.
+     */
+    private void underLock(LockedAction action) throws IOException {
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.lock();
+            action.run();
+        }
+    }
+
+    private long fileSize() {
+        try {
+            return Files.exists(file) ? Files.size(file) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static String encode(String username) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String encoded) {
+        return new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+    }
+}
@@ -110,16 +110,10 @@ public class LogoutServlet extends HttpServlet {
         
         if (cookies != null) {
             for (Cookie cookie : cookies) {
-                // Per il cookie rememberToken, eliminalo anche dal database
+                // Per il cookie rememberToken, revoca anche il token (database o insieme delle revoche)
                 if ("rememberToken".equals(cookie.getName())) {
-                    String cookieValue = cookie.getValue();
-                    if (cookieValue != null && !cookieValue.isEmpty()) {
-                        String[] parts = cookieValue.split(":", 2);
-                        if (parts.length == 2) {
-                            String uuid = parts[0];
-                            TokenManager.deleteTokenByUuid(uuid);
-                            System.out.println("Token eliminato con UUID: " + uuid);
-                        }
+                    if (TokenManager.revokeCookieValue(cookie.getValue())) {
+                        System.out.println("Token del cookie rememberToken revocato");
                     }
                     
                     // Crea un nuovo cookie con gli stessi attributi
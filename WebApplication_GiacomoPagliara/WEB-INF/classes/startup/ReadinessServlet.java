@@ -0,0 +1,53 @@
+package startup;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Servlet di verifica della prontezza dell'applicazione, per bilanciatori e orchestratori.
+ * Risponde 200 al termine del riscaldamento (vedi WarmUpListener) e 503 finché è in corso
+ * o se un passo critico non è riuscito,
+ * riportando la durata e l'esito di ogni passo. I dettagli degli errori restano nel log.
+ * 
+ * @author Giacomo Pagliara
+ */
+@WebServlet("/ready")
+public class ReadinessServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final Gson GSON = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        boolean ready = WarmUpListener.isReady();
+
+        JsonArray steps = new JsonArray();
+        for (WarmUpListener.Step step : WarmUpListener.getSteps()) {
+            JsonObject json = new JsonObject();
+            json.addProperty("name", step.getName());
+            json.addProperty("ms", step.getDurationMillis());
+            json.addProperty("ok", step.isSuccessful());
+            json.addProperty("critical", step.isCritical());
+            steps.add(json);
+        }
+        JsonObject body = new JsonObject();
+        body.addProperty("ready", ready);
+        body.add("steps", steps);
+
+        response.setStatus(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        GSON.toJson(body, response.getWriter());
+    }
+}
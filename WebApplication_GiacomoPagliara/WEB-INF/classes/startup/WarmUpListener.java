@@ -0,0 +1,212 @@
+package startup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import com.google.gson.Gson;
+
+import database.DatabaseConnection;
+import project.HtmlSanitizer;
+import query.QueryRegistry;
+import security.AesEncryption;
+import security.PasswordManager;
+import security.TokenManager;
+import utils.ConfigManager;
+import utils.ContentTypeDetector;
+
+/**
+ * Listener che esegue all'avvio le inizializzazioni altrimenti pagate dalla prima richiesta:
+ * lettura della configurazione e del registro delle query, apertura dei pool di connessioni,
+ * ricerca dei provider crittografici, chiave AES, rilevatore di Tika, primo parsing di Jsoup,
+ * primo hash di una password e caricamento delle classi dei token.
+ *
+ * Ogni passo viene cronometrato; un passo non riuscito viene registrato ma non interrompe gli altri.
+ * L'applicazione risulta pronta (vedi ReadinessServlet) solo al termine di tutti i passi e solo se
+ * sono riusciti quelli critici (configurazione, query, database, crittografia, AES e hashing delle
+ * password): un nodo senza database o senza chiave AES resta fuori dal bilanciamento.
+ * Con warmup.async=true i passi vengono eseguiti su un thread separato e l'avvio
+ * del contenitore non li attende.
+ * Il servizio di rilevamento del tipo di contenuto, con le relative metriche, viene pubblicato
+ * come attributo del contesto.
+ *
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class WarmUpListener implements ServletContextListener {
+
+    private static final Logger logger = Logger.getLogger(WarmUpListener.class.getName());
+
+    // Nome dell'attributo del contesto con il servizio di rilevamento del tipo di contenuto
+    public static final String DETECTOR_ATTRIBUTE = "contentTypeDetector";
+
+    // Stato del riscaldamento, letto da ReadinessServlet
+    private static volatile boolean ready;
+    private static volatile List<Step> steps = Collections.emptyList();
+
+    private Thread worker;
+
+    /**
+     * Operazione di riscaldamento.
+     */
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * Esito di un passo di riscaldamento.
+     */
+    public static final class Step {
+        private final String name;
+        private final long durationNanos;
+        private final String error;
+        private final boolean critical;
+
+        Step(String name, long durationNanos, String error, boolean critical) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.error = error;
+            this.critical = critical;
+        }
+
+        public String getName() { return name; }
+        public long getDurationMillis() { return TimeUnit.NANOSECONDS.toMillis(durationNanos); }
+        public boolean isSuccessful() { return error == null; }
+        public String getError() { return error; }
+        public boolean isCritical() { return critical; }
+    }
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ready = false;
+        sce.getServletContext().setAttribute(DETECTOR_ATTRIBUTE, ContentTypeDetector.get());
+        if (ConfigManager.getBoolean("warmup.async", false)) {
+            worker = new Thread(WarmUpListener::warmUp, "warm-up");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            warmUp();
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ready = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+        sce.getServletContext().removeAttribute(DETECTOR_ATTRIBUTE);
+        logger.info(ContentTypeDetector.get().toString());
+    }
+
+    /**
+     * @return true se il riscaldamento è terminato e i passi critici sono riusciti
+     */
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return Esiti dei passi eseguiti, nell'ordine di esecuzione
+     */
+    public static List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Esegue in sequenza tutti i passi di riscaldamento.
+     */
+    private static void warmUp() {
+        List<Step> results = new ArrayList<>();
+        long start = System.nanoTime();
+
+        run(results, "config", true, () -> ConfigManager.getSnapshot());
+        run(results, "query", true, () -> {
+            if (!QueryRegistry.get().getProblems().isEmpty()) {
+                throw new IllegalStateException(QueryRegistry.get().getProblems().size() + " query non valide");
+            }
+        });
+        run(results, "database", true, () -> {
+            // Crea i pool e la prima connessione fisica di ciascuno
+            try (Connection read = DatabaseConnection.getConnectionRead();
+                 Connection write = DatabaseConnection.getConnectionWrite()) {
+                read.isValid(2);
+                write.isValid(2);
+            }
+        });
+        run(results, "crypto", true, () -> {
+            Cipher.getInstance("AES/CBC/PKCS5Padding");
+            MessageDigest.getInstance("SHA-256").digest(new byte[1]);
+            SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            Mac.getInstance("HmacSHA256");
+            new SecureRandom().nextBytes(new byte[16]);
+        });
+        run(results, "aes", true, AesEncryption::warmUp);
+        run(results, "password", true, () -> {
+            byte[] password = "warm-up".getBytes(StandardCharsets.UTF_8);
+            byte[] salt = PasswordManager.generateRandomBytes(16);
+            PasswordManager.hashPassword(password, salt);
+            PasswordManager.clearBytes(password);
+        });
+        run(results, "token", false, () -> TokenManager.isStateless());
+        run(results, "tika", false, () -> ContentTypeDetector.get().warmUp());
+        run(results, "jsoup", false, () -> {
+            String html = "<p>Proposta <b>progettuale</b><script>alert(1)</script></p>";
+            HtmlSanitizer.sanitize(html);
+        });
+        run(results, "json", false, () -> new Gson().toJson(Collections.singletonMap("warmUp", Boolean.TRUE)));
+
+        boolean healthy = !Thread.currentThread().isInterrupted();
+        for (Step step : results) {
+            healthy &= step.isSuccessful() || !step.isCritical();
+        }
+        steps = Collections.unmodifiableList(results);
+        ready = healthy;
+
+        StringBuilder summary = new StringBuilder(healthy ? "Riscaldamento completato in "
+                : "Riscaldamento non riuscito, applicazione non pronta, dopo ")
+                .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).append(" ms:");
+        for (Step step : results) {
+            summary.append(' ').append(step.getName()).append('=').append(step.getDurationMillis()).append("ms");
+            if (!step.isSuccessful()) {
+                summary.append("(errore)");
+            }
+        }
+        if (healthy) {
+            logger.info(summary.toString());
+        } else {
+            logger.severe(summary.toString());
+        }
+    }
+
+    /**
+     * Esegue e cronometra un passo, registrandone l'eventuale errore.
+     */
+    private static void run(List<Step> results, String name, boolean critical, Action action) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            action.run();
+        } catch (Exception | LinkageError e) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            logger.warning("Riscaldamento " + name + " non riuscito - " + error);
+        }
+        results.add(new Step(name, System.nanoTime() - start, error, critical));
+    }
+}
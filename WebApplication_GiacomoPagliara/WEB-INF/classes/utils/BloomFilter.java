@@ -0,0 +1,107 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro di Bloom per stringhe, sicuro per l'uso concorrente.
+ * I bit sono in un AtomicLongArray: gli inserimenti impostano i bit con un OR atomico
+ * e le letture non acquisiscono lock. Un risultato negativo di mightContain è certo;
+ * uno positivo è errato con la probabilità scelta alla creazione, finché il numero
+ * di elementi non supera quello previsto.
+ *
+ * Gli indici sono calcolati con il doppio hashing (h1 + i * h2) a partire da due hash
+ * a 64 bit dei caratteri, senza allocazioni.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+
+    /**
+     * Crea un filtro dimensionato per il numero di elementi e la probabilità di falsi positivi indicati.
+     *
+     * @param expectedInsertions Numero previsto di elementi (almeno 1)
+     * @param falsePositiveRate Probabilità di falsi positivi, tra 0 e 1 esclusi
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Parametri del filtro non validi: " + expectedInsertions
+                    + " elementi, probabilità " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        long words = Math.max(1, (bits + 63) >>> 6);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filtro troppo grande: " + bits + " bit");
+        }
+        this.bits = new AtomicLongArray((int) words);
+        this.bitCount = words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * ln2));
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Aggiunge un elemento.
+     *
+     * @param value Elemento da aggiungere
+     */
+    public void put(CharSequence value) {
+        long h1 = hash(value, 0x9E3779B97F4A7C15L);
+        long h2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            // Evita la scrittura se il bit è già impostato
+            if ((bits.get(word) & mask) == 0) {
+                bits.accumulateAndGet(word, mask, (current, bit) -> current | bit);
+            }
+        }
+    }
+
+    /**
+     * Verifica se un elemento potrebbe essere presente.
+     *
+     * @param value Elemento da cercare
+     * @return false se l'elemento non è stato certamente aggiunto
+     */
+    public boolean mightContain(CharSequence value) {
+        long h1 = hash(value, 0x9E3779B97F4A7C15L);
+        long h2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() { return bitCount; }
+    public int getHashCount() { return hashCount; }
+    public long getExpectedInsertions() { return expectedInsertions; }
+    public double getFalsePositiveRate() { return falsePositiveRate; }
+
+    /**
+     * Hash a 64 bit dei caratteri con il finalizzatore di MurmurHash3.
+     */
+    private static long hash(CharSequence value, long seed) {
+        long h = seed ^ value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001B3L;
+            h = Long.rotateLeft(h, 29);
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
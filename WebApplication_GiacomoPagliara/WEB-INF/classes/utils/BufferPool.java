@@ -0,0 +1,38 @@
+package utils;
+
+/**
+ * Buffer di lavoro riutilizzabili per la lettura in streaming dei file caricati.
+ * Ogni thread riceve il proprio buffer, creato alla prima richiesta e poi riutilizzato,
+ * così che l'elaborazione di un upload non allochi buffer proporzionali alla dimensione del file.
+ *
+ * Il buffer va usato e rilasciato all'interno della stessa chiamata: non deve essere
+ * conservato né passato ad altri thread, e un thread non deve usarlo per due letture contemporanee.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class BufferPool {
+
+    /** Dimensione dei buffer, in byte o caratteri. */
+    public static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final ThreadLocal<byte[]> BYTES = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final ThreadLocal<char[]> CHARS = ThreadLocal.withInitial(() -> new char[BUFFER_SIZE]);
+
+    private BufferPool() {
+        // Classe di utilità
+    }
+
+    /**
+     * @return Buffer di byte del thread corrente, di BUFFER_SIZE byte
+     */
+    public static byte[] bytes() {
+        return BYTES.get();
+    }
+
+    /**
+     * @return Buffer di caratteri del thread corrente, di BUFFER_SIZE caratteri
+     */
+    public static char[] chars() {
+        return CHARS.get();
+    }
+}
@@ -0,0 +1,36 @@
+package utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Componente interessato alle modifiche della configurazione.
+ * Prima di pubblicare una nuova istantanea ConfigManager chiede a tutti i listener
+ * di validarla: se almeno uno segnala problemi il ricaricamento viene scartato
+ * e resta in vigore la configurazione precedente.
+ *
+ * @author Giacomo Pagliara
+ */
+public interface ConfigChangeListener {
+
+    /**
+     * Verifica un'istantanea candidata prima della pubblicazione.
+     *
+     * @param candidate Nuova istantanea
+     * @param changedKeys Chiavi modificate rispetto all'istantanea corrente
+     * @return Elenco dei problemi riscontrati, vuoto se l'istantanea è accettabile
+     */
+    default List<String> validate(ConfigSnapshot candidate, Set<String> changedKeys) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Notifica la pubblicazione di una nuova istantanea.
+     *
+     * @param previous Istantanea precedente
+     * @param current Istantanea pubblicata
+     * @param changedKeys Chiavi modificate
+     */
+    void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys);
+}
@@ -2,62 +2,255 @@ package utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Gestore centralizzato per la configurazione dell'applicazione.
  * Carica e fornisce accesso alle proprietà configurate nel file config.ini.
- * 
+ *
+ * La configurazione è un'istantanea immutabile (ConfigSnapshot) pubblicata tramite
+ * un riferimento volatile: le letture non acquisiscono lock. Il metodo reload
+ * rilegge il file, fa validare la nuova istantanea ai listener registrati e,
+ * se non ci sono problemi, la sostituisce atomicamente a quella corrente
+ * notificando poi i listener (vedi ConfigWatcher per il ricaricamento automatico).
+ *
  * @author Giacomo Pagliara
  */
 public class ConfigManager {
+    private static final Logger logger = Logger.getLogger(ConfigManager.class.getName());
+
     // Percorso del file di configurazione
     private static final String CONFIG_FILE = "config.ini";
-    // Proprietà caricate dal file
-    private static Properties properties = null;
-    
+
+    // Istantanea corrente; null finché il file non è stato caricato con successo
+    private static volatile ConfigSnapshot snapshot = null;
+
+    // Serializza caricamenti e ricaricamenti, mai usato in lettura
+    private static final Object RELOAD_LOCK = new Object();
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private static final List<ConfigChangeListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Ottiene l'istantanea corrente della configurazione, caricandola se necessario.
+     *
+     * @return Istantanea della configurazione
+     * @throws IOException Se si verifica un errore durante il caricamento
+     */
+    public static ConfigSnapshot getSnapshot() throws IOException {
+        ConfigSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (RELOAD_LOCK) {
+            if (snapshot == null) {
+                snapshot = new ConfigSnapshot(loadProperties(), VERSIONS.incrementAndGet());
+            }
+            return snapshot;
+        }
+    }
+
     /**
      * Ottiene le proprietà di configurazione, caricandole se necessario.
-     * 
+     * Viene restituita una copia: le modifiche non hanno effetto sulla configurazione.
+     *
      * @return Oggetto Properties con le configurazioni
      * @throws IOException Se si verifica un errore durante il caricamento
      */
-    public static synchronized Properties getProperties() throws IOException {
-        if (properties == null) {
-            properties = loadProperties();
+    public static Properties getProperties() throws IOException {
+        return getSnapshot().toProperties();
+    }
+
+    /**
+     * Rilegge il file di configurazione e pubblica la nuova istantanea se tutti i listener la accettano.
+     *
+     * @return true se la nuova istantanea è stata pubblicata, false se il file non è cambiato,
+     *         non è leggibile o la validazione non è riuscita
+     */
+    public static boolean reload() {
+        synchronized (RELOAD_LOCK) {
+            ConfigSnapshot previous = snapshot;
+            ConfigSnapshot candidate;
+            try {
+                candidate = new ConfigSnapshot(loadProperties(), VERSIONS.incrementAndGet());
+            } catch (IOException e) {
+                logger.warning("Ricaricamento della configurazione non riuscito: " + e.getMessage());
+                return false;
+            }
+
+            Set<String> changed = candidate.changedKeys(previous);
+            if (previous != null && changed.isEmpty()) {
+                return false;
+            }
+
+            List<String> problems = new ArrayList<>();
+            for (ConfigChangeListener listener : LISTENERS) {
+                try {
+                    problems.addAll(listener.validate(candidate, changed));
+                } catch (RuntimeException e) {
+                    problems.add(listener.getClass().getName() + ": " + e);
+                }
+            }
+            if (!problems.isEmpty()) {
+                logger.severe("Nuova configurazione scartata, resta in vigore la precedente: " + problems);
+                return false;
+            }
+
+            snapshot = candidate;
+            logger.info("Configurazione ricaricata (versione " + candidate.getVersion() + "), chiavi modificate: " + changed);
+
+            for (ConfigChangeListener listener : LISTENERS) {
+                try {
+                    listener.configChanged(previous, candidate, changed);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Errore nell'applicazione della nuova configurazione", e);
+                }
+            }
+            return true;
         }
-        return properties;
     }
-    
+
+    /**
+     * Registra un listener per le modifiche della configurazione.
+     *
+     * @param listener Listener da registrare
+     */
+    public static void addListener(ConfigChangeListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Rimuove un listener registrato in precedenza.
+     *
+     * @param listener Listener da rimuovere
+     */
+    public static void removeListener(ConfigChangeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Restituisce il percorso del file di configurazione, se si trova sul file system.
+     *
+     * @return Percorso del file o null se il file non esiste o è all'interno di un archivio
+     */
+    public static Path getConfigPath() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource(CONFIG_FILE);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     /**
      * Carica le proprietà dal file di configurazione.
-     * 
+     * Se il file è sul file system viene letto direttamente, evitando eventuali
+     * cache delle risorse del class loader che restituirebbero contenuti non aggiornati.
+     *
      * @return Oggetto Properties con le configurazioni caricate
      * @throws IOException Se si verifica un errore durante il caricamento
      */
     private static Properties loadProperties() throws IOException {
         Properties props = new Properties();
-        
-        try (InputStream input = Thread.currentThread().getContextClassLoader()
-                .getResourceAsStream(CONFIG_FILE)) {
-            
+        Path path = getConfigPath();
+
+        try (InputStream input = path != null ? Files.newInputStream(path)
+                : Thread.currentThread().getContextClassLoader().getResourceAsStream(CONFIG_FILE)) {
+
             if (input == null) {
                 throw new IOException("File di configurazione " + CONFIG_FILE + " non trovato");
             }
-            
+
             props.load(input);
             return props;
         }
     }
-    
+
     /**
      * Ottiene il valore di una proprietà specifica.
-     * 
+     *
      * @param key Chiave della proprietà da recuperare
      * @return Valore della proprietà o null se non esiste
      * @throws IOException Se si verifica un errore durante il caricamento
      */
     public static String getProperty(String key) throws IOException {
-        return getProperties().getProperty(key);
+        return getSnapshot().getRaw(key);
+    }
+
+    /**
+     * Ottiene il valore di una proprietà numerica intera.
+     *
+     * @param key Chiave della proprietà da recuperare
+     * @param defaultValue Valore da usare se la proprietà è assente, non valida o non leggibile
+     * @return Valore della proprietà o il valore predefinito
+     */
+    public static int getInt(String key, int defaultValue) {
+        ConfigSnapshot current = snapshotOrNull(key);
+        return current != null ? current.getInt(key, defaultValue) : defaultValue;
+    }
+
+    /**
+     * Ottiene il valore di una proprietà numerica.
+     *
+     * @param key Chiave della proprietà da recuperare
+     * @param defaultValue Valore da usare se la proprietà è assente, non valida o non leggibile
+     * @return Valore della proprietà o il valore predefinito
+     */
+    public static long getLong(String key, long defaultValue) {
+        ConfigSnapshot current = snapshotOrNull(key);
+        return current != null ? current.getLong(key, defaultValue) : defaultValue;
+    }
+
+    /**
+     * Ottiene il valore di una proprietà booleana.
+     *
+     * @param key Chiave della proprietà da recuperare
+     * @param defaultValue Valore da usare se la proprietà è assente o non leggibile
+     * @return Valore della proprietà o il valore predefinito
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        ConfigSnapshot current = snapshotOrNull(key);
+        return current != null ? current.getBoolean(key, defaultValue) : defaultValue;
+    }
+
+    /**
+     * Ottiene il valore di una proprietà testuale con un valore predefinito.
+     *
+     * @param key Chiave della proprietà da recuperare
+     * @param defaultValue Valore da usare se la proprietà è assente o non leggibile
+     * @return Valore della proprietà o il valore predefinito
+     */
+    public static String getString(String key, String defaultValue) {
+        ConfigSnapshot current = snapshotOrNull(key);
+        return current != null ? current.getString(key, defaultValue) : defaultValue;
+    }
+
+    /**
+     * Ottiene l'istantanea corrente senza propagare gli errori di caricamento.
+     *
+     * @param key Chiave richiesta, usata nel messaggio di errore
+     * @return Istantanea corrente o null se la configurazione non è leggibile
+     */
+    private static ConfigSnapshot snapshotOrNull(String key) {
+        try {
+            return getSnapshot();
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere la proprietà " + key + ": " + e.getMessage());
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+package utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Istantanea immutabile della configurazione letta da config.ini.
+ * Le istantanee vengono pubblicate da ConfigManager tramite un riferimento volatile,
+ * per cui la lettura non richiede lock e i valori di una stessa istantanea
+ * sono sempre coerenti tra loro, anche durante un ricaricamento.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class ConfigSnapshot {
+
+    /**
+     * Istantanea vuota, in cui ogni proprietà assume il valore predefinito;
+     * utile quando la configurazione non può essere letta.
+     */
+    public static final ConfigSnapshot EMPTY = new ConfigSnapshot(new Properties(), 0);
+
+    private final Map<String, String> values;
+    private final long version;
+    private final long loadedAt;
+
+    /**
+     * Crea un'istantanea copiando le proprietà indicate.
+     *
+     * @param properties Proprietà lette dal file
+     * @param version Numero progressivo dell'istantanea
+     */
+    ConfigSnapshot(Properties properties, long version) {
+        Map<String, String> copy = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            copy.put(key, properties.getProperty(key));
+        }
+        this.values = Collections.unmodifiableMap(copy);
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Restituisce il valore grezzo di una proprietà.
+     *
+     * @param key Chiave della proprietà
+     * @return Valore così come scritto nel file, o null se assente
+     */
+    public String getRaw(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * Restituisce il valore di una proprietà testuale.
+     *
+     * @param key Chiave della proprietà
+     * @param defaultValue Valore da usare se la proprietà è assente o vuota
+     * @return Valore senza spazi iniziali e finali, o il valore predefinito
+     */
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Restituisce il valore di una proprietà numerica intera.
+     *
+     * @param key Chiave della proprietà
+     * @param defaultValue Valore da usare se la proprietà è assente, non valida o fuori dall'intervallo di int
+     * @return Valore della proprietà o il valore predefinito
+     */
+    public int getInt(String key, int defaultValue) {
+        long value = getLong(key, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            System.err.println("Valore fuori intervallo per la proprietà " + key + ": " + value);
+            return defaultValue;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Restituisce il valore di una proprietà numerica.
+     *
+     * @param key Chiave della proprietà
+     * @param defaultValue Valore da usare se la proprietà è assente o non valida
+     * @return Valore della proprietà o il valore predefinito
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Valore numerico non valido per la proprietà " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Restituisce il valore di una proprietà booleana.
+     *
+     * @param key Chiave della proprietà
+     * @param defaultValue Valore da usare se la proprietà è assente
+     * @return Valore della proprietà o il valore predefinito
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    /**
+     * Restituisce una copia modificabile delle proprietà, per le API che richiedono Properties.
+     * Le modifiche alla copia non hanno effetto sulla configurazione.
+     *
+     * @return Nuovo oggetto Properties con i valori dell'istantanea
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.putAll(values);
+        return properties;
+    }
+
+    /**
+     * Calcola le chiavi aggiunte, rimosse o modificate rispetto a un'altra istantanea.
+     *
+     * @param other Istantanea di confronto, o null
+     * @return Insieme delle chiavi diverse
+     */
+    public Set<String> changedKeys(ConfigSnapshot other) {
+        Set<String> changed = new HashSet<>();
+        Map<String, String> previous = other != null ? other.values : Collections.<String, String>emptyMap();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!values.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Indica se almeno una delle chiavi indicate inizia con uno dei prefissi.
+     *
+     * @param keys Chiavi modificate
+     * @param prefixes Prefissi di interesse
+     * @return true se almeno una chiave corrisponde
+     */
+    public static boolean anyStartsWith(Set<String> keys, String... prefixes) {
+        for (String key : keys) {
+            for (String prefix : prefixes) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public long getVersion() { return version; }
+    public long getLoadedAt() { return loadedAt; }
+    public int size() { return values.size(); }
+}
@@ -0,0 +1,111 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Ricaricamento automatico della configurazione.
+ * Con config.reload.watch=true un thread osserva la cartella di config.ini e,
+ * quando il file cambia, invoca ConfigManager.reload dopo una breve attesa
+ * (config.reload.debounceMs) per non leggere un file ancora in scrittura.
+ * Il ricaricamento funziona solo se config.ini si trova sul file system
+ * (applicazione non distribuita come archivio compresso).
+ *
+ * @author Giacomo Pagliara
+ */
+@WebListener
+public class ConfigWatcher implements ServletContextListener {
+
+    private static final Logger logger = Logger.getLogger(ConfigWatcher.class.getName());
+
+    private static final long DEFAULT_DEBOUNCE_MS = 500;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (!ConfigManager.getBoolean("config.reload.watch", false)) {
+            return;
+        }
+        Path file = ConfigManager.getConfigPath();
+        if (file == null) {
+            logger.warning("config.reload.watch ignorato: config.ini non si trova sul file system");
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.warning("Impossibile osservare " + file + ": " + e.getMessage());
+            return;
+        }
+
+        long debounce = ConfigManager.getLong("config.reload.debounceMs", DEFAULT_DEBOUNCE_MS);
+        thread = new Thread(() -> watch(file.getFileName(), debounce), "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Ricaricamento automatico della configurazione attivo su " + file);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Ciclo di osservazione: attende le modifiche al file e ricarica la configurazione.
+     */
+    private void watch(Path fileName, long debounce) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (fileName.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+
+                if (changed) {
+                    // Accorpa le notifiche ravvicinate prodotte da una singola scrittura
+                    Thread.sleep(debounce);
+                    WatchKey pending;
+                    while ((pending = watchService.poll(0, TimeUnit.MILLISECONDS)) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    ConfigManager.reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Chiusura dell'applicazione
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.Part;
+
+/**
+ * Servizio condiviso per il rilevamento del tipo di contenuto dei file caricati.
+ *
+ * Esamina al più upload.sniffBytes byte (predefinito 8 KB) dell'inizio del file, letti nel buffer
+ * del thread (vedi BufferPool). I formati accettati dall'applicazione sono riconosciuti direttamente:
+ * JPEG e PNG dalla firma iniziale, il testo semplice da un controllo sui byte (nessun carattere
+ * di controllo e sequenze UTF-8 valide). Solo i casi ambigui, come contenuti che iniziano con un tag
+ * o testo in altre codifiche, vengono passati al rilevatore condiviso di Tika, sullo stesso prefisso.
+ *
+ * Per ogni formato sono conteggiati i rilevamenti e il tempo impiegato (vedi toString).
+ *
+ * @author Giacomo Pagliara
+ */
+public final class ContentTypeDetector {
+
+    public static final String JPEG = "image/jpeg";
+    public static final String PNG = "image/png";
+    public static final String TEXT = "text/plain";
+
+    private static final int DEFAULT_SNIFF_BYTES = 8 * 1024;
+
+    private static final byte[] JPEG_SIGNATURE = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF };
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    /**
+     * Esito del rilevamento, usato per le metriche.
+     */
+    public enum Format {
+        JPEG, PNG, TEXT, FALLBACK
+    }
+
+    private static final Format[] FORMATS = Format.values();
+
+    // Creata dopo FORMATS, usato dal costruttore
+    private static final ContentTypeDetector INSTANCE = new ContentTypeDetector();
+
+    private final int sniffBytes;
+    private final LongAdder[] counts = new LongAdder[FORMATS.length];
+    private final LongAdder[] nanos = new LongAdder[FORMATS.length];
+
+    private ContentTypeDetector() {
+        sniffBytes = Math.max(1, Math.min(BufferPool.BUFFER_SIZE,
+                ConfigManager.getInt("upload.sniffBytes", DEFAULT_SNIFF_BYTES)));
+        for (int i = 0; i < FORMATS.length; i++) {
+            counts[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return Istanza condivisa del servizio
+     */
+    public static ContentTypeDetector get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Numero massimo di byte esaminati per ogni file
+     */
+    public int getSniffBytes() {
+        return sniffBytes;
+    }
+
+    /**
+     * Rileva il tipo di contenuto di un file caricato, leggendone solo l'inizio.
+     * Il flusso della parte viene sempre chiuso.
+     *
+     * @param part Parte del file caricato
+     * @return Tipo MIME rilevato
+     * @throws IOException Se la lettura non riesce
+     */
+    public String detect(Part part) throws IOException {
+        byte[] buffer = BufferPool.bytes();
+        try (InputStream input = part.getInputStream()) {
+            return detect(buffer, readPrefix(input, buffer, sniffBytes));
+        }
+    }
+
+    /**
+     * Rileva il tipo di contenuto dall'inizio di un file già letto.
+     *
+     * @param prefix Buffer con l'inizio del file
+     * @param length Numero di byte validi nel buffer
+     * @return Tipo MIME rilevato
+     * @throws IOException Se il rilevamento tramite Tika non riesce
+     */
+    public String detect(byte[] prefix, int length) throws IOException {
+        long start = System.nanoTime();
+        Format format;
+        String type;
+        if (startsWith(prefix, length, JPEG_SIGNATURE)) {
+            format = Format.JPEG;
+            type = JPEG;
+        } else if (startsWith(prefix, length, PNG_SIGNATURE)) {
+            format = Format.PNG;
+            type = PNG;
+        } else if (isPlainText(prefix, length, length >= sniffBytes)) {
+            format = Format.TEXT;
+            type = TEXT;
+        } else {
+            format = Format.FALLBACK;
+            type = TikaHolder.get().detect(new ByteArrayInputStream(prefix, 0, length));
+        }
+        counts[format.ordinal()].increment();
+        nanos[format.ordinal()].add(System.nanoTime() - start);
+        return type;
+    }
+
+    /**
+     * Legge l'inizio del flusso nel buffer, fino a limit byte o alla fine del flusso.
+     * Una singola read può restituire meno byte di quelli disponibili, per cui si ripete.
+     *
+     * @param input Flusso da leggere (non viene chiuso)
+     * @param buffer Buffer di destinazione
+     * @param limit Numero massimo di byte da leggere
+     * @return Numero di byte letti
+     * @throws IOException Se la lettura non riesce
+     */
+    public static int readPrefix(InputStream input, byte[] buffer, int limit) throws IOException {
+        int length = 0;
+        while (length < limit) {
+            int read = input.read(buffer, length, limit - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Riconosce il testo semplice: nessun carattere di controllo oltre a tabulazioni, ritorni a capo,
+     * salto pagina ed escape, e sequenze UTF-8 ben formate (l'ultima può essere troncata se il prefisso
+     * è stato tagliato). Un contenuto che inizia con '<' è considerato ambiguo (HTML, XML o testo).
+     */
+    private static boolean isPlainText(byte[] data, int length, boolean truncated) {
+        if (length == 0) {
+            return false;
+        }
+        int i = 0;
+        // BOM UTF-8 e spazi iniziali
+        if (length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) {
+            i = 3;
+        }
+        int first = i;
+        while (first < length && (data[first] == ' ' || data[first] == '\t' || data[first] == '\r'
+                || data[first] == '\n')) {
+            first++;
+        }
+        if (first < length && data[first] == '<') {
+            return false;
+        }
+
+        while (i < length) {
+            int b = data[i] & 0xFF;
+            if (b < 0x80) {
+                if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B || b == 0x7F) {
+                    return false;
+                }
+                i++;
+                continue;
+            }
+            int size;
+            if (b >= 0xC2 && b <= 0xDF) {
+                size = 2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                size = 3;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                size = 4;
+            } else {
+                return false;
+            }
+            for (int k = 1; k < size; k++) {
+                if (i + k >= length) {
+                    return truncated;
+                }
+                if ((data[i + k] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += size;
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] data, int length, byte[] signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (data[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inizializza il rilevatore di Tika usato per i casi ambigui.
+     */
+    public void warmUp() {
+        TikaHolder.get().detect("%PDF-1.4\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param format Formato
+     * @return Numero di rilevamenti con l'esito indicato
+     */
+    public long getCount(Format format) {
+        return counts[format.ordinal()].sum();
+    }
+
+    /**
+     * @param format Formato
+     * @return Tempo medio di rilevamento in microsecondi per l'esito indicato
+     */
+    public double getAverageMicros(Format format) {
+        long count = getCount(format);
+        return count == 0 ? 0 : nanos[format.ordinal()].sum() / 1000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("Rilevamento del tipo di contenuto (prefisso ")
+                .append(sniffBytes).append(" byte):");
+        for (Format format : FORMATS) {
+            text.append(String.format(Locale.ROOT, " %s=%d (%.1f us)",
+                    format.name().toLowerCase(Locale.ROOT), getCount(format), getAverageMicros(format)));
+        }
+        return text.toString();
+    }
+}
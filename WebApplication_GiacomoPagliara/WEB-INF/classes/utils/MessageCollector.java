@@ -0,0 +1,218 @@
+package utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Raccoglitore dei messaggi destinati all'utente durante una singola richiesta.
+ * Un'istanza viene associata al thread che serve la richiesta da MessageFilter;
+ * i messaggi raccolti vengono poi mostrati dalle JSP oppure restituiti
+ * come array JSON "messages" dalle servlet che rispondono alle chiamate XHR.
+ *
+ * La lista interna viene allocata solo al primo messaggio, per cui una
+ * richiesta senza messaggi non ha alcun costo aggiuntivo.
+ *
+ * @author Giacomo Pagliara
+ */
+public class MessageCollector implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Nome dell'attributo di richiesta con cui le JSP leggono i messaggi
+    public static final String REQUEST_ATTRIBUTE = "messages";
+    // Nome dell'attributo di sessione usato per i messaggi "flash" tra redirect
+    public static final String FLASH_ATTRIBUTE = "flashMessages";
+
+    // Raccoglitore associato al thread della richiesta corrente
+    private static final ThreadLocal<MessageCollector> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Livello di gravità di un messaggio.
+     */
+    public enum Level {
+        ERROR("error"),
+        WARNING("warning"),
+        INFO("info");
+
+        private final String cssClass;
+
+        Level(String cssClass) {
+            this.cssClass = cssClass;
+        }
+
+        /**
+         * @return Classe CSS usata dalle JSP per il livello
+         */
+        public String getCssClass() {
+            return cssClass;
+        }
+    }
+
+    /**
+     * Singolo messaggio destinato all'utente. Immutabile.
+     */
+    public static final class Message implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Level level;
+        private final String text;
+
+        public Message(Level level, String text) {
+            this.level = level;
+            this.text = text;
+        }
+
+        public Level getLevel() { return level; }
+        public String getText() { return text; }
+
+        /**
+         * Restituisce il testo del messaggio con i caratteri speciali HTML codificati,
+         * pronto per essere inserito in una pagina JSP.
+         *
+         * @return Testo codificato per HTML
+         */
+        public String getHtmlText() {
+            StringBuilder escaped = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '<': escaped.append("&lt;"); break;
+                    case '>': escaped.append("&gt;"); break;
+                    case '&': escaped.append("&amp;"); break;
+                    case '"': escaped.append("&quot;"); break;
+                    case '\'': escaped.append("&#039;"); break;
+                    default: escaped.append(c);
+                }
+            }
+            return escaped.toString();
+        }
+    }
+
+    // Messaggi raccolti, allocati solo se necessario
+    private List<Message> messages;
+
+    /**
+     * Associa un nuovo raccoglitore al thread corrente.
+     *
+     * @return Raccoglitore associato
+     */
+    public static MessageCollector bind() {
+        MessageCollector collector = new MessageCollector();
+        CURRENT.set(collector);
+        return collector;
+    }
+
+    /**
+     * Associa un raccoglitore esistente al thread corrente.
+     *
+     * @param collector Raccoglitore da associare
+     */
+    public static void bind(MessageCollector collector) {
+        CURRENT.set(collector);
+    }
+
+    /**
+     * Rimuove il raccoglitore associato al thread corrente.
+     */
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Restituisce il raccoglitore associato al thread corrente.
+     *
+     * @return Raccoglitore corrente o null se il thread non sta servendo una richiesta
+     */
+    public static MessageCollector current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Aggiunge un messaggio.
+     *
+     * @param level Livello del messaggio
+     * @param text Testo del messaggio
+     */
+    public synchronized void add(Level level, String text) {
+        if (text == null) {
+            return;
+        }
+        if (messages == null) {
+            messages = new ArrayList<>(2);
+        }
+        messages.add(new Message(level, text));
+    }
+
+    /**
+     * Aggiunge tutti i messaggi di un altro raccoglitore.
+     *
+     * @param other Raccoglitore da cui copiare i messaggi
+     */
+    public void addAll(MessageCollector other) {
+        for (Message message : other.getMessages()) {
+            add(message.getLevel(), message.getText());
+        }
+    }
+
+    /**
+     * @return true se non è stato raccolto alcun messaggio
+     */
+    public synchronized boolean isEmpty() {
+        return messages == null || messages.isEmpty();
+    }
+
+    /**
+     * @return true se è stato raccolto almeno un messaggio di errore
+     */
+    public synchronized boolean hasErrors() {
+        if (messages != null) {
+            for (Message message : messages) {
+                if (message.getLevel() == Level.ERROR) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Copia non modificabile dei messaggi raccolti
+     */
+    public synchronized List<Message> getMessages() {
+        if (messages == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(messages));
+    }
+
+    /**
+     * Converte i messaggi raccolti in un array JSON con elementi
+     * della forma {"level": "error", "text": "..."}.
+     *
+     * @return Array JSON dei messaggi
+     */
+    public JsonArray toJson() {
+        JsonArray array = new JsonArray();
+        for (Message message : getMessages()) {
+            JsonObject item = new JsonObject();
+            item.addProperty("level", message.getLevel().getCssClass());
+            item.addProperty("text", message.getText());
+            array.add(item);
+        }
+        return array;
+    }
+
+    /**
+     * Restituisce l'array JSON dei messaggi della richiesta corrente.
+     *
+     * @return Array JSON, vuoto se non ci sono messaggi o nessuna richiesta associata
+     */
+    public static JsonArray currentAsJson() {
+        MessageCollector collector = current();
+        return collector != null ? collector.toJson() : new JsonArray();
+    }
+}
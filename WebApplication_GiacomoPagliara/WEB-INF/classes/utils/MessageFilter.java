@@ -0,0 +1,104 @@
+package utils;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Filtro che associa un MessageCollector a ogni richiesta.
+ * I messaggi raccolti sono disponibili alle JSP tramite l'attributo di richiesta
+ * "messages"; se la servlet risponde con un redirect, vengono salvati in sessione
+ * come messaggi "flash" e mostrati dalla pagina successiva.
+ *
+ * @author Giacomo Pagliara
+ */
+@WebFilter(urlPatterns = "/*")
+public class MessageFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nessuna inizializzazione necessaria
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        MessageCollector collector = MessageCollector.bind();
+        try {
+            // Recupera gli eventuali messaggi lasciati dalla richiesta precedente
+            HttpSession session = httpRequest.getSession(false);
+            if (session != null) {
+                consumeFlash(session, collector);
+            }
+            httpRequest.setAttribute(MessageCollector.REQUEST_ATTRIBUTE, collector);
+
+            chain.doFilter(request, new FlashResponseWrapper(httpRequest, httpResponse, collector));
+        } finally {
+            MessageCollector.unbind();
+        }
+    }
+
+    /**
+     * Sposta i messaggi flash dalla sessione al raccoglitore della richiesta.
+     *
+     * @param session Sessione HTTP
+     * @param collector Raccoglitore della richiesta corrente
+     */
+    private void consumeFlash(HttpSession session, MessageCollector collector) {
+        try {
+            Object flash = session.getAttribute(MessageCollector.FLASH_ATTRIBUTE);
+            if (flash instanceof MessageCollector) {
+                session.removeAttribute(MessageCollector.FLASH_ATTRIBUTE);
+                collector.addAll((MessageCollector) flash);
+            }
+        } catch (IllegalStateException e) {
+            // Sessione invalidata nel frattempo: nessun messaggio da recuperare
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Nessuna risorsa da rilasciare
+    }
+
+    /**
+     * Wrapper della risposta che salva i messaggi in sessione prima di un redirect,
+     * quando la risposta non è ancora stata inviata e i cookie possono essere impostati.
+     */
+    private static class FlashResponseWrapper extends HttpServletResponseWrapper {
+        private final HttpServletRequest request;
+        private final MessageCollector collector;
+
+        FlashResponseWrapper(HttpServletRequest request, HttpServletResponse response, MessageCollector collector) {
+            super(response);
+            this.request = request;
+            this.collector = collector;
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            if (!collector.isEmpty()) {
+                try {
+                    request.getSession(true).setAttribute(MessageCollector.FLASH_ATTRIBUTE, collector);
+                } catch (IllegalStateException e) {
+                    // Risposta già inviata: i messaggi non possono essere trasferiti
+                }
+            }
+            super.sendRedirect(location);
+        }
+    }
+}
@@ -1,88 +1,72 @@
 package utils;
 
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JOptionPane;
-import javax.swing.JPanel;
-import java.awt.BorderLayout;
+import java.util.logging.Logger;
 
 /**
  * Classe di utilità per visualizzare messaggi all'utente.
  * Supporta diversi tipi di messaggi e modalità di visualizzazione.
- * 
+ *
+ * I messaggi non vengono più mostrati in finestre Swing, che sui server headless
+ * generano HeadlessException e negli altri casi bloccano il thread della richiesta:
+ * vengono invece aggiunti al MessageCollector della richiesta corrente e restituiti
+ * al browser tramite le JSP o le risposte JSON. Se il thread corrente non sta
+ * servendo una richiesta, il messaggio viene soltanto registrato nel log.
+ *
  * @author Giacomo Pagliara
  */
 public class MessageUtils {
-    // Costante per il titolo della finestra
-    private static final String WINDOW_TITLE = "MESSAGGIO DAL SITO WEB";
-    
+
+    private static final Logger logger = Logger.getLogger(MessageUtils.class.getName());
+
     /**
-     * Visualizza un messaggio generico in una finestra separata.
-     * 
+     * Visualizza un messaggio generico.
+     *
      * @param message Messaggio da visualizzare
      */
     public static void showMessage(String message) {
-        showCustomPanel(message);
+        addMessage(MessageCollector.Level.INFO, message);
     }
-    
+
     /**
      * Visualizza un messaggio di errore.
-     * 
+     *
      * @param message Messaggio di errore da visualizzare
      */
     public static void showErrorMessage(String message) {
-        JOptionPane.showMessageDialog(null, message, "Errore", JOptionPane.ERROR_MESSAGE);
+        addMessage(MessageCollector.Level.ERROR, message);
     }
-    
+
     /**
      * Visualizza un messaggio informativo.
-     * 
+     *
      * @param message Messaggio informativo da visualizzare
      */
     public static void showInfoMessage(String message) {
-        JOptionPane.showMessageDialog(null, message, "Informazione", JOptionPane.INFORMATION_MESSAGE);
+        addMessage(MessageCollector.Level.INFO, message);
     }
-    
+
     /**
      * Visualizza un messaggio di avviso.
-     * 
+     *
      * @param message Messaggio di avviso da visualizzare
      */
     public static void showWarningMessage(String message) {
-        JOptionPane.showMessageDialog(null, message, "Attenzione", JOptionPane.WARNING_MESSAGE);
+        addMessage(MessageCollector.Level.WARNING, message);
     }
-    
-    /**
-     * Visualizza un messaggio in un pannello personalizzato.
-     *
-     * 
-     * @param message Messaggio da visualizzare
-     */
-    private static void showCustomPanel(String message) {
-        // Crea una finestra e aggiungi il pannello
-        JFrame frame = new JFrame(WINDOW_TITLE);
-        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
-        JPanel panel = createMessagePanel(message);
-        frame.getContentPane().add(panel);
-        
-        frame.pack(); 
-        frame.setLocationRelativeTo(null);
-        frame.setAlwaysOnTop(true);
-        frame.setVisible(true);
-    }
-    
     /**
-     * Crea un pannello contenente il messaggio.
-     * 
-     * @param message Messaggio da visualizzare
-     * @return Pannello configurato
+     * Aggiunge il messaggio al raccoglitore della richiesta corrente,
+     * oppure lo registra nel log se nessuna richiesta è associata al thread.
+     *
+     * @param level Livello del messaggio
+     * @param message Testo del messaggio
      */
-    private static JPanel createMessagePanel(String message) {
-        JPanel panel = new JPanel(new BorderLayout(10, 10));
-        JLabel label = new JLabel(message);
-        panel.add(label, BorderLayout.CENTER);
-        panel.setBorder(javax.swing.BorderFactory.createEmptyBorder(20, 20, 20, 20));
-        return panel;
+    private static void addMessage(MessageCollector.Level level, String message) {
+        MessageCollector collector = MessageCollector.current();
+        if (collector != null) {
+            collector.add(level, message);
+        } else {
+            logger.info("[" + level + "] " + message);
+        }
     }
-}
\ No newline at end of file
+}
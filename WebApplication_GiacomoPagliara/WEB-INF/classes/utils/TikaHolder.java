@@ -0,0 +1,30 @@
+package utils;
+
+import org.apache.tika.Tika;
+
+/**
+ * Istanza condivisa di Apache Tika.
+ * La creazione di un oggetto Tika carica la configurazione e i rilevatori
+ * dei tipi MIME, un'operazione costosa che non va ripetuta a ogni richiesta;
+ * l'istanza è thread-safe e può essere usata da tutte le servlet.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class TikaHolder {
+
+    private TikaHolder() {
+        // Classe di utilità
+    }
+
+    // Inizializzazione pigra e thread-safe tramite classe interna
+    private static final class Holder {
+        private static final Tika INSTANCE = new Tika();
+    }
+
+    /**
+     * @return Istanza condivisa di Tika
+     */
+    public static Tika get() {
+        return Holder.INSTANCE;
+    }
+}
@@ -0,0 +1,143 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Flusso di byte che codifica in UTF-8, man mano che viene letto, i caratteri di un Reader.
+ * È il complemento di Utf8Reader: consente di passare un contenuto testuale a chi si aspetta
+ * un InputStream (ad esempio PreparedStatement.setBinaryStream) senza costruirne prima
+ * la rappresentazione in byte. I byte codificati sono scritti direttamente nell'array del
+ * chiamante; i caratteri sono letti nel buffer di caratteri di BufferPool.
+ *
+ * Le coppie surrogate non valide vengono rifiutate (MalformedInputException) invece di essere sostituite.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class Utf8InputStream extends InputStream {
+
+    private final Reader in;
+    private final CharBuffer chars;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private long total;
+    private boolean endOfInput;
+    private boolean flushed;
+    // Byte di un carattere codificato solo in parte in una lettura con meno di 4 byte di spazio
+    private ByteBuffer pending;
+    // Vista sull'array del chiamante, riutilizzata finché il chiamante legge sempre nello stesso array
+    private ByteBuffer out;
+
+    /**
+     * @param in Reader da codificare
+     */
+    public Utf8InputStream(Reader in) {
+        this.in = in;
+        this.chars = CharBuffer.wrap(BufferPool.chars());
+        this.chars.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (pending != null && pending.hasRemaining()) {
+            int count = Math.min(length, pending.remaining());
+            pending.get(target, offset, count);
+            total += count;
+            return count;
+        }
+        // Un carattere UTF-8 occupa fino a 4 byte: con meno spazio si codifica in un buffer di appoggio
+        if (length < 4) {
+            return readShort(target, offset, length);
+        }
+
+        ByteBuffer out = wrap(target, offset, length);
+        while (out.position() == offset) {
+            if (flushed) {
+                return -1;
+            }
+            CoderResult result = encoder.encode(chars, out, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow()) {
+                break;
+            }
+            if (endOfInput) {
+                if (encoder.flush(out).isOverflow()) {
+                    break;
+                }
+                flushed = true;
+            } else {
+                fill();
+            }
+        }
+        int read = out.position() - offset;
+        total += read;
+        return read;
+    }
+
+    private ByteBuffer wrap(byte[] target, int offset, int length) {
+        if (out == null || out.array() != target) {
+            out = ByteBuffer.wrap(target);
+        }
+        out.limit(offset + length).position(offset);
+        return out;
+    }
+
+    /**
+     * Legge altri caratteri dal Reader, conservando quelli non ancora codificati
+     * (ad esempio la prima metà di una coppia surrogata).
+     */
+    private void fill() throws IOException {
+        chars.compact();
+        int read = in.read(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            chars.position(chars.position() + read);
+        }
+        chars.flip();
+    }
+
+    private int readShort(byte[] target, int offset, int length) throws IOException {
+        byte[] encoded = new byte[4];
+        int read = read(encoded, 0, encoded.length);
+        if (read < 0) {
+            return -1;
+        }
+        total -= read;
+        pending = ByteBuffer.wrap(encoded, 0, read);
+        return read(target, offset, length);
+    }
+
+    /**
+     * @return Numero di byte codificati restituiti finora
+     */
+    public long getBytesWritten() {
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
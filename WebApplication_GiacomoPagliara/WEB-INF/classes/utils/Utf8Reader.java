@@ -0,0 +1,158 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader che decodifica in streaming un flusso UTF-8, rifiutando le sequenze non valide
+ * (MalformedInputException) invece di sostituirle, e che interrompe la lettura con
+ * SizeLimitExceededException appena il flusso supera il numero massimo di byte consentito.
+ *
+ * I byte vengono letti in un buffer fornito dal chiamante (ad esempio quello di BufferPool),
+ * che può già contenere l'inizio del flusso letto in precedenza: in questo modo un prefisso
+ * esaminato per il rilevamento del tipo di contenuto non deve essere letto una seconda volta.
+ *
+ * @author Giacomo Pagliara
+ */
+public final class Utf8Reader extends Reader {
+
+    /**
+     * Eccezione sollevata quando il flusso supera la dimensione massima consentita.
+     */
+    public static final class SizeLimitExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SizeLimitExceededException(long maxBytes) {
+            super("Il flusso supera la dimensione massima di " + maxBytes + " byte");
+        }
+    }
+
+    private final InputStream in;
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final long maxBytes;
+
+    private long total;
+    private boolean endOfInput;
+    private boolean flushed;
+    // Secondo carattere di una coppia surrogata letta con una richiesta di un solo carattere
+    private int pending = -1;
+    // Vista sull'array del chiamante, riutilizzata finché il chiamante legge sempre nello stesso array
+    private CharBuffer out;
+
+    /**
+     * @param in Flusso da decodificare
+     * @param buffer Buffer di lavoro; i primi initialLength byte sono l'inizio del flusso già letto
+     * @param initialLength Numero di byte del flusso già presenti nel buffer
+     * @param maxBytes Numero massimo di byte del flusso, compresi quelli già letti
+     * @throws SizeLimitExceededException Se i byte già letti superano il massimo
+     */
+    public Utf8Reader(InputStream in, byte[] buffer, int initialLength, long maxBytes)
+            throws SizeLimitExceededException {
+        this.in = in;
+        this.bytes = ByteBuffer.wrap(buffer, 0, initialLength);
+        this.maxBytes = maxBytes;
+        this.total = initialLength;
+        if (total > maxBytes) {
+            throw new SizeLimitExceededException(maxBytes);
+        }
+    }
+
+    @Override
+    public int read(char[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (pending >= 0) {
+            target[offset] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+
+        CharBuffer out = wrap(target, offset, length);
+        while (out.position() == offset) {
+            if (flushed) {
+                return -1;
+            }
+            CoderResult result = decoder.decode(bytes, out, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow()) {
+                if (out.position() == offset) {
+                    // Spazio per un solo carattere e prossimo code point fuori dal BMP
+                    return readSurrogatePair(target, offset);
+                }
+                break;
+            }
+            if (endOfInput) {
+                if (decoder.flush(out).isOverflow()) {
+                    break;
+                }
+                flushed = true;
+            } else {
+                fill();
+            }
+        }
+        return out.position() - offset;
+    }
+
+    private CharBuffer wrap(char[] target, int offset, int length) {
+        if (out == null || out.array() != target) {
+            out = CharBuffer.wrap(target);
+        }
+        out.limit(offset + length).position(offset);
+        return out;
+    }
+
+    /**
+     * Legge altri byte dal flusso, conservando quelli non ancora decodificati.
+     */
+    private void fill() throws IOException {
+        bytes.compact();
+        int read = in.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            total += read;
+            if (total > maxBytes) {
+                throw new SizeLimitExceededException(maxBytes);
+            }
+            bytes.position(bytes.position() + read);
+        }
+        bytes.flip();
+    }
+
+    private int readSurrogatePair(char[] target, int offset) throws IOException {
+        CharBuffer pair = CharBuffer.allocate(2);
+        CoderResult result = decoder.decode(bytes, pair, endOfInput);
+        if (result.isError()) {
+            result.throwException();
+        }
+        pair.flip();
+        target[offset] = pair.get();
+        pending = pair.get();
+        return 1;
+    }
+
+    /**
+     * @return Numero di byte letti dal flusso finora, compresi quelli iniziali
+     */
+    public long getBytesRead() {
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -71,6 +71,8 @@
     <div class="container">
         <h1>Benvenuto nell'Applicazione Sicura</h1>
         
+        <%@ include file="/WEB-INF/messages.jspf" %>
+        
         <div class="welcome-message">
 	    <% if (session.getAttribute("nomeUtente") != null) { %>
 	        <h2>Ciao, <%= session.getAttribute("nomeUtente") %>!</h2>
@@ -73,6 +73,8 @@
     <div class="container">
         <h1>Accedi</h1>
         
+        <%@ include file="/WEB-INF/messages.jspf" %>
+        
         <% if (request.getAttribute("error") != null) { %>
             <div class="message error">
                 <%= request.getAttribute("error") %>
@@ -102,6 +102,11 @@
             color: #721c24;
             border: 1px solid #f5c6cb;
         }
+        .info {
+            background-color: #d1ecf1;
+            color: #0c5460;
+            border: 1px solid #bee5eb;
+        }
     </style>
     
     <!-- Controllo autenticazione -->
@@ -125,6 +130,8 @@
         
         <h1>Proposte Progettuali</h1>
         
+        <%@ include file="/WEB-INF/messages.jspf" %>
+        
         <% 
         String action = request.getParameter("action");
         if (action != null && action.equals("upload")) { 
@@ -145,12 +152,11 @@
                 <% } %>
                 
                 <form action="ProjectServlet" method="post" enctype="multipart/form-data" onsubmit="return validateUpload()">
-    				<input type="hidden" name="nomeUtente" 
-           				value="${sessionScope.nomeUtente != null ? sessionScope.nomeUtente : param.nomeUtente}">
                     <label for="propostaFile">File della proposta (solo .txt):</label>
                     <input type="file" id="propostaFile" name="Proposta progettuale" accept=".txt" required>
                     <button type="submit">Carica Proposta</button>
                 </form>
+                <div id="upload-status" style="display: none;"></div>
             </div>
         <% } %>
         
@@ -160,10 +166,14 @@
                 <!-- Qui verranno caricate le proposte dal server -->
                 <p class="no-projects">Caricamento proposte in corso...</p>
             </div>
+            <button type="button" id="load-more" style="display: none;">Carica altre proposte</button>
         </div>
     </div>
     
     <script>
+        // Con il caricamento asincrono il form viene inviato con XMLHttpRequest e se ne segue lo stato
+        var asyncUpload = <%= project.ProposalIngestion.current() != null %>;
+        
         // Validazione del form di upload
         function validateUpload() {
             var fileInput = document.getElementById("propostaFile");
@@ -176,9 +186,81 @@
                     return false;
                 }
             }
+            if (asyncUpload) {
+                submitUpload(document.querySelector('.project-form form'));
+                return false;
+            }
             return true;
         }
         
+        // Mostra lo stato del caricamento asincrono con gli eventuali messaggi del server
+        function showUploadStatus(level, text, messages) {
+            var status = document.getElementById('upload-status');
+            var html = '<div class="message ' + level + '">' + escapeHtml(text) + '</div>';
+            (messages || []).forEach(function(message) {
+                html += '<div class="message ' + escapeHtml(message.level) + '">' + escapeHtml(message.text) + '</div>';
+            });
+            status.innerHTML = html;
+            status.style.display = 'block';
+        }
+        
+        // Invia il form del caricamento; il server risponde 202 con l'indirizzo dello stato
+        function submitUpload(form) {
+            var button = form.querySelector('button[type="submit"]');
+            var xhr = new XMLHttpRequest();
+            xhr.onreadystatechange = function() {
+                if (xhr.readyState !== 4) {
+                    return;
+                }
+                var data = {};
+                try {
+                    data = JSON.parse(xhr.responseText);
+                } catch (e) {
+                    console.error("Errore parsing JSON:", e);
+                }
+                if (xhr.status === 202) {
+                    form.reset();
+                    showUploadStatus('info', 'Proposta ricevuta, elaborazione in corso...', []);
+                    pollUpload(data.status, button);
+                } else {
+                    button.disabled = false;
+                    showUploadStatus('error', data.error || 'Caricamento non riuscito', data.messages);
+                }
+            };
+            button.disabled = true;
+            xhr.open('POST', form.action, true);
+            xhr.send(new FormData(form));
+        }
+        
+        // Interroga periodicamente lo stato del caricamento fino al termine dell'elaborazione
+        function pollUpload(statusUrl, button) {
+            var xhr = new XMLHttpRequest();
+            xhr.onreadystatechange = function() {
+                if (xhr.readyState !== 4) {
+                    return;
+                }
+                if (xhr.status !== 200) {
+                    button.disabled = false;
+                    showUploadStatus('error', 'Impossibile verificare lo stato del caricamento', []);
+                    return;
+                }
+                var job = JSON.parse(xhr.responseText);
+                if (job.state === 'completed') {
+                    button.disabled = false;
+                    showUploadStatus('success', 'Elaborazione completata', job.messages);
+                    loadProjects(null);
+                } else if (job.state === 'failed') {
+                    button.disabled = false;
+                    showUploadStatus('error', 'Elaborazione non riuscita', job.messages);
+                } else {
+                    showUploadStatus('info', job.state === 'queued' ? 'Proposta in coda...' : 'Elaborazione in corso...', []);
+                    setTimeout(function() { pollUpload(statusUrl, button); }, 2000);
+                }
+            };
+            xhr.open('GET', statusUrl, true);
+            xhr.send();
+        }
+        
         // Funzione di escape per prevenire XSS
         function escapeHtml(unsafe) {
             return unsafe
@@ -190,60 +272,82 @@
         
         }
         
-        // Carica le proposte progettuali con XMLHttpRequest
-        window.onload = function() {
+        // Cursore della prossima pagina di proposte (null se non ci sono altre pagine)
+        var nextCursor = null;
+        
+        // Crea l'elemento che mostra una singola proposta
+        function renderProject(project) {
+            const projectDiv = document.createElement('div');
+            projectDiv.className = 'project';
+            
+            const header = document.createElement('div');
+            header.className = 'project-header';
+            header.innerHTML = `
+                <div><strong>Utente:</strong> \${escapeHtml(project.username)}</div>
+                <div><strong>File:</strong> \${escapeHtml(project.fileName)}</div>
+            `;
+            
+            const content = document.createElement('div');
+            content.className = 'project-content';
+            content.innerHTML = project.htmlContent;
+            
+            projectDiv.appendChild(header);
+            projectDiv.appendChild(content);
+            return projectDiv;
+        }
+        
+        // Mostra o nasconde il pulsante per caricare la pagina successiva
+        function updateLoadMore() {
+            document.getElementById('load-more').style.display = nextCursor !== null ? 'block' : 'none';
+        }
+        
+        // Carica una pagina di proposte progettuali con XMLHttpRequest
+        function loadProjects(after) {
             var xhr = new XMLHttpRequest();
             
             xhr.onreadystatechange = function() {
                 if (xhr.readyState === 4) {
+                    const container = document.getElementById('projects-container');
                     if (xhr.status === 200) {
                         try {
-                            console.log("Risposta ricevuta:", xhr.responseText);
                             var data = JSON.parse(xhr.responseText);
                             
-                            const container = document.getElementById('projects-container');
-                            container.innerHTML = '';
+                            if (after === null) {
+                                container.innerHTML = '';
+                            }
                             
-                            if (data.length === 0) {
+                            if (after === null && data.items.length === 0) {
                                 container.innerHTML = '<p class="no-projects">Nessuna proposta trovata</p>';
-                                return;
                             }
                             
-                            data.forEach(project => {
-                                const projectDiv = document.createElement('div');
-                                projectDiv.className = 'project';
-                                
-                                const header = document.createElement('div');
-                                header.className = 'project-header';
-                                header.innerHTML = `
-                                    <div><strong>Utente:</strong> \${escapeHtml(project.username)}</div>
-                                    <div><strong>File:</strong> \${escapeHtml(project.fileName)}</div>
-                                `;
-                                
-                                const content = document.createElement('div');
-                                content.className = 'project-content';
-                                content.innerHTML = project.htmlContent;
-                                
-                                projectDiv.appendChild(header);
-                                projectDiv.appendChild(content);
-                                container.appendChild(projectDiv);
-                            });
+                            data.items.forEach(project => container.appendChild(renderProject(project)));
+                            
+                            nextCursor = data.next;
+                            updateLoadMore();
                         } catch (e) {
                             console.error("Errore parsing JSON:", e);
-                            document.getElementById('projects-container').innerHTML = 
-                                '<p class="no-projects">Errore nel caricamento delle proposte</p>';
+                            container.innerHTML = '<p class="no-projects">Errore nel caricamento delle proposte</p>';
                         }
                     } else {
                         console.error("Errore HTTP:", xhr.status);
-                        document.getElementById('projects-container').innerHTML = 
-                            '<p class="no-projects">Errore nel caricamento delle proposte</p>';
+                        container.innerHTML = '<p class="no-projects">Errore nel caricamento delle proposte</p>';
                     }
                 }
             };
             
-            xhr.open('GET', 'ProjectServlet', true);
+            var url = 'ProjectServlet' + (after !== null ? '?after=' + encodeURIComponent(after) : '');
+            xhr.open('GET', url, true);
             xhr.setRequestHeader('Content-Type', 'application/json');
             xhr.send();
+        }
+        
+        window.onload = function() {
+            document.getElementById('load-more').addEventListener('click', function() {
+                if (nextCursor !== null) {
+                    loadProjects(nextCursor);
+                }
+            });
+            loadProjects(null);
         };
     </script>
     <!-- script per il timeout della sessione -->
@@ -75,6 +75,8 @@
     <div class="container">
         <h1>Registrazione</h1>
         
+        <%@ include file="/WEB-INF/messages.jspf" %>
+        
         <% if (request.getAttribute("error") != null) { %>
             <div class="message error">
                 <%= request.getAttribute("error") %>